@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 
 import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -13,11 +14,16 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import fr.eminiumgames.dungeonsinstances.commands.DungeonCommand;
 import fr.eminiumgames.dungeonsinstances.commands.DungeonTabCompleter;
+import fr.eminiumgames.dungeonsinstances.managers.DungeonInstance;
 import fr.eminiumgames.dungeonsinstances.managers.DungeonManager;
 import fr.eminiumgames.dungeonsinstances.managers.DungeonScoreboardManager;
+import fr.eminiumgames.dungeonsinstances.managers.HostWorldManager;
 import fr.eminiumgames.dungeonsinstances.managers.LootManager;
 import fr.eminiumgames.dungeonsinstances.managers.LootTableManager;
+import fr.eminiumgames.dungeonsinstances.managers.MobSpawnFile;
 import fr.eminiumgames.dungeonsinstances.managers.PartyManager;
+import fr.eminiumgames.dungeonsinstances.managers.TemplatePackage;
+import fr.eminiumgames.dungeonsinstances.managers.TickMonitor;
 
 public class DungeonInstances extends JavaPlugin implements Listener {
 
@@ -25,6 +31,7 @@ public class DungeonInstances extends JavaPlugin implements Listener {
     private DungeonManager dungeonManager;
     private PartyManager partyManager;
     private DungeonScoreboardManager scoreboardManager;
+    private TickMonitor tickMonitor;
 
     // remember the world a player died in so respawn logic can use it
     private final java.util.Map<java.util.UUID, String> deathWorlds = new java.util.HashMap<>();
@@ -52,12 +59,18 @@ public class DungeonInstances extends JavaPlugin implements Listener {
             }
         }
 
+        // plugin settings (clone strategy, pools, ...) are read by the managers
+        // during construction, so the defaults must be on disk first
+        saveDefaultConfig();
+
         // basic state needs to exist as early as possible
         instance = this;
         dungeonManager = new DungeonManager();
         partyManager = new PartyManager();
         scoreboardManager = new DungeonScoreboardManager();
         scoreboardManager.start();
+        tickMonitor = new TickMonitor();
+        tickMonitor.start();
 
         getLogger().info("DungeonInstances plugin enabled.");
 
@@ -69,6 +82,8 @@ public class DungeonInstances extends JavaPlugin implements Listener {
         // initialise loot subsystem before anything else may rely on it
         LootTableManager.getInstance().load();
         getServer().getPluginManager().registerEvents(new LootManager(), this);
+        getServer().getPluginManager().registerEvents(dungeonManager.getResetManager(), this);
+        getServer().getPluginManager().registerEvents(dungeonManager.getLazySpawner(), this);
 
         // Load all dungeon templates at startup but do *not* populate mobs or
         // clear natural spawns. this avoids touching the source worlds while
@@ -82,7 +97,7 @@ public class DungeonInstances extends JavaPlugin implements Listener {
             }
             getLogger().info("templates-dungeons folder missing; creating and installing default template(s).");
             try {
-                installDefaultTemplates(templatesFolder);
+                installDefaultTemplates();
             } catch (IOException e) {
                 getLogger().severe("Failed to install default dungeon templates: " + e.getMessage());
             }
@@ -97,10 +112,26 @@ public class DungeonInstances extends JavaPlugin implements Listener {
         if (templatesFolder.exists() && templatesFolder.isDirectory()) {
             File[] templateFolders = templatesFolder.listFiles(File::isDirectory);
             if (templateFolders != null) {
+                // templates stay on disk; their worlds load on demand
+                boolean loadWorlds = getConfig().getBoolean("templates.load-on-startup", false);
                 for (File template : templateFolders) {
-                    dungeonManager.loadDungeonTemplate(template.getName(), false);
+                    if (template.getName().startsWith(TemplatePackage.STAGING_PREFIX)) {
+                        // interrupted package import
+                        dungeonManager.getTrashManager().trash(template);
+                        continue;
+                    }
+                    if (template.getName().startsWith(".")) {
+                        continue;
+                    }
+                    if (loadWorlds) {
+                        dungeonManager.loadDungeonTemplate(template.getName(), false);
+                    } else {
+                        dungeonManager.registerTemplate(template.getName());
+                    }
                     // ensure loot table entries exist for all difficulties
                     LootTableManager.getInstance().ensureTemplateHasAllDifficulties(template.getName());
+                    // compile the saved mobs in the background before the first instance
+                    dungeonManager.prepareSpawnPlan(template.getName());
                 }
             }
         } else {
@@ -109,19 +140,29 @@ public class DungeonInstances extends JavaPlugin implements Listener {
         }
         // auto-save has been disabled; no per-world tasks need to be started
 
-        // Purge all instance worlds on plugin reload
-        File worldContainer = Bukkit.getWorldContainer();
-        File[] instanceFolders = worldContainer
-                .listFiles((file) -> file.isDirectory() && file.getName().startsWith("instance_"));
+        // resume deleting leftover trash before adding this run's purge to it
+        dungeonManager.getTrashManager().start();
 
-        if (instanceFolders != null) {
-            for (File instanceFolder : instanceFolders) {
-                dungeonManager.unloadDungeonInstance(instanceFolder.getName());
-                deleteFolder(instanceFolder);
-            }
-            getLogger().info("All dungeon instances have been purged on plugin reload.");
+        // purge the instance folders of the previous run (keeping hibernated
+        // runs listed in the journal) in the background
+        dungeonManager.recoverInstances();
+
+        // bring templates saved by an older server version up to date once,
+        // so instances do not upgrade and relight them on every load
+        if (getConfig().getBoolean("templates.optimize-on-startup", true)) {
+            dungeonManager.getTemplateOptimizer().optimizeOutdated();
         }
 
+        // stage warm instance folders now that stale ones are gone
+        dungeonManager.getInstancePool().refillAll();
+        dungeonManager.getStandbyManager().start();
+        dungeonManager.getHostManager().start();
+        dungeonManager.getResetManager().start();
+        dungeonManager.getAdmissionController().start();
+        // unload template worlds loaded for a bake or by load-on-startup once idle
+        Bukkit.getScheduler().runTaskTimer(this, dungeonManager::unloadIdleTemplates, 1200L, 1200L);
+        dungeonManager.getHibernationManager().start();
+
         // schedule a task to continually enforce NoAI on edit‑mode worlds
         Bukkit.getScheduler().runTaskTimer(this, () -> {
             for (World w : Bukkit.getWorlds()) {
@@ -138,6 +179,19 @@ public class DungeonInstances extends JavaPlugin implements Listener {
         if (scoreboardManager != null) {
             scoreboardManager.stop();
         }
+        if (tickMonitor != null) {
+            tickMonitor.stop();
+        }
+        if (dungeonManager != null) {
+            dungeonManager.getStandbyManager().stop();
+            dungeonManager.getHostManager().stop();
+            dungeonManager.getResetManager().stop();
+            dungeonManager.getAdmissionController().stop();
+            dungeonManager.getHibernationManager().stop();
+            // unfinished trash is resumed on the next start
+            dungeonManager.getTrashManager().stop();
+            dungeonManager.getJournal().close();
+        }
         getLogger().info("DungeonInstances plugin disabled.");
     }
 
@@ -157,52 +211,61 @@ public class DungeonInstances extends JavaPlugin implements Listener {
         return scoreboardManager;
     }
 
-    private void deleteFolder(File folder) {
-        if (folder.isDirectory()) {
-            File[] files = folder.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    deleteFolder(file);
-                }
-            }
-        }
-        folder.delete();
+    public TickMonitor getTickMonitor() {
+        return tickMonitor;
     }
 
     /**
      * When the templates folder is empty or missing we ship a small built‑in
      * dungeon so that the plugin works out of the box. The world is stored
-     * inside the JAR as a zip under /default-templates/manaria.zip. This
-     * method unpacks every entry into the provided destination directory.
+     * inside the JAR under /default-templates, as manaria.dtpl or as the
+     * older manaria.zip, and installed through the package import pipeline.
      */
-    private void installDefaultTemplates(File templatesFolder) throws IOException {
-        // unzip manaria.zip into templatesFolder/manaria
-        try (java.io.InputStream in = getResource("default-templates/manaria.zip");
-                java.util.zip.ZipInputStream zip = new java.util.zip.ZipInputStream(in)) {
-            java.util.zip.ZipEntry entry;
-            while ((entry = zip.getNextEntry()) != null) {
-                File out = new File(templatesFolder, entry.getName().replaceFirst("^.*?manaria/", "manaria/"));
-                if (entry.isDirectory()) {
-                    out.mkdirs();
-                } else {
-                    out.getParentFile().mkdirs();
-                    try (java.io.FileOutputStream fos = new java.io.FileOutputStream(out)) {
-                        byte[] buf = new byte[8192];
-                        int len;
-                        while ((len = zip.read(buf)) > 0) {
-                            fos.write(buf, 0, len);
-                        }
-                    }
-                }
-                zip.closeEntry();
+    private void installDefaultTemplates() throws IOException {
+        // a template package, or else a plain zip of the world (legacy);
+        // both are extracted in parallel off the main thread and registered
+        // once complete
+        boolean installed = installDefaultArchive("manaria" + TemplatePackage.EXTENSION, true)
+                || installDefaultArchive("manaria.zip", false);
+        if (!installed) {
+            getLogger().warning("No default template bundled; templates-dungeons is left empty.");
+            return;
+        }
+        installDefaultMobs();
+    }
+
+    /**
+     * Copy a bundled archive to the data folder and install it
+     * asynchronously. Returns false if the plugin jar does not contain it.
+     */
+    private boolean installDefaultArchive(String resource, boolean isPackage) throws IOException {
+        try (java.io.InputStream in = getResource("default-templates/" + resource)) {
+            if (in == null) {
+                return false;
             }
+            File archive = new File(getDataFolder(), resource);
+            getDataFolder().mkdirs();
+            java.nio.file.Files.copy(in, archive.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            (isPackage ? dungeonManager.importTemplate(archive) : dungeonManager.importArchive(archive, "manaria"))
+                    .whenComplete((name, ex) -> {
+                        archive.delete();
+                        if (ex != null) {
+                            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                            getLogger().severe("Failed to install default template " + resource + ": "
+                                    + cause.getMessage());
+                        }
+                    });
+            return true;
         }
+    }
 
+    private void installDefaultMobs() throws IOException {
         // also install default mob spawn data for the template
         File mobDir = new File(getDataFolder(), "mobSpawns");
         mobDir.mkdirs();
         File manariaJsonDest = new File(mobDir, "manaria.json");
-        if (!manariaJsonDest.exists()) {
+        // converted to manaria.dmob on a previous start
+        if (!manariaJsonDest.exists() && !new File(mobDir, "manaria" + MobSpawnFile.EXTENSION).exists()) {
             try (java.io.InputStream in = getResource("default-templates/manaria.json")) {
                 if (in != null) {
                     java.nio.file.Files.copy(in, manariaJsonDest.toPath());
@@ -218,26 +281,108 @@ public class DungeonInstances extends JavaPlugin implements Listener {
         World previousWorld = event.getFrom();
         World currentWorld = player.getWorld();
 
+        boolean fromInstance = dungeonManager.getDungeonInstance(previousWorld) != null;
         // Remove scoreboard when leaving an instance world
-        if (previousWorld.getName().startsWith("instance_") && !currentWorld.getName().startsWith("instance_")) {
+        if (fromInstance && dungeonManager.getDungeonInstance(currentWorld) == null) {
             scoreboardManager.removeScoreboard(player);
         }
 
         // Check if the previous world is an instance world
-        if (previousWorld.getName().startsWith("instance_")) {
+        if (fromInstance) {
             // if player was just respawning we may temporarily leave and come
             // back, so skip unload until respawn handler finishes.
             if (pendingRespawn.contains(player.getUniqueId())) {
                 return;
             }
-            // If the world is empty, unload and delete the instance
-            if (previousWorld.getPlayers().isEmpty()) {
-                dungeonManager.unloadDungeonInstance(previousWorld.getName());
+            boolean deliberate = dungeonManager.getHibernationManager().consumeLeaving(player.getUniqueId());
+            // If the world is empty, keep it for the party to rejoin unless they
+            // left on purpose; otherwise reset it for reuse or unload and delete it
+            if (previousWorld.getPlayers().isEmpty()
+                    && (deliberate || !dungeonManager.getHibernationManager().hibernate(previousWorld, player))) {
+                dungeonManager.releaseDungeonInstance(previousWorld.getName());
+            }
+        }
+    }
+
+    /**
+     * A disconnect empties the instance without a world change: hibernate it
+     * once the player is gone.
+     */
+    @EventHandler
+    public void onPlayerQuit(org.bukkit.event.player.PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+        dungeonManager.getHibernationManager().clearLeaving(player.getUniqueId());
+        World world = player.getWorld();
+        if (dungeonManager.getDungeonInstance(world) == null) {
+            return;
+        }
+        String worldName = world.getName();
+        Bukkit.getScheduler().runTask(this, () -> {
+            World current = Bukkit.getWorld(worldName);
+            if (current != null && current.getPlayers().isEmpty()
+                    && !dungeonManager.getHibernationManager().hibernate(current, player)) {
+                dungeonManager.releaseDungeonInstance(worldName);
+            }
+        });
+    }
+
+    /**
+     * Players coming back while their run is hibernated are put back into it.
+     */
+    @EventHandler
+    public void onPlayerJoin(org.bukkit.event.player.PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        String instanceName = dungeonManager.getHibernationManager().getInstanceFor(player.getUniqueId());
+        if (instanceName == null || player.getWorld().getName().equals(instanceName)) {
+            return;
+        }
+        Bukkit.getScheduler().runTask(this, () -> {
+            if (player.isOnline() && dungeonManager.getHibernationManager().rejoin(player, instanceName) != null) {
+                player.sendMessage(DungeonCommand.PREFIX + ChatColor.GREEN + "You have rejoined your dungeon run.");
             }
+        });
+    }
+
+    /**
+     * Chunks of generator-mode instances only get their blocks from the
+     * generator; fill in the baked block entities once they exist.
+     */
+    @EventHandler
+    public void onChunkLoad(org.bukkit.event.world.ChunkLoadEvent event) {
+        if (event.isNewChunk()) {
+            dungeonManager.applyGeneratedBlockEntities(event.getWorld(), event.getChunk());
         }
     }
 
+    /**
+     * Void chunks outside the template footprint are never written back when
+     * they unload.
+     */
+    @EventHandler
+    public void onChunkUnload(org.bukkit.event.world.ChunkUnloadEvent event) {
+        String worldName = event.getWorld().getName();
+        if (dungeonManager.isOutsideFootprint(worldName, event.getChunk().getX(), event.getChunk().getZ())) {
+            event.setSaveChunk(false);
+        }
+    }
 
+    /**
+     * Entities in chunks that were unloaded while an instance sat in standby
+     * still carry NoAI; turn it back on as they load, like spawnSavedMobs does.
+     */
+    @EventHandler
+    public void onEntitiesLoad(org.bukkit.event.world.EntitiesLoadEvent event) {
+        DungeonInstance instance = dungeonManager.getDungeonInstance(event.getWorld());
+        if (instance == null || instance.getState() != DungeonInstance.State.ACTIVE) {
+            return;
+        }
+        for (org.bukkit.entity.Entity ent : event.getEntities()) {
+            if (ent instanceof org.bukkit.entity.LivingEntity && !(ent instanceof Player)
+                    && !((org.bukkit.entity.LivingEntity) ent).hasAI()) {
+                ((org.bukkit.entity.LivingEntity) ent).setAI(true);
+            }
+        }
+    }
 
     /**
      * Remember the world of a player's death. We store this here instead of
@@ -279,14 +424,20 @@ public class DungeonInstances extends JavaPlugin implements Listener {
             world = Bukkit.getWorld(worldName);
         }
 
-        if (worldName != null && worldName.startsWith("instance_")) {
+        // runs in a shared host world respawn at their slot's spawn point
+        HostWorldManager.Slot slot = dungeonManager.getHostManager().getSlotOf(player.getUniqueId());
+        if (slot != null && HostWorldManager.isHostWorld(worldName)) {
+            event.setRespawnLocation(slot.getSpawnLocation());
+            pendingRespawn.remove(player.getUniqueId());
+            return;
+        }
+
+        DungeonInstance instance = dungeonManager.getRegistry().get(worldName);
+        if (instance != null) {
             // do NOT clear pendingRespawn just yet; another plugin may move the
             // player after this event. we will remove the flag after the delayed
             // teleport below.
-            String remainder = worldName.substring("instance_".length());
-            // template name is everything before the last underscore (uuid)
-            int lastIdx = remainder.lastIndexOf('_');
-            String templateName = lastIdx == -1 ? remainder : remainder.substring(0, lastIdx);
+            String templateName = instance.getTemplate();
 
             Bukkit.getLogger().info("[DungeonInstances] resolving spawn for template '" + templateName + "'");
             Bukkit.getLogger()
@@ -324,7 +475,7 @@ public class DungeonInstances extends JavaPlugin implements Listener {
                     // always teleport every tick to our chosen location
 
                     World pw = player.getWorld();
-                    if (pw != null && pw.getName().startsWith("instance_")) {
+                    if (pw != null && dungeonManager.getDungeonInstance(pw) != null) {
                         pendingRespawn.remove(player.getUniqueId());
                         taskHolder[0].cancel();
                         return;
@@ -6,7 +6,6 @@ import java.util.UUID;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
-import org.bukkit.Sound;
 import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -17,13 +16,19 @@ import org.bukkit.util.RayTraceResult;
 
 import fr.eminiumgames.dungeonsinstances.DungeonInstances;
 import fr.eminiumgames.dungeonsinstances.managers.DungeonManager;
+import fr.eminiumgames.dungeonsinstances.managers.HibernationManager;
+import fr.eminiumgames.dungeonsinstances.managers.HostWorldManager;
 import fr.eminiumgames.dungeonsinstances.managers.LootTableManager;
 import fr.eminiumgames.dungeonsinstances.managers.PartyManager;
+import fr.eminiumgames.dungeonsinstances.managers.TemplatePackage;
 
 public class DungeonCommand implements CommandExecutor {
 
-    private static final String PREFIX = ChatColor.DARK_PURPLE + "[Dungeon] " + ChatColor.RESET;
+    public static final String PREFIX = ChatColor.DARK_PURPLE + "[Dungeon] " + ChatColor.RESET;
     private static final String PARTY_PREFIX = PartyManager.PREFIX;
+    // every /dungeon admin subcommand, for the usage messages and tab completion
+    public static final java.util.List<String> ADMIN_SUBCOMMANDS = java.util.List.of("edit", "save", "purge",
+            "setspawn", "alias", "reloadloot", "bake", "export", "import", "optimize", "mobs", "bounds");
 
     @SuppressWarnings("deprecation")
     @Override
@@ -52,12 +57,24 @@ public class DungeonCommand implements CommandExecutor {
 
             if (args.length < 2) {
                 player.sendMessage("Usage: /dungeon admin <subcommand>");
-                player.sendMessage("Available subcommands: edit, save, purge, setspawn, alias, reloadloot");
+                player.sendMessage("Available subcommands: " + String.join(", ", ADMIN_SUBCOMMANDS));
                 player.sendMessage(
                         "/dungeon admin save <world> [radius] [y<value>] - persist mobs; optional radius limits to nearby creatures, y<value> ignores mobs below that Y");
                 player.sendMessage(
                         "/dungeon admin alias <name> - tag the mob you are looking at so its drops come from the corresponding pool; use 'none' to clear");
                 player.sendMessage("/dungeon admin reloadloot - reload the lootTables.json file from disk");
+                player.sendMessage(
+                        "/dungeon admin bake <template> - bake the template blocks for instance-mode 'generator'");
+                player.sendMessage(
+                        "/dungeon admin export <template> - write the template to packages/<template>.dtpl");
+                player.sendMessage(
+                        "/dungeon admin import <file> - install a .dtpl package from the packages folder");
+                player.sendMessage(
+                        "/dungeon admin optimize <template|all> - upgrade and relight the template chunks once");
+                player.sendMessage(
+                        "/dungeon admin mobs <template> <export|import> - convert the saved mobs to or from mobSpawns/<template>.json");
+                player.sendMessage(
+                        "/dungeon admin bounds <template> <x1> <z1> <x2> <z2>|clear - set the area instances copy, bake and border");
                 return true;
             }
 
@@ -259,8 +276,41 @@ public class DungeonCommand implements CommandExecutor {
                         }
                     }
 
-                    // Copy the edited world back to the template folder
-                    DungeonInstances.getInstance().getDungeonManager().copyWorld(editWorldFolder, templateFolder);
+                    // Copy the edited world back to the template folder (not while
+                    // the template world itself is loaded, nor while an instance
+                    // is being cloned from it)
+                    String savedTemplate = worldNameToSave.replace("editmode_", "");
+                    if (!DungeonInstances.getInstance().getDungeonManager().tryLockTemplate(savedTemplate)) {
+                        player.sendMessage(PREFIX + ChatColor.RED + "An instance of " + savedTemplate
+                                + " is being created from the template; try again in a moment.");
+                        return true;
+                    }
+                    try {
+                        DungeonInstances.getInstance().getDungeonManager().unloadTemplateWorld(savedTemplate);
+                        DungeonInstances.getInstance().getDungeonManager().copyWorld(editWorldFolder, templateFolder);
+                    } finally {
+                        DungeonInstances.getInstance().getDungeonManager().unlockTemplate(savedTemplate);
+                    }
+                    // drop the mobs (kept in mobSpawns) and POI data from the copy so
+                    // instances start empty and skip clearMobs
+                    String strippedTemplate = worldNameToSave.replace("editmode_", "");
+                    DungeonInstances.getInstance().getDungeonManager()
+                            .stripTemplateEntities(strippedTemplate, templateFolder)
+                            .whenComplete((removed, ex) -> {
+                                if (ex != null) {
+                                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                                    Bukkit.getLogger().warning("Could not strip entities from template "
+                                            + strippedTemplate + ": " + cause.getMessage());
+                                }
+                            });
+                    // record which region files instances of this template need
+                    DungeonInstances.getInstance().getDungeonManager()
+                            .generateManifest(worldNameToSave.replace("editmode_", ""), editWorldFolder);
+                    // generator-mode templates serve their chunks from the bake, refresh it
+                    if (w != null && "generator".equals(DungeonInstances.getInstance().getDungeonManager()
+                            .getInstanceMode(worldNameToSave.replace("editmode_", "")))) {
+                        bakeTemplate(player, worldNameToSave.replace("editmode_", ""), w);
+                    }
 
                     // Schedule unload after a delay to ensure all data is saved
                     final String worldToUnload = worldNameToSave;
@@ -272,6 +322,171 @@ public class DungeonCommand implements CommandExecutor {
                     }, 40L); // 2 secondes de délai pour s'assurer que tout est sauvegardé
                     break;
 
+                case "bake":
+                    if (args.length < 3) {
+                        player.sendMessage("Usage: /dungeon admin bake <template>");
+                        return true;
+                    }
+                    // prefer the edit world if the template is being edited
+                    World bakeSource = Bukkit.getWorld("editmode_" + args[2]);
+                    if (bakeSource == null) {
+                        bakeSource = DungeonInstances.getInstance().getDungeonManager().getTemplateWorld(args[2]);
+                    }
+                    if (bakeSource == null) {
+                        player.sendMessage(PREFIX + ChatColor.RED + "Template '" + args[2] + "' does not exist.");
+                        return true;
+                    }
+                    bakeTemplate(player, args[2], bakeSource);
+                    return true;
+
+                case "export":
+                    if (args.length < 3) {
+                        player.sendMessage("Usage: /dungeon admin export <template>");
+                        return true;
+                    }
+                    String exportName = args[2];
+                    player.sendMessage(PREFIX + ChatColor.YELLOW + "Exporting template '" + exportName + "'...");
+                    DungeonInstances.getInstance().getDungeonManager().exportTemplate(exportName)
+                            .whenComplete((file, ex) -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(),
+                                    () -> {
+                                        if (ex != null) {
+                                            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                                            player.sendMessage(PREFIX + ChatColor.RED + "Export failed: "
+                                                    + cause.getMessage());
+                                            return;
+                                        }
+                                        player.sendMessage(PREFIX + ChatColor.GREEN + "Template '" + exportName
+                                                + "' exported to " + file.getPath());
+                                    }));
+                    return true;
+
+                case "import":
+                    if (args.length < 3) {
+                        player.sendMessage("Usage: /dungeon admin import <file>");
+                        return true;
+                    }
+                    String packageName = args[2].endsWith(TemplatePackage.EXTENSION) ? args[2]
+                            : args[2] + TemplatePackage.EXTENSION;
+                    File packageFile = new File(TemplatePackage.PACKAGE_FOLDER, new File(packageName).getName());
+                    if (!packageFile.isFile()) {
+                        player.sendMessage(PREFIX + ChatColor.RED + "No package " + packageFile.getPath() + ".");
+                        return true;
+                    }
+                    player.sendMessage(PREFIX + ChatColor.YELLOW + "Importing " + packageFile.getName() + "...");
+                    DungeonInstances.getInstance().getDungeonManager().importTemplate(packageFile)
+                            .whenComplete((name, ex) -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(),
+                                    () -> {
+                                        if (ex != null) {
+                                            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                                            player.sendMessage(PREFIX + ChatColor.RED + "Import failed: "
+                                                    + cause.getMessage());
+                                            return;
+                                        }
+                                        player.sendMessage(PREFIX + ChatColor.GREEN + "Template '" + name
+                                                + "' installed.");
+                                    }));
+                    return true;
+
+                case "bounds":
+                    if (args.length != 4 && args.length != 7) {
+                        player.sendMessage("Usage: /dungeon admin bounds <template> <x1> <z1> <x2> <z2>|clear");
+                        return true;
+                    }
+                    String boundsTemplate = args[2];
+                    int[] blocks = null;
+                    if (args.length == 7) {
+                        blocks = new int[4];
+                        try {
+                            for (int i = 0; i < 4; i++) {
+                                blocks[i] = Integer.parseInt(args[3 + i]);
+                            }
+                        } catch (NumberFormatException e) {
+                            player.sendMessage(PREFIX + ChatColor.RED + "Coordinates must be whole numbers.");
+                            return true;
+                        }
+                    } else if (!args[3].equalsIgnoreCase("clear")) {
+                        player.sendMessage("Usage: /dungeon admin bounds <template> <x1> <z1> <x2> <z2>|clear");
+                        return true;
+                    }
+                    try {
+                        fr.eminiumgames.dungeonsinstances.managers.TemplateManifest bounded = DungeonInstances
+                                .getInstance().getDungeonManager().setTemplateBounds(boundsTemplate, blocks);
+                        if (bounded == null) {
+                            player.sendMessage(PREFIX + ChatColor.YELLOW + "Bounds of '" + boundsTemplate
+                                    + "' saved; the template has no region data yet.");
+                        } else {
+                            player.sendMessage(PREFIX + ChatColor.GREEN + "Footprint of '" + boundsTemplate
+                                    + "' is now chunks " + bounded.minChunkX + "," + bounded.minChunkZ + " to "
+                                    + bounded.maxChunkX + "," + bounded.maxChunkZ
+                                    + ". Bake it again if it runs in generator or host mode.");
+                        }
+                    } catch (java.io.IOException e) {
+                        player.sendMessage(PREFIX + ChatColor.RED + "Could not save the bounds: " + e.getMessage());
+                    }
+                    return true;
+
+                case "optimize":
+                    if (args.length < 3) {
+                        player.sendMessage("Usage: /dungeon admin optimize <template|all>");
+                        return true;
+                    }
+                    java.util.List<String> toOptimize = args[2].equalsIgnoreCase("all")
+                            ? new java.util.ArrayList<>(
+                                    DungeonInstances.getInstance().getDungeonManager().getTemplateNames())
+                            : java.util.List.of(args[2]);
+                    for (String optimizeName : toOptimize) {
+                        player.sendMessage(PREFIX + ChatColor.YELLOW + "Optimizing template '" + optimizeName + "'...");
+                        DungeonInstances.getInstance().getDungeonManager().getTemplateOptimizer().optimize(optimizeName)
+                                .whenComplete((chunks, ex) -> Bukkit.getScheduler()
+                                        .runTask(DungeonInstances.getInstance(), () -> {
+                                            if (ex != null) {
+                                                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                                                player.sendMessage(PREFIX + ChatColor.RED + "Optimizing '"
+                                                        + optimizeName + "' failed: " + cause.getMessage());
+                                                return;
+                                            }
+                                            player.sendMessage(PREFIX + ChatColor.GREEN + "Template '" + optimizeName
+                                                    + "' is up to date (" + chunks + " chunks rewritten).");
+                                        }));
+                    }
+                    return true;
+
+                case "mobs":
+                    if (args.length < 4 || !(args[3].equalsIgnoreCase("export") || args[3].equalsIgnoreCase("import"))) {
+                        player.sendMessage("Usage: /dungeon admin mobs <template> <export|import>");
+                        return true;
+                    }
+                    String mobsTemplate = args[2];
+                    if (args[3].equalsIgnoreCase("export")) {
+                        DungeonInstances.getInstance().getDungeonManager().exportMobsJson(mobsTemplate)
+                                .whenComplete((file, ex) -> Bukkit.getScheduler()
+                                        .runTask(DungeonInstances.getInstance(), () -> {
+                                            if (ex != null) {
+                                                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                                                player.sendMessage(PREFIX + ChatColor.RED + "Mob export failed: "
+                                                        + cause.getMessage());
+                                                return;
+                                            }
+                                            player.sendMessage(PREFIX + ChatColor.GREEN + "Mobs of '" + mobsTemplate
+                                                    + "' written to " + file.getPath()
+                                                    + "; run import once edited.");
+                                        }));
+                    } else {
+                        DungeonInstances.getInstance().getDungeonManager().importMobsJson(mobsTemplate)
+                                .whenComplete((count, ex) -> Bukkit.getScheduler()
+                                        .runTask(DungeonInstances.getInstance(), () -> {
+                                            if (ex != null) {
+                                                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                                                player.sendMessage(PREFIX + ChatColor.RED + "Mob import failed: "
+                                                        + cause.getMessage());
+                                                return;
+                                            }
+                                            player.sendMessage(PREFIX + ChatColor.GREEN + "Imported " + count
+                                                    + " mobs for '" + mobsTemplate + "'.");
+                                        }));
+                    }
+                    return true;
+
                 case "purge":
                     // first unload any instances that are currently loaded
                     for (World loaded : Bukkit.getWorlds()) {
@@ -297,6 +512,10 @@ public class DungeonCommand implements CommandExecutor {
                     } else {
                         player.sendMessage("No dungeon instances found to purge.");
                     }
+                    DungeonInstances.getInstance().getDungeonManager().getHostManager().releaseAll();
+                    // pooled folders were deleted as well; stage fresh ones
+                    DungeonInstances.getInstance().getDungeonManager().getInstancePool().clear();
+                    DungeonInstances.getInstance().getDungeonManager().getInstancePool().refillAll();
                     break;
 
                 case "setspawn":
@@ -319,7 +538,8 @@ public class DungeonCommand implements CommandExecutor {
                     break;
 
                 default:
-                    player.sendMessage("Unknown admin subcommand. Available subcommands: edit, save, purge, setspawn");
+                    player.sendMessage(
+                            "Unknown admin subcommand. Available subcommands: " + String.join(", ", ADMIN_SUBCOMMANDS));
                     break;
             }
             return true;
@@ -354,105 +574,28 @@ public class DungeonCommand implements CommandExecutor {
                 return true;
             }
 
-            World instance = DungeonInstances.getInstance().getDungeonManager()
-                    .createDungeonInstance(dungeonName,
-                            "instance_" + dungeonName + "_" + UUID.randomUUID(),
-                            difficulty);
-            if (instance != null) {
-                String diffName = difficulty.toString();
-                partyManager.broadcastToParty(party,
-                        PARTY_PREFIX + ChatColor.GREEN + "Dungeon " + ChatColor.LIGHT_PURPLE + dungeonName
-                                + ChatColor.GREEN + " (" + diffName + ") has been started by " + ChatColor.AQUA
-                                + player.getName()
-                                + ChatColor.GREEN + "!");
-                partyManager.broadcastToParty(party,
-                        PARTY_PREFIX + ChatColor.YELLOW + "Teleporting in 10 seconds...");
-
-                final World dungeonWorld = instance;
-                final Location spawnLocation = DungeonInstances.getInstance().getDungeonManager()
-                        .getSpawnLocation(dungeonName, dungeonWorld);
-
-                // We iterate members list to play wither sound immediately to give feedback
-                // that the instance is launching, then schedule the teleport and countdown
-                // messages/sounds
-                for (UUID memberId : party.getMembers()) {
-                    Player member = Bukkit.getPlayer(memberId);
-                    if (member != null && member.isOnline()) {
-                        try {
-                            member.playSound(member.getLocation(), Sound.ENTITY_WITHER_SPAWN, 2.0f, 1.0f);
-                        } catch (NoSuchFieldError | IllegalArgumentException ignored) {
-                        }
-                        // member.sendMessage(PARTY_PREFIX + ChatColor.YELLOW + "Le donjon " +
-                        // ChatColor.LIGHT_PURPLE
-                        // + dungeonName + ChatColor.YELLOW + " est en train de se lancer...");
-                    }
+            DungeonManager dungeonManager = DungeonInstances.getInstance().getDungeonManager();
+            final DungeonManager.Difficulty chosenDifficulty = difficulty;
+            // creation starts once admitted; the countdown runs while the
+            // instance is built and only teleports once the spawn area and
+            // mobs are ready
+            dungeonManager.getAdmissionController().submit(party, dungeonName, () -> {
+                java.util.concurrent.CompletableFuture<Location> spawnFuture;
+                if ("host".equals(dungeonManager.getInstanceMode(dungeonName))) {
+                    // shared host world: the run gets a slot instead of its own world
+                    spawnFuture = dungeonManager.getHostManager()
+                            .launch(dungeonName, chosenDifficulty, party.getMembers())
+                            .thenApply(HostWorldManager.Slot::getSpawnLocation);
+                } else {
+                    spawnFuture = dungeonManager
+                            .createDungeonInstanceAsync(dungeonName,
+                                    "instance_" + dungeonName + "_" + UUID.randomUUID(),
+                                    chosenDifficulty)
+                            .thenApply(instance -> dungeonManager.getSpawnLocation(dungeonName, instance));
                 }
-
-                // Schedule countdown sounds/messages at 3s, 2s and 1s before teleport
-                long teleportDelay = 200L; // 10 seconds
-                long t3 = teleportDelay - 60L; // 3 seconds before
-                long t2 = teleportDelay - 40L; // 2 seconds before
-                long t1 = teleportDelay - 20L; // 1 second before
-
-                Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> {
-                    for (UUID memberId : party.getMembers()) {
-                        Player member = Bukkit.getPlayer(memberId);
-                        if (member != null && member.isOnline()) {
-                            try {
-                                member.playSound(member.getLocation(), Sound.BLOCK_NOTE_BLOCK_PLING, 1.0f, 0.6f);
-                            } catch (NoSuchFieldError | IllegalArgumentException ignored) {
-                            }
-                            member.sendMessage(PREFIX + ChatColor.YELLOW + "3...");
-                        }
-                    }
-                }, t3);
-
-                Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> {
-                    for (UUID memberId : party.getMembers()) {
-                        Player member = Bukkit.getPlayer(memberId);
-                        if (member != null && member.isOnline()) {
-                            try {
-                                member.playSound(member.getLocation(), Sound.BLOCK_NOTE_BLOCK_PLING, 1.0f, 0.9f);
-                            } catch (NoSuchFieldError | IllegalArgumentException ignored) {
-                            }
-                            member.sendMessage(PREFIX + ChatColor.YELLOW + "2...");
-                        }
-                    }
-                }, t2);
-
-                Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> {
-                    for (UUID memberId : party.getMembers()) {
-                        Player member = Bukkit.getPlayer(memberId);
-                        if (member != null && member.isOnline()) {
-                            try {
-                                member.playSound(member.getLocation(), Sound.BLOCK_NOTE_BLOCK_PLING, 1.0f, 1.2f);
-                            } catch (NoSuchFieldError | IllegalArgumentException ignored) {
-                            }
-                            member.sendMessage(PREFIX + ChatColor.YELLOW + "1...");
-                        }
-                    }
-                }, t1);
-
-                // Final teleport task
-                Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> {
-                    for (UUID memberId : party.getMembers()) {
-                        Player member = Bukkit.getPlayer(memberId);
-                        if (member != null && member.isOnline()) {
-                            // store previous world before teleporting into the instance
-                            DungeonInstances.getInstance().getPartyManager().setPreviousWorld(member.getUniqueId(),
-                                    member.getWorld().getName());
-
-                            member.teleport(spawnLocation);
-                            member.sendMessage(PREFIX + ChatColor.GREEN + "You have been teleported to the dungeon: "
-                                    + ChatColor.LIGHT_PURPLE + dungeonName + ChatColor.GREEN + " (" + diffName + ")");
-
-                            member.playSound(member.getLocation(), Sound.ENTITY_ENDER_DRAGON_GROWL, 2.0f, 1.0f);
-                        }
-                    }
-                }, teleportDelay); // 200 ticks = 10 secondes
-            } else {
-                player.sendMessage(PREFIX + ChatColor.RED + "Failed to create dungeon instance.");
-            }
+                new LaunchCountdown(player, party, dungeonName, chosenDifficulty, spawnFuture).start();
+                return spawnFuture;
+            });
 
             return true;
         }
@@ -483,7 +626,11 @@ public class DungeonCommand implements CommandExecutor {
 
         if (subCommand.equals("leave")) {
             World playerWorld = player.getWorld();
-            if (!playerWorld.getName().startsWith("instance_")) {
+            HostWorldManager hostManager = DungeonInstances.getInstance().getDungeonManager().getHostManager();
+            boolean inHostSlot = hostManager.getSlotOf(player.getUniqueId()) != null
+                    && HostWorldManager.isHostWorld(playerWorld.getName());
+            if (DungeonInstances.getInstance().getDungeonManager().getDungeonInstance(playerWorld) == null
+                    && !inHostSlot) {
                 player.sendMessage(PREFIX + ChatColor.RED + "You are not in a dungeon instance.");
                 return true;
             }
@@ -496,18 +643,47 @@ public class DungeonCommand implements CommandExecutor {
                         PARTY_PREFIX + ChatColor.AQUA + player.getName() + ChatColor.YELLOW + " has left the dungeon.");
             }
 
-            // Teleport player to spawn or a safe location
+            // Teleport player to spawn or a safe location; leaving on purpose
+            // gives up the run instead of hibernating it
+            DungeonInstances.getInstance().getDungeonManager().getHibernationManager()
+                    .markLeaving(player.getUniqueId());
             player.teleport(Bukkit.getWorlds().get(0).getSpawnLocation());
             player.sendMessage(PREFIX + ChatColor.GREEN + "You have left the dungeon instance.");
 
-            // Check if the instance is empty and unload it
-            if (playerWorld.getPlayers().isEmpty()) {
-                DungeonInstances.getInstance().getDungeonManager().unloadDungeonInstance(playerWorld.getName());
+            // host slots are released once their party is gone; worlds are unloaded when empty
+            if (inHostSlot) {
+                hostManager.leave(player);
+            } else if (playerWorld.getPlayers().isEmpty()) {
+                DungeonInstances.getInstance().getDungeonManager().releaseDungeonInstance(playerWorld.getName());
             }
 
             return true;
         }
 
+        if (subCommand.equals("rejoin")) {
+            HibernationManager hibernation = DungeonInstances.getInstance().getDungeonManager()
+                    .getHibernationManager();
+            String instanceName = hibernation.getInstanceFor(player.getUniqueId());
+            if (instanceName == null) {
+                player.sendMessage(PREFIX + ChatColor.RED + "You have no dungeon run to rejoin.");
+                return true;
+            }
+            if (player.getWorld().getName().equals(instanceName)) {
+                player.sendMessage(PREFIX + ChatColor.YELLOW + "You are already in this dungeon.");
+                return true;
+            }
+            World instance = hibernation.rejoin(player, instanceName);
+            if (instance == null) {
+                player.sendMessage(PREFIX + ChatColor.RED + "Your dungeon run has expired.");
+                return true;
+            }
+            String templateName = DungeonInstances.getInstance().getDungeonManager().getDungeonInstance(instance)
+                    .getTemplate();
+            player.sendMessage(PREFIX + ChatColor.GREEN + "You have rejoined the dungeon: " + ChatColor.LIGHT_PURPLE
+                    + templateName);
+            return true;
+        }
+
         if (subCommand.equals("party")) {
             PartyManager partyManager = DungeonInstances.getInstance().getPartyManager();
 
@@ -704,7 +880,7 @@ public class DungeonCommand implements CommandExecutor {
 
         // Handle unknown subcommands
         if (!subCommand.equals("admin") && !subCommand.equals("instance") && !subCommand.equals("list")
-                && !subCommand.equals("leave") && !subCommand.equals("party")) {
+                && !subCommand.equals("leave") && !subCommand.equals("rejoin") && !subCommand.equals("party")) {
             player.sendMessage("Unknown subcommand. Available subcommands:");
             player.sendMessage(
                     "/dungeon instance <dungeon-name> [difficulty] - Create a dungeon instance (default Normal)");
@@ -732,6 +908,23 @@ public class DungeonCommand implements CommandExecutor {
         return true;
     }
 
+    /**
+     * Bake a template and report the outcome to the admin.
+     */
+    private void bakeTemplate(Player player, String templateName, World source) {
+        player.sendMessage(PREFIX + ChatColor.YELLOW + "Baking template '" + templateName + "'...");
+        DungeonInstances.getInstance().getDungeonManager().bakeTemplate(templateName, source)
+                .whenComplete((baked, ex) -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), () -> {
+                    if (ex != null) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        player.sendMessage(PREFIX + ChatColor.RED + "Bake failed: " + cause.getMessage());
+                        return;
+                    }
+                    player.sendMessage(PREFIX + ChatColor.GREEN + "Template '" + templateName + "' baked ("
+                            + baked.getChunkCount() + " chunks).");
+                }));
+    }
+
     /**
      * Ray-trace from player's eyes and return the first living entity hit
      * within the given distance (excluding the player itself).
@@ -13,6 +13,7 @@ import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 
 import fr.eminiumgames.dungeonsinstances.managers.DungeonManager;
+import fr.eminiumgames.dungeonsinstances.managers.TemplatePackage;
 
 public class DungeonTabCompleter implements TabCompleter {
 
@@ -26,6 +27,7 @@ public class DungeonTabCompleter implements TabCompleter {
             suggestions.add("instance");
             suggestions.add("leave");
             suggestions.add("list");
+            suggestions.add("rejoin");
             suggestions.add("party");
             if (sender.hasPermission("dungeon.admin")) {
                 suggestions.add("admin");
@@ -36,12 +38,7 @@ public class DungeonTabCompleter implements TabCompleter {
         }
 
         if (args.length == 2 && args[0].equalsIgnoreCase("admin")) {
-            suggestions.add("edit");
-            suggestions.add("save");
-            suggestions.add("purge");
-            suggestions.add("setspawn");
-            suggestions.add("alias");
-            suggestions.add("reloadloot");
+            suggestions.addAll(DungeonCommand.ADMIN_SUBCOMMANDS);
             return suggestions.stream()
                     .filter(s -> s.toLowerCase().startsWith(args[1].toLowerCase()))
                     .collect(Collectors.toList());
@@ -51,8 +48,8 @@ public class DungeonTabCompleter implements TabCompleter {
             File templatesFolder = new File(DUNGEON_TEMPLATES_FOLDER);
             if (templatesFolder.exists() && templatesFolder.isDirectory()) {
                 for (File file : templatesFolder.listFiles()) {
-                    // On ignore .git
-                    if (file.getName().equals(".git")) {
+                    // On ignore .git et les imports en cours
+                    if (file.getName().startsWith(".")) {
                         continue;
                     }
 
@@ -80,7 +77,12 @@ public class DungeonTabCompleter implements TabCompleter {
         }
 
         if (args.length == 3 && args[0].equalsIgnoreCase("admin") &&
-                args[1].equalsIgnoreCase("edit")) {
+                (args[1].equalsIgnoreCase("edit") || args[1].equalsIgnoreCase("bake")
+                        || args[1].equalsIgnoreCase("export") || args[1].equalsIgnoreCase("optimize")
+                        || args[1].equalsIgnoreCase("mobs") || args[1].equalsIgnoreCase("bounds"))) {
+            if (args[1].equalsIgnoreCase("optimize")) {
+                suggestions.add("all");
+            }
             File templatesFolder = new File(DUNGEON_TEMPLATES_FOLDER);
             if (templatesFolder.exists() && templatesFolder.isDirectory()) {
                 for (File file : templatesFolder.listFiles()) {
@@ -99,6 +101,27 @@ public class DungeonTabCompleter implements TabCompleter {
                     .collect(Collectors.toList());
         }
 
+        if (args.length == 3 && args[0].equalsIgnoreCase("admin") && args[1].equalsIgnoreCase("import")) {
+            File[] packages = TemplatePackage.PACKAGE_FOLDER
+                    .listFiles(f -> f.isFile() && f.getName().endsWith(TemplatePackage.EXTENSION));
+            if (packages != null) {
+                for (File file : packages) {
+                    suggestions.add(file.getName());
+                }
+            }
+            return suggestions.stream()
+                    .filter(s -> s.toLowerCase().startsWith(args[2].toLowerCase()))
+                    .collect(Collectors.toList());
+        }
+
+        if (args.length == 4 && args[0].equalsIgnoreCase("admin") && args[1].equalsIgnoreCase("mobs")) {
+            suggestions.add("export");
+            suggestions.add("import");
+            return suggestions.stream()
+                    .filter(s -> s.toLowerCase().startsWith(args[3].toLowerCase()))
+                    .collect(Collectors.toList());
+        }
+
         if (args.length == 3 && args[0].equalsIgnoreCase("admin") && args[1].equalsIgnoreCase("save")) {
             List<String> worldNames = Bukkit.getWorlds().stream()
                     .map(World::getName)
@@ -0,0 +1,213 @@
+package fr.eminiumgames.dungeonsinstances.commands;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+import fr.eminiumgames.dungeonsinstances.managers.ChunkPreloader;
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager;
+import fr.eminiumgames.dungeonsinstances.managers.HostWorldManager;
+import fr.eminiumgames.dungeonsinstances.managers.PartyManager;
+
+/**
+ * Drives a party from "instance requested" to "teleported" with a single
+ * task. The instance is built while the party waits; once the world exists
+ * its spawn chunks are preloaded (asynchronously on Paper, see
+ * {@link ChunkPreloader}) and held until the party has arrived, and the final
+ * 3/2/1 countdown only starts when those chunks and the saved mobs are ready.
+ * A fast preparation therefore means a short wait, and a slow one never drops
+ * players into unloaded terrain.
+ */
+class LaunchCountdown extends BukkitRunnable {
+
+    private enum State {
+        CREATING, PREPARING, COUNTDOWN, DONE
+    }
+
+    private static final String PREFIX = ChatColor.DARK_PURPLE + "[Dungeon] " + ChatColor.RESET;
+    private static final String PARTY_PREFIX = PartyManager.PREFIX;
+    // keep the spawn chunks pinned a little after the teleport while the
+    // players' own chunk tickets take over
+    private static final long TICKET_LINGER_TICKS = 100L;
+
+    private final Player leader;
+    private final PartyManager.Party party;
+    private final String dungeonName;
+    private final DungeonManager.Difficulty difficulty;
+    private final CompletableFuture<Location> spawnFuture;
+
+    private final int countdownSeconds;
+    private final int preloadRadius;
+    private final long timeoutTicks;
+
+    private State state = State.CREATING;
+    private long ticks;
+    private long countdownStart;
+    private Location spawnLocation;
+    private ChunkPreloader.Preload preload;
+    private CompletableFuture<Void> mobsReady;
+
+    LaunchCountdown(Player leader, PartyManager.Party party, String dungeonName,
+            DungeonManager.Difficulty difficulty, CompletableFuture<Location> spawnFuture) {
+        this.leader = leader;
+        this.party = party;
+        this.dungeonName = dungeonName;
+        this.difficulty = difficulty;
+        this.spawnFuture = spawnFuture;
+        FileConfiguration config = DungeonInstances.getInstance().getConfig();
+        this.countdownSeconds = Math.max(0, config.getInt("launch.countdown-seconds", 3));
+        this.preloadRadius = Math.max(0, config.getInt("launch.preload-radius-chunks", 2));
+        this.timeoutTicks = Math.max(1, config.getInt("launch.timeout-seconds", 60)) * 20L;
+    }
+
+    /**
+     * Announce the launch to the party and start ticking.
+     */
+    void start() {
+        PartyManager partyManager = DungeonInstances.getInstance().getPartyManager();
+        partyManager.broadcastToParty(party,
+                PARTY_PREFIX + ChatColor.GREEN + "Dungeon " + ChatColor.LIGHT_PURPLE + dungeonName
+                        + ChatColor.GREEN + " (" + difficulty + ") has been started by " + ChatColor.AQUA
+                        + leader.getName()
+                        + ChatColor.GREEN + "!");
+        partyManager.broadcastToParty(party,
+                PARTY_PREFIX + ChatColor.YELLOW + "Preparing the dungeon, you will be teleported shortly...");
+        // wither sound right away so the party knows the launch was accepted
+        playSound(Sound.ENTITY_WITHER_SPAWN, 2.0f, 1.0f);
+        runTaskTimer(DungeonInstances.getInstance(), 1L, 1L);
+    }
+
+    @Override
+    public void run() {
+        ticks++;
+        switch (state) {
+            case CREATING:
+                if (!spawnFuture.isDone()) {
+                    break;
+                }
+                spawnLocation = spawnFuture.isCompletedExceptionally() ? null : spawnFuture.join();
+                if (spawnLocation == null || spawnLocation.getWorld() == null) {
+                    fail("Failed to create dungeon instance.");
+                    return;
+                }
+                // chunks load while the mobs spawn
+                preload = ChunkPreloader.preload(spawnLocation, preloadRadius);
+                mobsReady = DungeonInstances.getInstance().getDungeonManager()
+                        .getMobsReady(spawnLocation.getWorld().getName());
+                state = State.PREPARING;
+                // fall through
+            case PREPARING:
+                if (!preload.getFuture().isDone() || !mobsReady.isDone()) {
+                    break;
+                }
+                state = State.COUNTDOWN;
+                countdownStart = ticks;
+                // fall through
+            case COUNTDOWN:
+                long elapsed = ticks - countdownStart;
+                if (elapsed % 20 == 0) {
+                    int remaining = countdownSeconds - (int) (elapsed / 20);
+                    if (remaining > 0) {
+                        announce(remaining);
+                        return;
+                    }
+                    teleport();
+                }
+                return;
+            default:
+                cancel();
+                return;
+        }
+        if (ticks >= timeoutTicks) {
+            fail("The dungeon took too long to prepare, please try again.");
+        }
+    }
+
+    private void announce(int remaining) {
+        // higher pitch as the countdown runs out
+        float pitch = remaining >= 3 ? 0.6f : remaining == 2 ? 0.9f : 1.2f;
+        for (UUID memberId : party.getMembers()) {
+            Player member = Bukkit.getPlayer(memberId);
+            if (member != null && member.isOnline()) {
+                try {
+                    member.playSound(member.getLocation(), Sound.BLOCK_NOTE_BLOCK_PLING, 1.0f, pitch);
+                } catch (NoSuchFieldError | IllegalArgumentException ignored) {
+                }
+                member.sendMessage(PREFIX + ChatColor.YELLOW + remaining + "...");
+            }
+        }
+    }
+
+    private void teleport() {
+        state = State.DONE;
+        cancel();
+        // bind the instance to the party (host slots track their members themselves)
+        DungeonInstances.getInstance().getDungeonManager().getRegistry().update(spawnLocation.getWorld().getUID(),
+                i -> i.withParty(party.getMembers()));
+        for (UUID memberId : party.getMembers()) {
+            Player member = Bukkit.getPlayer(memberId);
+            if (member != null && member.isOnline()) {
+                // store previous world before teleporting into the instance
+                DungeonInstances.getInstance().getPartyManager().setPreviousWorld(member.getUniqueId(),
+                        member.getWorld().getName());
+
+                member.teleport(spawnLocation);
+                member.sendMessage(PREFIX + ChatColor.GREEN + "You have been teleported to the dungeon: "
+                        + ChatColor.LIGHT_PURPLE + dungeonName + ChatColor.GREEN + " (" + difficulty + ")");
+
+                member.playSound(member.getLocation(), Sound.ENTITY_ENDER_DRAGON_GROWL, 2.0f, 1.0f);
+            }
+        }
+        ChunkPreloader.Preload held = preload;
+        Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), held::release, TICKET_LINGER_TICKS);
+    }
+
+    /**
+     * Give up: tell the party and throw away the instance, now or whenever
+     * its creation finishes.
+     */
+    private void fail(String message) {
+        state = State.DONE;
+        cancel();
+        if (preload != null) {
+            preload.release();
+        }
+        DungeonInstances.getInstance().getPartyManager().broadcastToParty(party, PREFIX + ChatColor.RED + message);
+        spawnFuture.thenAcceptAsync(location -> {
+            if (location == null || location.getWorld() == null) {
+                return;
+            }
+            World world = location.getWorld();
+            if (HostWorldManager.isHostWorld(world.getName())) {
+                HostWorldManager hostManager = DungeonInstances.getInstance().getDungeonManager().getHostManager();
+                HostWorldManager.Slot slot = hostManager.getSlotAt(location);
+                if (slot != null) {
+                    hostManager.release(slot);
+                }
+            } else {
+                DungeonInstances.getInstance().getDungeonManager().releaseDungeonInstance(world.getName());
+            }
+        }, task -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), task));
+    }
+
+    private void playSound(Sound sound, float volume, float pitch) {
+        for (UUID memberId : party.getMembers()) {
+            Player member = Bukkit.getPlayer(memberId);
+            if (member != null && member.isOnline()) {
+                try {
+                    member.playSound(member.getLocation(), sound, volume, pitch);
+                } catch (NoSuchFieldError | IllegalArgumentException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+
+/**
+ * Decides when a requested launch may start. Launches are admitted in FIFO
+ * order as long as the number of running instances
+ * (<code>admission.max-instances</code>, per template
+ * <code>admission.templates.&lt;t&gt;.max-instances</code>) and of instances
+ * still being created (<code>admission.max-concurrent-creations</code>) stay
+ * under their caps; the rest wait in a queue and are told their position and
+ * an estimated wait. A request blocked only by its own template's cap does
+ * not hold up the requests behind it.
+ *
+ * <p>All methods run on the main thread.
+ */
+public class AdmissionController {
+
+    private static final String PREFIX = ChatColor.DARK_PURPLE + "[Dungeon] " + ChatColor.RESET;
+    // smoothing of the observed time between two admissions
+    private static final double EMA_ALPHA = 0.3;
+
+    private final DungeonManager dungeonManager;
+    private final List<Request> queue = new ArrayList<>();
+    private final Map<String, Integer> creating = new java.util.HashMap<>();
+    private long lastAdmission = System.currentTimeMillis();
+    // seconds; refined as launches get admitted
+    private double avgAdmissionInterval = 10.0;
+    private BukkitTask task;
+
+    private static class Request {
+        final PartyManager.Party party;
+        final String templateName;
+        final Supplier<CompletableFuture<?>> launcher;
+        int lastPosition = -1;
+
+        Request(PartyManager.Party party, String templateName, Supplier<CompletableFuture<?>> launcher) {
+            this.party = party;
+            this.templateName = templateName;
+            this.launcher = launcher;
+        }
+    }
+
+    /**
+     * What is left of the caps during one pass over the queue; admitting a
+     * request takes a creation slot, as the instance only starts running
+     * once created.
+     */
+    static class Slots {
+        private final int maxCreations;
+        private final int maxInstances;
+        private final ToIntFunction<String> templateCaps;
+        private final Map<String, Integer> used = new java.util.HashMap<>();
+        private int creating;
+        private int total;
+
+        Slots(int maxCreations, int maxInstances, ToIntFunction<String> templateCaps, Map<String, Integer> running,
+                Map<String, Integer> creating) {
+            this.maxCreations = maxCreations;
+            this.maxInstances = maxInstances;
+            this.templateCaps = templateCaps;
+            running.forEach((t, n) -> used.merge(t, n, Integer::sum));
+            creating.forEach((t, n) -> used.merge(t, n, Integer::sum));
+            for (int n : creating.values()) {
+                this.creating += n;
+            }
+            for (int n : used.values()) {
+                total += n;
+            }
+        }
+
+        /**
+         * Whether no request at all can start.
+         */
+        boolean exhausted() {
+            return (maxCreations > 0 && creating >= maxCreations) || (maxInstances > 0 && total >= maxInstances);
+        }
+
+        boolean hasRoom(String templateName) {
+            int cap = templateCaps.applyAsInt(templateName);
+            return cap <= 0 || used.getOrDefault(templateName, 0) < cap;
+        }
+
+        void take(String templateName) {
+            creating++;
+            total++;
+            used.merge(templateName, 1, Integer::sum);
+        }
+    }
+
+    public AdmissionController(DungeonManager dungeonManager) {
+        this.dungeonManager = dungeonManager;
+    }
+
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), this::process, 20L, 20L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        queue.clear();
+    }
+
+    /**
+     * Queue a launch for the party. The launcher is called once admitted and
+     * must return a future that completes when the instance is created (or
+     * failed); until then it counts against the creation cap.
+     */
+    public void submit(PartyManager.Party party, String templateName, Supplier<CompletableFuture<?>> launcher) {
+        for (Request r : queue) {
+            if (r.party == party) {
+                Player leader = Bukkit.getPlayer(party.getLeader());
+                if (leader != null) {
+                    leader.sendMessage(PREFIX + ChatColor.YELLOW + "Your party is already in the launch queue.");
+                }
+                return;
+            }
+        }
+        queue.add(new Request(party, templateName, launcher));
+        process();
+    }
+
+    /**
+     * Remove the party's pending request, if any.
+     */
+    public boolean cancel(PartyManager.Party party) {
+        return queue.removeIf(r -> r.party == party);
+    }
+
+    public int getQueueLength() {
+        return queue.size();
+    }
+
+    private void process() {
+        FileConfiguration config = DungeonInstances.getInstance().getConfig();
+        int maxCreations = config.getInt("admission.max-concurrent-creations", 2);
+        int maxInstances = config.getInt("admission.max-instances", 0);
+        Slots slots = new Slots(maxCreations, maxInstances,
+                t -> config.getInt("admission.templates." + t + ".max-instances", 0), countRunning(), creating);
+
+        Iterator<Request> it = queue.iterator();
+        while (it.hasNext()) {
+            Request r = it.next();
+            Player leader = Bukkit.getPlayer(r.party.getLeader());
+            if (leader == null || !leader.isOnline()
+                    || DungeonInstances.getInstance().getPartyManager().getPartyByPlayer(leader) != r.party) {
+                it.remove(); // leader left or party disbanded
+                continue;
+            }
+            if (slots.exhausted()) {
+                break; // nobody can start this round
+            }
+            if (!slots.hasRoom(r.templateName)) {
+                continue; // let other templates go ahead
+            }
+            it.remove();
+            slots.take(r.templateName);
+            admit(r);
+        }
+        notifyPositions();
+    }
+
+    private void admit(Request r) {
+        long now = System.currentTimeMillis();
+        if (r.lastPosition >= 0) {
+            // only waits caused by the queue say something about throughput
+            avgAdmissionInterval = smooth(avgAdmissionInterval, (now - lastAdmission) / 1000.0);
+        }
+        lastAdmission = now;
+
+        creating.merge(r.templateName, 1, Integer::sum);
+        CompletableFuture<?> created;
+        try {
+            created = r.launcher.get();
+        } catch (RuntimeException e) {
+            created = CompletableFuture.failedFuture(e);
+        }
+        created.whenComplete((v, ex) -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), () -> {
+            creating.merge(r.templateName, -1, Integer::sum);
+            process();
+        }));
+    }
+
+    private void notifyPositions() {
+        for (int i = 0; i < queue.size(); i++) {
+            Request r = queue.get(i);
+            int position = i + 1;
+            if (position == r.lastPosition) {
+                continue;
+            }
+            r.lastPosition = position;
+            DungeonInstances.getInstance().getPartyManager().broadcastToParty(r.party,
+                    PREFIX + ChatColor.YELLOW + "All dungeon instances are busy. Your party is #" + position
+                            + " in the queue for " + ChatColor.LIGHT_PURPLE + r.templateName + ChatColor.YELLOW
+                            + " (about " + estimate(position, avgAdmissionInterval) + ").");
+        }
+    }
+
+    /**
+     * The average time between admissions after one more was observed.
+     */
+    static double smooth(double avgSeconds, double intervalSeconds) {
+        return EMA_ALPHA * intervalSeconds + (1 - EMA_ALPHA) * avgSeconds;
+    }
+
+    /**
+     * Expected wait of the request at the (1-based) queue position.
+     */
+    static String estimate(int position, double avgSeconds) {
+        return formatSeconds(Math.round(position * avgSeconds));
+    }
+
+    private static String formatSeconds(long seconds) {
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        return (seconds / 60) + "m " + (seconds % 60) + "s";
+    }
+
+    /**
+     * Instances currently in use per template: active registered instances
+     * (not hot standbys or reset worlds), plus host slots.
+     */
+    private Map<String, Integer> countRunning() {
+        Map<String, Integer> counts = new java.util.HashMap<>();
+        for (DungeonInstance instance : dungeonManager.getRegistry().getAll()) {
+            if (instance.getState() == DungeonInstance.State.ACTIVE) {
+                counts.merge(instance.getTemplate(), 1, Integer::sum);
+            }
+        }
+        for (String template : dungeonManager.getTemplateNames()) {
+            int slots = dungeonManager.getHostManager().getActiveSlotCount(template);
+            if (slots > 0) {
+                counts.merge(template, slots, Integer::sum);
+            }
+        }
+        return counts;
+    }
+}
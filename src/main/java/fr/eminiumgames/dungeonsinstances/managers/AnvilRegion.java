@@ -0,0 +1,189 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Offline editing of Anvil region files (<code>r.x.z.mca</code>): 1024 chunk
+ * slots addressed by a 4 KiB location table, each chunk a compressed NBT
+ * compound padded to 4 KiB sectors. Chunks using a compression this class
+ * cannot read (LZ4, external <code>.mcc</code> files) are kept byte for byte.
+ *
+ * <p>Must not be used on a region file of a loaded world.
+ */
+public final class AnvilRegion {
+
+    private static final int SECTOR = 4096;
+    private static final int SLOTS = 1024;
+    private static final byte GZIP = 1, ZLIB = 2, NONE = 3;
+
+    private AnvilRegion() {
+    }
+
+    /**
+     * Run <code>edit</code> on every chunk of the file; it returns true when
+     * it modified the chunk. The file is rewritten (via a temporary file and
+     * an atomic rename) only if at least one chunk changed. Returns the
+     * number of changed chunks.
+     */
+    public static int rewrite(File file, Predicate<Map<String, Object>> edit) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        if (data.length < 2 * SECTOR) {
+            return 0; // empty or truncated header
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        // per slot: compression byte followed by the payload, as stored
+        byte[][] chunks = new byte[SLOTS][];
+        int[] timestamps = new int[SLOTS];
+        int changed = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            int location = buf.getInt(i * 4);
+            int offset = (location >>> 8) * SECTOR;
+            if (location == 0 || offset < 2 * SECTOR || offset + 5 > data.length) {
+                continue;
+            }
+            int length = buf.getInt(offset);
+            if (length <= 0 || offset + 4 + length > data.length) {
+                continue; // corrupt slot, the server would discard it too
+            }
+            timestamps[i] = buf.getInt(SECTOR + i * 4);
+            byte[] stored = Arrays.copyOfRange(data, offset + 4, offset + 4 + length);
+            chunks[i] = stored;
+            byte compression = stored[0];
+            if (compression != GZIP && compression != ZLIB && compression != NONE) {
+                continue;
+            }
+            Map<String, Object> root;
+            try (DataInputStream in = new DataInputStream(decompress(compression, stored))) {
+                root = Nbt.readRoot(in);
+            }
+            if (edit.test(root)) {
+                chunks[i] = compress(root);
+                changed++;
+            }
+        }
+        if (changed == 0) {
+            return 0;
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(data.length);
+        ByteBuffer header = ByteBuffer.allocate(2 * SECTOR);
+        int sector = 2;
+        for (int i = 0; i < SLOTS; i++) {
+            if (chunks[i] == null) {
+                continue;
+            }
+            int size = 4 + chunks[i].length;
+            int sectors = (size + SECTOR - 1) / SECTOR;
+            if (sectors > 255) {
+                throw new IOException("chunk " + i + " of " + file.getName() + " does not fit in a region file");
+            }
+            header.putInt(i * 4, (sector << 8) | sectors);
+            header.putInt(SECTOR + i * 4, timestamps[i]);
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeInt(chunks[i].length);
+            out.write(chunks[i]);
+            out.write(new byte[sectors * SECTOR - size]);
+            sector += sectors;
+        }
+        Path tmp = file.toPath().resolveSibling(file.getName() + ".tmp");
+        try {
+            Files.write(tmp, header.array());
+            Files.write(tmp, body.toByteArray(), java.nio.file.StandardOpenOption.APPEND);
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return changed;
+    }
+
+    /**
+     * Call <code>visitor</code> with the slot index (<code>x + z * 32</code>
+     * within the region) of every chunk stored in the file. Only the location
+     * table is read.
+     */
+    public static void forEachPresentChunk(File file, java.util.function.IntConsumer visitor) throws IOException {
+        byte[] header = new byte[SECTOR];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            if (in.readNBytes(header, 0, SECTOR) < SECTOR) {
+                return; // empty or truncated header
+            }
+        }
+        ByteBuffer buf = ByteBuffer.wrap(header);
+        for (int i = 0; i < SLOTS; i++) {
+            int location = buf.getInt(i * 4);
+            if (location != 0 && (location >>> 8) >= 2) {
+                visitor.accept(i);
+            }
+        }
+    }
+
+    /**
+     * Call <code>visitor</code> with the slot index (<code>x + z * 32</code>
+     * within the region) and the NBT of every readable chunk of the file.
+     */
+    public static void forEachChunk(File file, ObjIntConsumer<Map<String, Object>> visitor)
+            throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        if (data.length < 2 * SECTOR) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        for (int i = 0; i < SLOTS; i++) {
+            int location = buf.getInt(i * 4);
+            int offset = (location >>> 8) * SECTOR;
+            if (location == 0 || offset < 2 * SECTOR || offset + 5 > data.length) {
+                continue;
+            }
+            int length = buf.getInt(offset);
+            if (length <= 0 || offset + 4 + length > data.length) {
+                continue;
+            }
+            byte compression = data[offset + 4];
+            if (compression != GZIP && compression != ZLIB && compression != NONE) {
+                continue;
+            }
+            byte[] stored = Arrays.copyOfRange(data, offset + 4, offset + 4 + length);
+            try (DataInputStream in = new DataInputStream(decompress(compression, stored))) {
+                visitor.accept(Nbt.readRoot(in), i);
+            }
+        }
+    }
+
+    private static InputStream decompress(byte compression, byte[] stored) throws IOException {
+        InputStream raw = new ByteArrayInputStream(stored, 1, stored.length - 1);
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(raw);
+            case ZLIB:
+                return new InflaterInputStream(raw);
+            default:
+                return raw;
+        }
+    }
+
+    private static byte[] compress(Map<String, Object> root) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(ZLIB);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            Nbt.writeRoot(out, root);
+        }
+        return bytes.toByteArray();
+    }
+}
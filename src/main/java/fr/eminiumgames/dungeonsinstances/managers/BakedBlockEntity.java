@@ -0,0 +1,249 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Bukkit;
+import org.bukkit.DyeColor;
+import org.bukkit.NamespacedKey;
+import org.bukkit.block.Banner;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.ChiseledBookshelf;
+import org.bukkit.block.Container;
+import org.bukkit.block.CreatureSpawner;
+import org.bukkit.block.Lectern;
+import org.bukkit.block.Sign;
+import org.bukkit.block.Skull;
+import org.bukkit.block.TileState;
+import org.bukkit.block.banner.Pattern;
+import org.bukkit.block.sign.Side;
+import org.bukkit.block.sign.SignSide;
+import org.bukkit.entity.EntityType;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.loot.LootTable;
+import org.bukkit.loot.Lootable;
+import org.bukkit.profile.PlayerProfile;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+/**
+ * Contents of one block entity of a template, captured through the Bukkit
+ * block state API when the template is baked and written back after the
+ * block itself was generated or pasted: container items and loot tables,
+ * lectern and bookshelf books, sign text, spawner settings, banner patterns
+ * and skull profiles. Stored in the {@link BakedTemplate} file as a Bukkit
+ * object stream of a plain map.
+ *
+ * <p>Block entities of other kinds are reported by {@link #isSupported} so
+ * the bake can tell which templates would lose data.
+ */
+public final class BakedBlockEntity {
+
+    // position in the template world
+    final int x, y, z;
+    private final Map<String, Object> data;
+
+    private BakedBlockEntity(int x, int y, int z, Map<String, Object> data) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.data = data;
+    }
+
+    /**
+     * True if the state is not a block entity, carries nothing worth baking,
+     * or is one of the kinds {@link #capture} handles.
+     */
+    public static boolean isSupported(BlockState state) {
+        return !(state instanceof TileState) || state instanceof Container || state instanceof Lectern
+                || state instanceof ChiseledBookshelf || state instanceof Sign || state instanceof CreatureSpawner
+                || state instanceof Banner || state instanceof Skull
+                // their whole state lives in the block data
+                || state instanceof org.bukkit.block.Bed || state instanceof org.bukkit.block.Bell
+                || state instanceof org.bukkit.block.EnchantingTable || state instanceof org.bukkit.block.EnderChest
+                || state instanceof org.bukkit.block.Conduit || state instanceof org.bukkit.block.DaylightDetector
+                || state instanceof org.bukkit.block.Comparator || state instanceof org.bukkit.block.EndGateway
+                || state instanceof org.bukkit.block.SculkSensor || state instanceof org.bukkit.block.SculkCatalyst
+                || state instanceof org.bukkit.block.SculkShrieker;
+    }
+
+    /**
+     * Capture the contents of a block entity. Returns null for block entities
+     * without contents to restore. Must run on the main thread.
+     */
+    public static BakedBlockEntity capture(BlockState state) {
+        Map<String, Object> data = new HashMap<>();
+        if (state instanceof Container) {
+            Container container = (Container) state;
+            data.put("items", container.getSnapshotInventory().getContents());
+            if (container.getCustomName() != null) {
+                data.put("name", container.getCustomName());
+            }
+        } else if (state instanceof Lectern) {
+            data.put("items", ((Lectern) state).getSnapshotInventory().getContents());
+            data.put("page", ((Lectern) state).getPage());
+        } else if (state instanceof ChiseledBookshelf) {
+            data.put("items", ((ChiseledBookshelf) state).getSnapshotInventory().getContents());
+        }
+        if (state instanceof Lootable && ((Lootable) state).getLootTable() != null) {
+            data.put("lootTable", ((Lootable) state).getLootTable().getKey().toString());
+            data.put("seed", ((Lootable) state).getSeed());
+        }
+        if (state instanceof Sign) {
+            Sign sign = (Sign) state;
+            for (Side side : Side.values()) {
+                SignSide s = sign.getSide(side);
+                data.put(side.name() + ".lines", s.getLines());
+                if (s.getColor() != null) {
+                    data.put(side.name() + ".color", s.getColor().name());
+                }
+                data.put(side.name() + ".glowing", s.isGlowingText());
+            }
+            data.put("waxed", sign.isWaxed());
+        } else if (state instanceof CreatureSpawner) {
+            CreatureSpawner spawner = (CreatureSpawner) state;
+            if (spawner.getSpawnedType() != null) {
+                data.put("spawnedType", spawner.getSpawnedType().name());
+            }
+            data.put("delay", spawner.getDelay());
+            data.put("minDelay", spawner.getMinSpawnDelay());
+            data.put("maxDelay", spawner.getMaxSpawnDelay());
+            data.put("spawnCount", spawner.getSpawnCount());
+            data.put("maxNearby", spawner.getMaxNearbyEntities());
+            data.put("playerRange", spawner.getRequiredPlayerRange());
+            data.put("spawnRange", spawner.getSpawnRange());
+        } else if (state instanceof Banner) {
+            data.put("patterns", new java.util.ArrayList<>(((Banner) state).getPatterns()));
+        } else if (state instanceof Skull && ((Skull) state).getOwnerProfile() != null) {
+            data.put("profile", ((Skull) state).getOwnerProfile());
+        }
+        if (data.isEmpty()) {
+            return null;
+        }
+        return new BakedBlockEntity(state.getX(), state.getY(), state.getZ(), data);
+    }
+
+    /**
+     * Write the captured contents into the block entity at
+     * <code>block</code>, which must already be of the captured kind (the
+     * block itself is pasted or generated first). Returns false if it is not.
+     * Must run on the main thread.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean apply(Block block) {
+        BlockState state = block.getState();
+        if (!(state instanceof TileState)) {
+            return false;
+        }
+        Object items = data.get("items");
+        if (items instanceof ItemStack[]) {
+            Inventory inventory = state instanceof Container ? ((Container) state).getSnapshotInventory()
+                    : state instanceof Lectern ? ((Lectern) state).getSnapshotInventory()
+                            : state instanceof ChiseledBookshelf
+                                    ? ((ChiseledBookshelf) state).getSnapshotInventory()
+                                    : null;
+            if (inventory != null) {
+                ItemStack[] contents = (ItemStack[]) items;
+                ItemStack[] copy = new ItemStack[inventory.getSize()];
+                for (int i = 0; i < copy.length && i < contents.length; i++) {
+                    copy[i] = contents[i] != null ? contents[i].clone() : null;
+                }
+                inventory.setContents(copy);
+            }
+        }
+        if (state instanceof Container && data.containsKey("name")) {
+            ((Container) state).setCustomName((String) data.get("name"));
+        }
+        if (state instanceof Lectern && data.get("page") instanceof Integer) {
+            ((Lectern) state).setPage((Integer) data.get("page"));
+        }
+        if (state instanceof Lootable) {
+            LootTable table = null;
+            if (data.get("lootTable") instanceof String) {
+                NamespacedKey key = NamespacedKey.fromString((String) data.get("lootTable"));
+                table = key != null ? Bukkit.getLootTable(key) : null;
+            }
+            // also clears a loot table left by a looted run
+            ((Lootable) state).setLootTable(table, data.get("seed") instanceof Long ? (Long) data.get("seed") : 0L);
+        }
+        if (state instanceof Sign) {
+            Sign sign = (Sign) state;
+            for (Side side : Side.values()) {
+                SignSide s = sign.getSide(side);
+                Object lines = data.get(side.name() + ".lines");
+                if (lines instanceof String[]) {
+                    String[] text = (String[]) lines;
+                    for (int i = 0; i < text.length && i < 4; i++) {
+                        s.setLine(i, text[i]);
+                    }
+                }
+                if (data.get(side.name() + ".color") instanceof String) {
+                    s.setColor(DyeColor.valueOf((String) data.get(side.name() + ".color")));
+                }
+                s.setGlowingText(Boolean.TRUE.equals(data.get(side.name() + ".glowing")));
+            }
+            sign.setWaxed(Boolean.TRUE.equals(data.get("waxed")));
+        } else if (state instanceof CreatureSpawner) {
+            CreatureSpawner spawner = (CreatureSpawner) state;
+            if (data.get("spawnedType") instanceof String) {
+                try {
+                    spawner.setSpawnedType(EntityType.valueOf((String) data.get("spawnedType")));
+                } catch (IllegalArgumentException e) {
+                    Bukkit.getLogger().warning("Unknown spawner type in baked template: " + data.get("spawnedType"));
+                }
+            }
+            // the max delay first so the min is never above it
+            spawner.setMaxSpawnDelay((Integer) data.getOrDefault("maxDelay", spawner.getMaxSpawnDelay()));
+            spawner.setMinSpawnDelay((Integer) data.getOrDefault("minDelay", spawner.getMinSpawnDelay()));
+            spawner.setDelay((Integer) data.getOrDefault("delay", spawner.getDelay()));
+            spawner.setSpawnCount((Integer) data.getOrDefault("spawnCount", spawner.getSpawnCount()));
+            spawner.setMaxNearbyEntities((Integer) data.getOrDefault("maxNearby", spawner.getMaxNearbyEntities()));
+            spawner.setRequiredPlayerRange(
+                    (Integer) data.getOrDefault("playerRange", spawner.getRequiredPlayerRange()));
+            spawner.setSpawnRange((Integer) data.getOrDefault("spawnRange", spawner.getSpawnRange()));
+        } else if (state instanceof Banner && data.get("patterns") instanceof List) {
+            ((Banner) state).setPatterns((List<Pattern>) data.get("patterns"));
+        } else if (state instanceof Skull && data.get("profile") instanceof PlayerProfile) {
+            ((Skull) state).setOwnerProfile((PlayerProfile) data.get("profile"));
+        }
+        return state.update(true, false);
+    }
+
+    /**
+     * Serialized form of the contents, see {@link #read}.
+     */
+    byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BukkitObjectOutputStream out = new BukkitObjectOutputStream(bytes)) {
+            out.writeObject(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    static BakedBlockEntity read(int x, int y, int z, byte[] bytes) throws IOException {
+        try (BukkitObjectInputStream in = new BukkitObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return new BakedBlockEntity(x, y, z, (Map<String, Object>) in.readObject());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("unreadable block entity at " + x + "," + y + "," + z + ": " + e.getMessage(), e);
+        }
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+}
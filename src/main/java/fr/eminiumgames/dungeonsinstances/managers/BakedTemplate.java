@@ -0,0 +1,449 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.block.Biome;
+import org.bukkit.block.data.BlockData;
+
+/**
+ * Read-only, compressed copy of the blocks of a template, used by
+ * {@link TemplateChunkGenerator} so that instances can start from an empty
+ * folder. Stored as <code>plugins/DungeonInstances/baked/&lt;template&gt;.bin</code>
+ * and memory-mapped once per template; every instance of the template reads
+ * from the same mapping.
+ *
+ * <p>Layout (big endian): magic, version, minY, maxY, block palette (UTF
+ * strings), biome palette, chunk count, then per chunk its x/z, its biome
+ * id, its length and a deflated payload. A payload holds one entry per 16
+ * block section: either a single palette id (uniform section) or 4096 ids in
+ * y/z/x order. The chunks are followed by the block entities (x, y, z,
+ * length, {@link BakedBlockEntity} bytes) and the names of the block entity
+ * kinds that could not be baked.
+ *
+ * <p>Block states, one biome per chunk and the block entity contents
+ * {@link BakedBlockEntity} supports are kept. Templates listing unsupported
+ * block entities are not used in generator mode.
+ */
+public class BakedTemplate {
+
+    private static final int MAGIC = 0x4449424B; // "DIBK"
+    private static final int VERSION = 2;
+    private static final File BAKED_FOLDER = new File("plugins/DungeonInstances/baked");
+    private static final Map<String, java.util.Optional<BakedTemplate>> CACHE = new ConcurrentHashMap<>();
+
+    private final String template;
+    private final int minY;
+    private final int maxY;
+    private final BlockData[] palette;
+    private final Biome[] biomes;
+    private final MappedByteBuffer data;
+    // chunk key -> offset of the payload length in the mapping
+    private final Map<Long, Integer> index;
+    private final Map<Long, Biome> chunkBiomes;
+    private final Map<Long, List<BakedBlockEntity>> blockEntities;
+    private final List<String> unsupported;
+    private final int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+
+    private BakedTemplate(String template, int minY, int maxY, BlockData[] palette, Biome[] biomes,
+            MappedByteBuffer data, Map<Long, Integer> index, Map<Long, Biome> chunkBiomes,
+            Map<Long, List<BakedBlockEntity>> blockEntities, List<String> unsupported) {
+        this.template = template;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.palette = palette;
+        this.biomes = biomes;
+        this.data = data;
+        this.index = index;
+        this.chunkBiomes = chunkBiomes;
+        this.blockEntities = blockEntities;
+        this.unsupported = unsupported;
+        int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (long key : index.keySet()) {
+            int cx = (int) (key >> 32);
+            int cz = (int) key;
+            minX = Math.min(minX, cx);
+            minZ = Math.min(minZ, cz);
+            maxX = Math.max(maxX, cx);
+            maxZ = Math.max(maxZ, cz);
+        }
+        this.minChunkX = index.isEmpty() ? 0 : minX;
+        this.minChunkZ = index.isEmpty() ? 0 : minZ;
+        this.maxChunkX = index.isEmpty() ? -1 : maxX;
+        this.maxChunkZ = index.isEmpty() ? -1 : maxZ;
+    }
+
+    public static long chunkKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    public static File fileFor(String templateName) {
+        return new File(BAKED_FOLDER, templateName + ".bin");
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public int getChunkCount() {
+        return index.size();
+    }
+
+    /**
+     * Keys (see {@link #chunkKey}) of every baked chunk.
+     */
+    public java.util.Set<Long> getChunkKeys() {
+        return java.util.Collections.unmodifiableSet(index.keySet());
+    }
+
+    public int getMinChunkX() {
+        return minChunkX;
+    }
+
+    public int getMinChunkZ() {
+        return minChunkZ;
+    }
+
+    /**
+     * Width and depth of the baked area, in chunks.
+     */
+    public int getWidthChunks() {
+        return maxChunkX - minChunkX + 1;
+    }
+
+    public int getDepthChunks() {
+        return maxChunkZ - minChunkZ + 1;
+    }
+
+    public boolean hasChunk(int cx, int cz) {
+        return index.containsKey(chunkKey(cx, cz));
+    }
+
+    /**
+     * Biome recorded for the chunk, or null outside the bake.
+     */
+    public Biome getBiome(int cx, int cz) {
+        return chunkBiomes.get(chunkKey(cx, cz));
+    }
+
+    public List<Biome> getBiomes() {
+        return List.of(biomes);
+    }
+
+    /**
+     * Baked block entities of the chunk, in template coordinates.
+     */
+    public List<BakedBlockEntity> getBlockEntities(int cx, int cz) {
+        return blockEntities.getOrDefault(chunkKey(cx, cz), java.util.Collections.emptyList());
+    }
+
+    /**
+     * Kinds of the block entities whose contents could not be baked (empty if
+     * the bake is complete).
+     */
+    public List<String> getUnsupportedBlockEntities() {
+        return unsupported;
+    }
+
+    /**
+     * Baked template for the given name, memory-mapping it on first use.
+     * Returns null if the template was never baked or the file is unreadable.
+     */
+    public static BakedTemplate get(String templateName) {
+        return CACHE.computeIfAbsent(templateName, k -> java.util.Optional.ofNullable(load(k))).orElse(null);
+    }
+
+    /**
+     * Drop the cached mapping so the next {@link #get} reads the file again.
+     */
+    public static void invalidate(String templateName) {
+        CACHE.remove(templateName);
+    }
+
+    private static BakedTemplate load(String templateName) {
+        return load(templateName, fileFor(templateName), Bukkit::createBlockData, key -> {
+            NamespacedKey k = NamespacedKey.fromString(key);
+            Biome biome = k != null ? Registry.BIOME.get(k) : null;
+            return biome != null ? biome : Biome.PLAINS;
+        });
+    }
+
+    /**
+     * Read a baked file, resolving its block states and biome keys with the
+     * given functions.
+     */
+    static BakedTemplate load(String templateName, File f, Function<String, BlockData> blocks,
+            Function<String, Biome> biomeKeys) {
+        if (!f.isFile()) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                Bukkit.getLogger().warning("Baked template " + f.getName() + " has an unknown format, ignoring it.");
+                return null;
+            }
+            int minY = buf.getInt();
+            int maxY = buf.getInt();
+            BlockData[] palette = new BlockData[buf.getInt()];
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] = blocks.apply(readUtf(buf));
+            }
+            Biome[] biomes = new Biome[buf.getInt()];
+            for (int i = 0; i < biomes.length; i++) {
+                biomes[i] = biomeKeys.apply(readUtf(buf));
+            }
+            int chunks = buf.getInt();
+            Map<Long, Integer> index = new HashMap<>(chunks * 2);
+            Map<Long, Biome> chunkBiomes = new HashMap<>(chunks * 2);
+            for (int i = 0; i < chunks; i++) {
+                long key = chunkKey(buf.getInt(), buf.getInt());
+                chunkBiomes.put(key, biomes[buf.getShort() & 0xFFFF]);
+                int len = buf.getInt();
+                index.put(key, buf.position() - 4);
+                buf.position(buf.position() + len);
+            }
+            Map<Long, List<BakedBlockEntity>> blockEntities = new HashMap<>();
+            int entities = buf.getInt();
+            for (int i = 0; i < entities; i++) {
+                int x = buf.getInt(), y = buf.getInt(), z = buf.getInt();
+                byte[] bytes = new byte[buf.getInt()];
+                buf.get(bytes);
+                blockEntities.computeIfAbsent(chunkKey(x >> 4, z >> 4), k -> new ArrayList<>())
+                        .add(BakedBlockEntity.read(x, y, z, bytes));
+            }
+            List<String> unsupported = new ArrayList<>();
+            for (int i = buf.getInt(); i > 0; i--) {
+                unsupported.add(readUtf(buf));
+            }
+            return new BakedTemplate(templateName, minY, maxY, palette, biomes, buf, index, chunkBiomes,
+                    blockEntities, java.util.Collections.unmodifiableList(unsupported));
+        } catch (IOException | RuntimeException e) {
+            Bukkit.getLogger().warning("Failed to read baked template " + f.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String readUtf(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(bytes);
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decoded view of one baked chunk, or null if the chunk is outside the
+     * bake. Safe to call from chunk generation worker threads.
+     */
+    public Chunk decode(int cx, int cz) {
+        Integer offset = index.get(chunkKey(cx, cz));
+        if (offset == null) {
+            return null;
+        }
+        int len = data.getInt(offset);
+        byte[] compressed = new byte[len];
+        data.get(offset + 4, compressed);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(len * 4);
+            byte[] tmp = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(tmp);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(tmp, 0, n);
+            }
+            return new Chunk(ByteBuffer.wrap(out.toByteArray()));
+        } catch (DataFormatException e) {
+            Bukkit.getLogger().warning("Corrupt baked chunk " + cx + "," + cz + " in " + template);
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * One decoded chunk: per section, either a uniform block or the full id
+     * array.
+     */
+    public class Chunk {
+        private final BlockData[] uniform;
+        private final short[][] sections;
+
+        private Chunk(ByteBuffer buf) {
+            int count = (maxY - minY) >> 4;
+            this.uniform = new BlockData[count];
+            this.sections = new short[count][];
+            for (int s = 0; s < count; s++) {
+                if (buf.get() == 0) {
+                    uniform[s] = palette[buf.getShort() & 0xFFFF];
+                } else {
+                    short[] ids = new short[4096];
+                    buf.asShortBuffer().get(ids);
+                    buf.position(buf.position() + 8192);
+                    sections[s] = ids;
+                }
+            }
+        }
+
+        public int getMinY() {
+            return minY;
+        }
+
+        public int getSectionCount() {
+            return uniform.length;
+        }
+
+        /**
+         * Uniform block of the section, or null if the section is mixed.
+         */
+        public BlockData getUniform(int section) {
+            return uniform[section];
+        }
+
+        public BlockData getBlock(int section, int x, int y, int z) {
+            BlockData u = uniform[section];
+            return u != null ? u : palette[sections[section][(y << 8) | (z << 4) | x] & 0xFFFF];
+        }
+    }
+
+    /**
+     * Encode the given chunk snapshots and block entities and write the baked
+     * file, replacing any previous bake atomically. <code>unsupported</code>
+     * names the block entity kinds left out. Pure data work: meant for an
+     * async thread.
+     */
+    public static void write(String templateName, List<ChunkSnapshot> snapshots, List<BakedBlockEntity> blockEntities,
+            java.util.Collection<String> unsupported, int minY, int maxY) throws IOException {
+        BAKED_FOLDER.mkdirs();
+        int biomeY = Math.min(Math.max(minY, 64), maxY - 1);
+        write(fileFor(templateName), snapshots, snap -> snap.getBiome(8, biomeY, 8).getKey().toString(),
+                blockEntities, unsupported, minY, maxY);
+        invalidate(templateName);
+    }
+
+    /**
+     * Write the baked file to <code>target</code> (through a temporary file
+     * next to it). <code>biomeKeys</code> gives the biome key recorded for a
+     * chunk.
+     */
+    static void write(File target, List<ChunkSnapshot> snapshots, Function<ChunkSnapshot, String> biomeKeys,
+            List<BakedBlockEntity> blockEntities, java.util.Collection<String> unsupported, int minY, int maxY)
+            throws IOException {
+        Map<String, Integer> paletteIds = new HashMap<>();
+        List<String> paletteList = new ArrayList<>();
+        Map<String, Integer> biomeIds = new HashMap<>();
+        List<String> biomeList = new ArrayList<>();
+        int sectionCount = (maxY - minY) >> 4;
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        bodyOut.writeInt(snapshots.size());
+        short[] ids = new short[4096];
+        for (ChunkSnapshot snap : snapshots) {
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            DataOutputStream chunkOut = new DataOutputStream(raw);
+            for (int s = 0; s < sectionCount; s++) {
+                int baseY = minY + (s << 4);
+                boolean uniform = true;
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        for (int x = 0; x < 16; x++) {
+                            String state = snap.getBlockData(x, baseY + y, z).getAsString();
+                            Integer id = paletteIds.get(state);
+                            if (id == null) {
+                                id = paletteList.size();
+                                paletteList.add(state);
+                                paletteIds.put(state, id);
+                            }
+                            int i = (y << 8) | (z << 4) | x;
+                            ids[i] = (short) (int) id;
+                            uniform &= ids[i] == ids[0];
+                        }
+                    }
+                }
+                if (uniform) {
+                    chunkOut.writeByte(0);
+                    chunkOut.writeShort(ids[0]);
+                } else {
+                    chunkOut.writeByte(1);
+                    for (short id : ids) {
+                        chunkOut.writeShort(id);
+                    }
+                }
+            }
+            chunkOut.flush();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(compressed,
+                    new Deflater(Deflater.BEST_COMPRESSION))) {
+                raw.writeTo(dos);
+            }
+            String biomeKey = biomeKeys.apply(snap);
+            bodyOut.writeInt(snap.getX());
+            bodyOut.writeInt(snap.getZ());
+            bodyOut.writeShort(biomeIds.computeIfAbsent(biomeKey, k -> {
+                biomeList.add(k);
+                return biomeList.size() - 1;
+            }));
+            bodyOut.writeInt(compressed.size());
+            compressed.writeTo(bodyOut);
+        }
+        bodyOut.writeInt(blockEntities.size());
+        for (BakedBlockEntity be : blockEntities) {
+            byte[] bytes = be.toBytes();
+            bodyOut.writeInt(be.x);
+            bodyOut.writeInt(be.y);
+            bodyOut.writeInt(be.z);
+            bodyOut.writeInt(bytes.length);
+            bodyOut.write(bytes);
+        }
+        bodyOut.writeInt(unsupported.size());
+        for (String kind : unsupported) {
+            bodyOut.writeUTF(kind);
+        }
+        bodyOut.flush();
+
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new java.io.BufferedOutputStream(new java.io.FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(minY);
+            out.writeInt(maxY);
+            out.writeInt(paletteList.size());
+            for (String s : paletteList) {
+                out.writeUTF(s);
+            }
+            out.writeInt(biomeList.size());
+            for (String s : biomeList) {
+                out.writeUTF(s);
+            }
+            body.writeTo(out);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
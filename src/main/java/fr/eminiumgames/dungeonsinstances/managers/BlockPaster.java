@@ -0,0 +1,169 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+
+/**
+ * Writes the blocks of a {@link BakedTemplate} into a loaded world, shifted
+ * by a whole number of chunks. Work is spread over ticks with a per-tick time
+ * budget, one chunk at a time. Blocks already matching the template are left
+ * untouched, so pasting over a previous copy only rewrites what changed; the
+ * baked block entity contents of a pasted chunk are always written back.
+ */
+public class BlockPaster {
+
+    private BlockPaster() {
+    }
+
+    /**
+     * Paste every baked chunk at <code>(cx + offsetChunkX, cz + offsetChunkZ)</code>.
+     */
+    public static CompletableFuture<Integer> paste(BakedTemplate baked, World world, int offsetChunkX,
+            int offsetChunkZ, long budgetMs) {
+        return paste(baked, world, offsetChunkX, offsetChunkZ, baked.getChunkKeys(), budgetMs);
+    }
+
+    /**
+     * Paste only the given baked chunks (keys from {@link BakedTemplate#chunkKey}).
+     * The future completes on the main thread with the number of blocks that
+     * had to be changed.
+     */
+    public static CompletableFuture<Integer> paste(BakedTemplate baked, World world, int offsetChunkX,
+            int offsetChunkZ, Collection<Long> chunkKeys, long budgetMs) {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        Deque<Long> queue = new ArrayDeque<>(chunkKeys);
+        long budgetNanos = Math.max(1L, budgetMs) * 1_000_000L;
+        int[] changed = new int[1];
+        BukkitTask[] taskHolder = new BukkitTask[1];
+        taskHolder[0] = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), () -> {
+            if (Bukkit.getWorld(world.getUID()) == null) {
+                taskHolder[0].cancel();
+                done.completeExceptionally(new IllegalStateException(world.getName() + " was unloaded"));
+                return;
+            }
+            long start = System.nanoTime();
+            // always make progress, even when a single chunk exceeds the budget
+            do {
+                Long key = queue.poll();
+                if (key == null) {
+                    break;
+                }
+                try {
+                    changed[0] += pasteChunk(baked, world, (int) (key >> 32), (int) (long) key, offsetChunkX,
+                            offsetChunkZ);
+                } catch (RuntimeException e) {
+                    Bukkit.getLogger().warning("Failed to paste chunk of " + baked.getTemplate() + ": " + e);
+                }
+            } while (System.nanoTime() - start < budgetNanos);
+            if (queue.isEmpty()) {
+                taskHolder[0].cancel();
+                done.complete(changed[0]);
+            }
+        }, 1L, 1L);
+        return done;
+    }
+
+    /**
+     * Turn every non-air block of the given world chunks (keys from
+     * {@link BakedTemplate#chunkKey}, in world coordinates) into air, with the
+     * same per-tick budget as {@link #paste}.
+     */
+    public static CompletableFuture<Integer> clear(World world, Collection<Long> chunkKeys, long budgetMs) {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        Deque<Long> queue = new ArrayDeque<>(chunkKeys);
+        long budgetNanos = Math.max(1L, budgetMs) * 1_000_000L;
+        int[] changed = new int[1];
+        BukkitTask[] taskHolder = new BukkitTask[1];
+        taskHolder[0] = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), () -> {
+            if (Bukkit.getWorld(world.getUID()) == null) {
+                taskHolder[0].cancel();
+                done.completeExceptionally(new IllegalStateException(world.getName() + " was unloaded"));
+                return;
+            }
+            long start = System.nanoTime();
+            do {
+                Long key = queue.poll();
+                if (key == null) {
+                    break;
+                }
+                Chunk target = world.getChunkAt((int) (key >> 32), (int) (long) key);
+                ChunkSnapshot current = target.getChunkSnapshot(false, false, false);
+                int minHeight = world.getMinHeight();
+                for (int sy = 0; sy < (world.getMaxHeight() - minHeight) >> 4; sy++) {
+                    if (current.isSectionEmpty(sy)) {
+                        continue;
+                    }
+                    int baseY = minHeight + (sy << 4);
+                    for (int y = 0; y < 16; y++) {
+                        for (int z = 0; z < 16; z++) {
+                            for (int x = 0; x < 16; x++) {
+                                if (!current.getBlockType(x, baseY + y, z).isAir()) {
+                                    target.getBlock(x, baseY + y, z).setType(org.bukkit.Material.AIR, false);
+                                    changed[0]++;
+                                }
+                            }
+                        }
+                    }
+                }
+            } while (System.nanoTime() - start < budgetNanos);
+            if (queue.isEmpty()) {
+                taskHolder[0].cancel();
+                done.complete(changed[0]);
+            }
+        }, 1L, 1L);
+        return done;
+    }
+
+    /**
+     * Paste one baked chunk; returns the number of blocks changed.
+     */
+    static int pasteChunk(BakedTemplate baked, World world, int cx, int cz, int offsetChunkX,
+            int offsetChunkZ) {
+        BakedTemplate.Chunk source = baked.decode(cx, cz);
+        if (source == null) {
+            return 0;
+        }
+        Chunk target = world.getChunkAt(cx + offsetChunkX, cz + offsetChunkZ);
+        ChunkSnapshot current = target.getChunkSnapshot(false, false, false);
+        int minHeight = world.getMinHeight();
+        int maxHeight = world.getMaxHeight();
+        int changed = 0;
+        for (int s = 0; s < source.getSectionCount(); s++) {
+            int baseY = source.getMinY() + (s << 4);
+            if (baseY < minHeight || baseY + 16 > maxHeight) {
+                continue;
+            }
+            BlockData uniform = source.getUniform(s);
+            if (uniform != null && uniform.getMaterial().isAir() && current.isSectionEmpty((baseY - minHeight) >> 4)) {
+                continue; // nothing on either side
+            }
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        BlockData wanted = uniform != null ? uniform : source.getBlock(s, x, y, z);
+                        if (!wanted.equals(current.getBlockData(x, baseY + y, z))) {
+                            target.getBlock(x, baseY + y, z).setBlockData(wanted, false);
+                            changed++;
+                        }
+                    }
+                }
+            }
+        }
+        // looted chests, edited signs... even where the block itself is unchanged
+        for (BakedBlockEntity be : baked.getBlockEntities(cx, cz)) {
+            be.apply(world.getBlockAt(be.getX() + (offsetChunkX << 4), be.getY(), be.getZ() + (offsetChunkZ << 4)));
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,188 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+
+/**
+ * Loads a square of chunks around a location ahead of a teleport and pins
+ * them with plugin chunk tickets until {@link Preload#release()}. On Paper
+ * the chunks are requested through <code>World#getChunkAtAsync</code> so the
+ * main thread never blocks on disk; on plain Spigot they are loaded
+ * synchronously a few per tick.
+ */
+public class ChunkPreloader {
+
+    // sync fallback only
+    private static final int CHUNKS_PER_TICK = 4;
+
+    // Paper's World#getChunkAtAsync(int, int), or null on Spigot
+    private static final Method GET_CHUNK_AT_ASYNC = findAsyncLoader();
+
+    private ChunkPreloader() {
+    }
+
+    private static Method findAsyncLoader() {
+        try {
+            return World.class.getMethod("getChunkAtAsync", int.class, int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean isAsyncSupported() {
+        return GET_CHUNK_AT_ASYNC != null;
+    }
+
+    /**
+     * Start loading every chunk within <code>radius</code> chunks of the
+     * location. Must be called on the main thread.
+     */
+    public static Preload preload(Location center, int radius) {
+        World world = center.getWorld();
+        int cx = center.getBlockX() >> 4;
+        int cz = center.getBlockZ() >> 4;
+        Preload preload = new Preload(world);
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                preload.pending.add(new int[] { cx + dx, cz + dz });
+            }
+        }
+        if (GET_CHUNK_AT_ASYNC != null) {
+            preload.loadAsync();
+        } else {
+            preload.loadSync();
+        }
+        return preload;
+    }
+
+    /**
+     * Start loading the given chunks, as packed keys (see
+     * {@link BakedTemplate#chunkKey}). Must be called on the main thread.
+     */
+    public static Preload preload(World world, java.util.Collection<Long> chunkKeys) {
+        Preload preload = new Preload(world);
+        for (long key : chunkKeys) {
+            preload.pending.add(new int[] { (int) (key >> 32), (int) key });
+        }
+        if (GET_CHUNK_AT_ASYNC != null) {
+            preload.loadAsync();
+        } else {
+            preload.loadSync();
+        }
+        return preload;
+    }
+
+    /**
+     * A running or finished preload. {@link #getFuture()} completes on the
+     * main thread once every chunk is loaded and ticketed.
+     */
+    public static class Preload {
+        private final World world;
+        private final Deque<int[]> pending = new ArrayDeque<>();
+        private final List<int[]> ticketed = new ArrayList<>();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private BukkitTask task;
+        private boolean released;
+
+        private Preload(World world) {
+            this.world = world;
+        }
+
+        public CompletableFuture<Void> getFuture() {
+            return future;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void loadAsync() {
+            AtomicInteger remaining = new AtomicInteger(pending.size());
+            if (remaining.get() == 0) {
+                future.complete(null);
+                return;
+            }
+            for (int[] c : pending) {
+                CompletableFuture<Object> load;
+                try {
+                    load = (CompletableFuture<Object>) GET_CHUNK_AT_ASYNC.invoke(world, c[0], c[1]);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    load = CompletableFuture.failedFuture(e);
+                }
+                // Paper completes chunk futures on the main thread, but do not rely on it
+                load.whenComplete((chunk, ex) -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(),
+                        () -> {
+                            if (ex != null) {
+                                // the teleport will load it the usual way
+                                Bukkit.getLogger().warning("Async load of chunk " + c[0] + "," + c[1] + " in "
+                                        + world.getName() + " failed: " + ex);
+                            } else {
+                                ticket(c);
+                            }
+                            if (remaining.decrementAndGet() == 0) {
+                                future.complete(null);
+                            }
+                        }));
+            }
+            pending.clear();
+        }
+
+        private void loadSync() {
+            task = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), () -> {
+                if (released || Bukkit.getWorld(world.getUID()) == null) {
+                    task.cancel();
+                    future.complete(null);
+                    return;
+                }
+                for (int i = 0; i < CHUNKS_PER_TICK && !pending.isEmpty(); i++) {
+                    int[] c = pending.poll();
+                    world.getChunkAt(c[0], c[1]);
+                    ticket(c);
+                }
+                if (pending.isEmpty()) {
+                    task.cancel();
+                    future.complete(null);
+                }
+            }, 0L, 1L);
+        }
+
+        private void ticket(int[] c) {
+            if (released || Bukkit.getWorld(world.getUID()) == null) {
+                return;
+            }
+            if (world.addPluginChunkTicket(c[0], c[1], DungeonInstances.getInstance())) {
+                ticketed.add(c);
+            }
+        }
+
+        /**
+         * Drop the tickets; the chunks then stay loaded only as long as
+         * players or the server keep them. Safe to call more than once.
+         */
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (task != null) {
+                task.cancel();
+            }
+            if (Bukkit.getWorld(world.getUID()) != null) {
+                for (int[] c : ticketed) {
+                    world.removePluginChunkTicket(c[0], c[1], DungeonInstances.getInstance());
+                }
+            }
+            ticketed.clear();
+            future.complete(null);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.DoubleChest;
+import org.bukkit.inventory.BlockInventoryHolder;
+import org.bukkit.inventory.InventoryHolder;
+
+/**
+ * Chunks touched in each instance world during the current run, as
+ * {@link BakedTemplate#chunkKey} keys. Blocks of other worlds are ignored.
+ * Used by {@link InstanceResetManager} on the main thread.
+ */
+class DirtyChunks {
+
+    private final Predicate<World> tracked;
+    // instance world name -> chunk keys touched during the current run
+    private final Map<String, Set<Long>> chunks = new HashMap<>();
+
+    DirtyChunks(Predicate<World> tracked) {
+        this.tracked = tracked;
+    }
+
+    void mark(Block block) {
+        World world = block.getWorld();
+        if (!tracked.test(world)) {
+            return;
+        }
+        chunks.computeIfAbsent(world.getName(), k -> new HashSet<>())
+                .add(BakedTemplate.chunkKey(block.getX() >> 4, block.getZ() >> 4));
+    }
+
+    void mark(List<Block> blocks) {
+        for (Block b : blocks) {
+            mark(b);
+        }
+    }
+
+    /**
+     * Mark the block(s) behind a container inventory; other holders (players,
+     * entities) are ignored.
+     */
+    void mark(InventoryHolder holder) {
+        if (holder instanceof BlockInventoryHolder) {
+            mark(((BlockInventoryHolder) holder).getBlock());
+        } else if (holder instanceof DoubleChest) {
+            DoubleChest chest = (DoubleChest) holder;
+            mark(chest.getLocation().getBlock());
+            if (chest.getLeftSide() instanceof BlockInventoryHolder) {
+                mark(((BlockInventoryHolder) chest.getLeftSide()).getBlock());
+            }
+            if (chest.getRightSide() instanceof BlockInventoryHolder) {
+                mark(((BlockInventoryHolder) chest.getRightSide()).getBlock());
+            }
+        }
+    }
+
+    /**
+     * Remove and return the chunks touched in the world, empty when none.
+     */
+    Set<Long> take(String worldName) {
+        Set<Long> dirty = chunks.remove(worldName);
+        return dirty != null ? dirty : Set.of();
+    }
+
+    void forget(String worldName) {
+        chunks.remove(worldName);
+    }
+}
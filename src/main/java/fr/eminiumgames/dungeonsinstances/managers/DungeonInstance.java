@@ -0,0 +1,85 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.Difficulty;
+
+/**
+ * Immutable description of a loaded instance world, registered in the
+ * {@link InstanceRegistry} under the world's UID. Changes (state, party)
+ * produce a new object that replaces the old one in the registry.
+ */
+public final class DungeonInstance {
+
+    public enum State {
+        // a party is (or is about to be) playing it
+        ACTIVE,
+        // prepared in advance, waiting for a launch
+        STANDBY,
+        // being restored after its party left
+        RESETTING,
+        // restored, waiting for the next launch
+        IDLE
+    }
+
+    private final UUID worldUid;
+    private final String worldName;
+    private final String template;
+    private final Difficulty difficulty;
+    private final Set<UUID> party;
+    private final long createdAt;
+    private final State state;
+
+    public DungeonInstance(UUID worldUid, String worldName, String template, Difficulty difficulty, Set<UUID> party,
+            long createdAt, State state) {
+        this.worldUid = worldUid;
+        this.worldName = worldName;
+        this.template = template;
+        this.difficulty = difficulty;
+        this.party = party == null ? Collections.emptySet() : Set.copyOf(party);
+        this.createdAt = createdAt;
+        this.state = state;
+    }
+
+    public UUID getWorldUid() {
+        return worldUid;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public Difficulty getDifficulty() {
+        return difficulty;
+    }
+
+    /**
+     * Members of the party the instance was launched for; empty until the
+     * party is teleported in.
+     */
+    public Set<UUID> getParty() {
+        return party;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public DungeonInstance withState(State newState) {
+        return new DungeonInstance(worldUid, worldName, template, difficulty, party, createdAt, newState);
+    }
+
+    public DungeonInstance withParty(Set<UUID> newParty) {
+        return new DungeonInstance(worldUid, worldName, template, difficulty, newParty, createdAt, state);
+    }
+}
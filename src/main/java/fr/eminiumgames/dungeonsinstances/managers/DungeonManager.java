@@ -4,13 +4,15 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -30,7 +32,12 @@ import fr.eminiumgames.dungeonsinstances.DungeonInstances;
 
 public class DungeonManager {
 
+    // written into a template folder once its living entities were stripped
+    public static final String ENTITY_FREE_MARKER = "entities.stripped";
     private final Map<String, World> dungeonCache = new HashMap<>();
+    // every template found on disk, loaded as a world or not
+    private final java.util.Set<String> templateNames = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    private final TemplateUsage templateUsage = new TemplateUsage();
     // worlds currently undergoing async chunk forcing (by name)
     private final java.util.Set<String> pendingChunkLoads = java.util.Collections
             .synchronizedSet(new java.util.HashSet<>());
@@ -38,8 +45,10 @@ public class DungeonManager {
     private final File dungeonTemplatesFolder = new File("templates-dungeons");
     private final Map<String, SpawnPoint> spawnPoints = new HashMap<>();
 
-    // remember difficulty selected when each instance was created
-    private final Map<String, Difficulty> instanceDifficulties = new java.util.concurrent.ConcurrentHashMap<>();
+    // template, difficulty, party and state of every loaded instance world
+    private final InstanceRegistry registry = new InstanceRegistry();
+    // lifecycle events on disk, replayed after a restart or crash
+    private final InstanceJournal journal = new InstanceJournal();
     private final File spawnDataFile = new File("plugins/DungeonInstances/spawnPoints.json");
 
     /**
@@ -108,14 +117,74 @@ public class DungeonManager {
     // Name of the persistent data key we use to flag a mob's loot-table
     // alias. Stored in NBT so entities can carry it through world saves.
     private static org.bukkit.NamespacedKey lootAliasKey;
+    // flags the mobs spawned from saved mob data, as opposed to the
+    // entities that came with the template world
+    private static org.bukkit.NamespacedKey dungeonMobKey;
 
     // store mobs placed in edit mode so they can be resurrected in instances
     private final File mobDataFolder = new File("plugins/DungeonInstances/mobSpawns");
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
+    // executors used by the async creation pipeline: file work goes to the
+    // Bukkit async pool, anything touching worlds or entities hops back to the
+    // main thread.
+    private final Executor asyncExecutor = task -> Bukkit.getScheduler()
+            .runTaskAsynchronously(DungeonInstances.getInstance(), task);
+    private final Executor mainThreadExecutor = task -> {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), task);
+        }
+    };
+
+    // decides how template folders are cloned (reflink or copy)
+    private final TemplateCloner cloner;
+    // per template: clones hold the read lock while they read the folder,
+    // whatever writes it (edit save, import, optimizer, loading the template
+    // world) holds the write lock
+    private final Map<String, java.util.concurrent.locks.ReadWriteLock> templateLocks = new java.util.concurrent.ConcurrentHashMap<>();
+    // chunk tickets of eagerly populated (standby) worlds, by world name
+    private final Map<String, ChunkPreloader.Preload> pinnedChunks = new HashMap<>();
+    // pre-staged instance folders per template
+    private final InstancePoolManager instancePool = new InstancePoolManager(this);
+    // fully loaded, populated worlds waiting for a party
+    private final StandbyInstanceManager standbyManager = new StandbyInstanceManager(this);
+    // shared worlds hosting several runs of "host" mode templates
+    private final HostWorldManager hostManager = new HostWorldManager(this);
+    // background deletion of unloaded world folders
+    private final TrashManager trashManager = new TrashManager();
+    // instances restored in place instead of being deleted
+    private final InstanceResetManager resetManager = new InstanceResetManager(this);
+    // empty instances kept on disk for their party to rejoin
+    private final HibernationManager hibernationManager = new HibernationManager(this);
+    // caps and queues /dungeon instance launches
+    private final AdmissionController admissionController = new AdmissionController(this);
+    // spawns instance mobs as their chunks load
+    private final LazyMobSpawner lazySpawner = new LazyMobSpawner(this);
+    // upgrades and relights template chunks once per server version
+    private final TemplateOptimizer templateOptimizer = new TemplateOptimizer(this);
+    // instances whose chunks come from a baked template (empty folder + generator)
+    private final java.util.Set<String> generatedInstances = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    // entity id -> whether clearMobs would remove it (read from async threads)
+    private final Map<String, Boolean> livingEntityIds = new java.util.concurrent.ConcurrentHashMap<>();
+    // region manifests per template, loaded lazily (read from async threads)
+    private final Map<String, java.util.Optional<TemplateManifest>> manifests = new java.util.concurrent.ConcurrentHashMap<>();
+    // footprints computed from mobs/spawn for templates without a manifest
+    private final Map<String, java.util.Optional<TemplateManifest>> footprints = new java.util.concurrent.ConcurrentHashMap<>();
+    // footprint of each loaded instance, checked on every chunk unload
+    private final Map<String, TemplateManifest> instanceFootprints = new java.util.concurrent.ConcurrentHashMap<>();
+    // completes once the saved mobs of an async-created instance are spawned
+    private final Map<String, CompletableFuture<Void>> mobsReady = new java.util.concurrent.ConcurrentHashMap<>();
+    // compiled saved mobs per template, shared by every instance
+    private final Map<String, CompletableFuture<SpawnPlan>> spawnPlans = new java.util.concurrent.ConcurrentHashMap<>();
+
     public DungeonManager() {
         // initialise the namespaced key once we have a plugin instance
         lootAliasKey = new org.bukkit.NamespacedKey(DungeonInstances.getInstance(), "lootAlias");
+        dungeonMobKey = new org.bukkit.NamespacedKey(DungeonInstances.getInstance(), "dungeon_mob");
+        cloner = new TemplateCloner(DungeonInstances.getInstance().getConfig().getString("clone.strategy", "auto"),
+                Bukkit.getWorldContainer());
         reloadSpawnPoints();
     }
 
@@ -149,6 +218,10 @@ public class DungeonManager {
         saveSpawnPoints();
     }
 
+    public SpawnPoint getSpawnPoint(String templateName) {
+        return spawnPoints.get(templateName);
+    }
+
     public Location getSpawnLocation(String templateName, World world) {
         SpawnPoint sp = spawnPoints.get(templateName);
         if (sp != null) {
@@ -188,6 +261,278 @@ public class DungeonManager {
         }
     }
 
+    /**
+     * Make a template known without loading its world. Instances are cloned
+     * from the template folder on disk, so this is all startup needs; the
+     * live world is only loaded on demand by {@link #getTemplateWorld}.
+     */
+    public boolean registerTemplate(String templateName) {
+        File templateFolder = new File(dungeonTemplatesFolder, templateName);
+        if (!templateFolder.isDirectory()) {
+            Bukkit.getLogger().warning("Template " + templateName + " does not exist or is not a directory.");
+            return false;
+        }
+        templateNames.add(templateName);
+        return true;
+    }
+
+    /**
+     * The live world of a template, loaded if needed. Used by the few
+     * operations that read blocks from the template itself (baking without an
+     * edit session); it is unloaded again once idle for
+     * <code>templates.idle-unload-minutes</code>.
+     */
+    public World getTemplateWorld(String templateName) {
+        World world = dungeonCache.get(templateName);
+        if (world == null || Bukkit.getWorld(world.getUID()) == null) {
+            dungeonCache.remove(templateName);
+            if (!templateNames.contains(templateName)) {
+                return null;
+            }
+            // loading writes level.dat and session.lock under a running clone
+            if (!tryLockTemplate(templateName)) {
+                Bukkit.getLogger().warning("Template " + templateName
+                        + " is being cloned into an instance; not loading its world now.");
+                return null;
+            }
+            try {
+                loadDungeonTemplate(templateName, false);
+            } finally {
+                unlockTemplate(templateName);
+            }
+            world = dungeonCache.get(templateName);
+        }
+        if (world != null) {
+            templateUsage.touch(templateName, System.currentTimeMillis());
+        }
+        return world;
+    }
+
+    private java.util.concurrent.locks.ReadWriteLock templateLock(String templateName) {
+        return templateLocks.computeIfAbsent(templateName,
+                k -> new java.util.concurrent.locks.ReentrantReadWriteLock());
+    }
+
+    /**
+     * Take the template's write lock before changing its folder, unless a
+     * clone is reading it right now; the main thread never waits for a
+     * clone. Release it with {@link #unlockTemplate} on the same thread.
+     */
+    public boolean tryLockTemplate(String templateName) {
+        return templateLock(templateName).writeLock().tryLock();
+    }
+
+    public void unlockTemplate(String templateName) {
+        templateLock(templateName).writeLock().unlock();
+    }
+
+    /**
+     * Unload template worlds nobody has used for
+     * <code>templates.idle-unload-minutes</code>. They are not saved: a
+     * template only changes through an edit session, which writes the folder
+     * directly.
+     */
+    public void unloadIdleTemplates() {
+        long idle = DungeonInstances.getInstance().getConfig().getLong("templates.idle-unload-minutes", 5L)
+                * 60_000L;
+        if (idle <= 0) {
+            return;
+        }
+        // unloaded by someone else
+        dungeonCache.values().removeIf(world -> Bukkit.getWorld(world.getUID()) == null);
+        for (String templateName : templateUsage.idle(dungeonCache.keySet(),
+                t -> !dungeonCache.get(t).getPlayers().isEmpty(), System.currentTimeMillis(), idle)) {
+            if (Bukkit.unloadWorld(dungeonCache.get(templateName), false)) {
+                dungeonCache.remove(templateName);
+                templateUsage.forget(templateName);
+                Bukkit.getLogger().info("Unloaded idle dungeon template: " + templateName);
+            }
+        }
+    }
+
+    /**
+     * Unload the live world of a template, if loaded, before its folder is
+     * rewritten. Returns false if the server refused to unload it.
+     */
+    public boolean unloadTemplateWorld(String templateName) {
+        World live = dungeonCache.remove(templateName);
+        templateUsage.forget(templateName);
+        if (live == null || Bukkit.getWorld(live.getUID()) == null) {
+            return true;
+        }
+        if (!Bukkit.unloadWorld(live, false)) {
+            dungeonCache.put(templateName, live);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write the template (world folder, saved mobs, profile and spawn point)
+     * to <code>packages/&lt;template&gt;.dtpl</code> off the main thread.
+     */
+    public CompletableFuture<File> exportTemplate(String templateName) {
+        File worldFolder = new File(dungeonTemplatesFolder, templateName);
+        if (!templateNames.contains(templateName) || !worldFolder.isDirectory()) {
+            return CompletableFuture.failedFuture(new IOException("Template " + templateName + " does not exist"));
+        }
+        SpawnPoint spawn = spawnPoints.get(templateName);
+        File target = TemplatePackage.fileFor(templateName);
+        File mobs = mobFileFor(templateName);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                TemplatePackage.Meta meta = TemplatePackage.export(templateName, worldFolder, mobs,
+                        InstanceProfile.fileFor(templateName), spawn, target);
+                Bukkit.getLogger().info("Exported template " + templateName + " (" + meta.files.size()
+                        + " files) to " + target.getPath());
+                return target;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * Install a template package: its entries are extracted and verified in
+     * parallel into a staging folder off the main thread, then swapped in
+     * for the current template folder (if any) on the main thread. Completes
+     * with the template name.
+     */
+    public CompletableFuture<String> importTemplate(File packageFile) {
+        int threads = DungeonInstances.getInstance().getConfig().getInt("packages.extract-threads", 4);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return TemplatePackage.extract(packageFile, dungeonTemplatesFolder, threads);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor).thenApplyAsync(this::installStaged, mainThreadExecutor);
+    }
+
+    /**
+     * Move a file the import replaces into the staging folder, remembering
+     * where it came from so a failed import can put it back.
+     */
+    private static void moveAside(File file, TemplatePackage.Staged staged, java.util.Deque<Path[]> displaced)
+            throws IOException {
+        if (file.exists()) {
+            Path aside = new File(staged.getFolder(), "previous-" + file.getName()).toPath();
+            Files.move(file.toPath(), aside, StandardCopyOption.REPLACE_EXISTING);
+            displaced.push(new Path[] { file.toPath(), aside });
+        }
+    }
+
+    /**
+     * Install a plain zip of a template world (the legacy bundled default
+     * template) the same way as {@link #importTemplate}: extracted in
+     * parallel off the main thread, then swapped in on the main thread.
+     */
+    public CompletableFuture<String> importArchive(File archive, String templateName) {
+        int threads = DungeonInstances.getInstance().getConfig().getInt("packages.extract-threads", 4);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return TemplatePackage.extractArchive(archive, templateName, dungeonTemplatesFolder, threads);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor).thenApplyAsync(this::installStaged, mainThreadExecutor);
+    }
+
+    private String installStaged(TemplatePackage.Staged staged) {
+        String templateName = staged.getMeta().template;
+        File target = new File(dungeonTemplatesFolder, templateName);
+        if (Bukkit.getWorld("editmode_" + templateName) != null) {
+            trashManager.trash(staged.getFolder());
+            throw new CompletionException(new IOException("Template " + templateName + " is being edited"));
+        }
+        if (!tryLockTemplate(templateName)) {
+            trashManager.trash(staged.getFolder());
+            throw new CompletionException(
+                    new IOException("Template " + templateName + " is being cloned into an instance; try again"));
+        }
+        // the live template world would keep the old files open
+        if (!unloadTemplateWorld(templateName)) {
+            unlockTemplate(templateName);
+            trashManager.trash(staged.getFolder());
+            throw new CompletionException(new IOException("Could not unload template world " + templateName));
+        }
+        // everything the import replaces is moved aside first and put back if
+        // a later move fails; nothing is trashed before the whole install worked
+        java.util.Deque<Path[]> displaced = new java.util.ArrayDeque<>();
+        File old = null;
+        boolean worldMoved = false;
+        try {
+            if (target.exists()) {
+                // renamed within templates-dungeons so it stays on the same file system
+                old = new File(dungeonTemplatesFolder,
+                        TemplatePackage.STAGING_PREFIX + templateName + "-old-" + System.nanoTime());
+                Files.move(target.toPath(), old.toPath());
+                displaced.push(new Path[] { target.toPath(), old.toPath() });
+            }
+            Files.move(staged.getWorldFolder().toPath(), target.toPath());
+            worldMoved = true;
+            File binaryMobs = staged.getFile(TemplatePackage.MOBS_BINARY);
+            File jsonMobs = staged.getFile(TemplatePackage.MOBS);
+            if (binaryMobs != null || jsonMobs != null) {
+                // whichever format the package has replaces both
+                moveAside(binaryMobFile(templateName), staged, displaced);
+                moveAside(jsonMobFile(templateName), staged, displaced);
+                if (binaryMobs != null) {
+                    Files.move(binaryMobs.toPath(), binaryMobFile(templateName).toPath());
+                } else {
+                    Files.move(jsonMobs.toPath(), jsonMobFile(templateName).toPath());
+                }
+            }
+            File profile = staged.getFile(TemplatePackage.PROFILE);
+            if (profile != null) {
+                InstanceProfile.fileFor(templateName).getParentFile().mkdirs();
+                moveAside(InstanceProfile.fileFor(templateName), staged, displaced);
+                Files.move(profile.toPath(), InstanceProfile.fileFor(templateName).toPath());
+            }
+        } catch (IOException e) {
+            try {
+                if (worldMoved) {
+                    // back into the staging folder, which is trashed below
+                    Files.move(target.toPath(), staged.getWorldFolder().toPath());
+                }
+                while (!displaced.isEmpty()) {
+                    Path[] moved = displaced.pop();
+                    Files.move(moved[1], moved[0], StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException rollback) {
+                e.addSuppressed(rollback);
+                Bukkit.getLogger().severe("Could not restore template " + templateName
+                        + " after a failed import; the previous files are in " + staged.getFolder().getName()
+                        + (old != null ? " and " + old.getName() : ""));
+                throw new CompletionException(e);
+            }
+            trashManager.trash(staged.getFolder());
+            throw new CompletionException(e);
+        } finally {
+            unlockTemplate(templateName);
+        }
+        if (old != null) {
+            trashManager.trash(old);
+        }
+        trashManager.trash(staged.getFolder());
+        if (staged.getMeta().spawn != null) {
+            spawnPoints.put(templateName, staged.getMeta().spawn);
+            saveSpawnPoints();
+        }
+        registerTemplate(templateName);
+        refreshSpawnPlan(templateName);
+        LootTableManager.getInstance().ensureTemplateHasAllDifficulties(templateName);
+        // also drops warm pool folders cloned from the previous version
+        generateManifest(templateName, target);
+        if ("generator".equals(getInstanceMode(templateName))) {
+            Bukkit.getLogger().warning("Template " + templateName
+                    + " uses instance-mode generator; run /dungeon admin bake " + templateName + " again.");
+        }
+        Bukkit.getLogger().info("Imported template " + templateName + " ("
+                + staged.getMeta().files.size() + " files)");
+        return templateName;
+    }
+
     /**
      * Load a template world into memory. If <code>populateMobs</code> is true
      * the routine will also clear natural spawns and respawn any saved mobs.
@@ -209,6 +554,8 @@ public class DungeonManager {
 
         if (world != null) {
             dungeonCache.put(templateName, world);
+            templateNames.add(templateName);
+            templateUsage.touch(templateName, System.currentTimeMillis());
             Bukkit.getLogger().info("Loaded dungeon template: " + templateName);
             // ensure loot table skeleton for this template
             LootTableManager.getInstance().ensureTemplateHasAllDifficulties(templateName);
@@ -222,6 +569,8 @@ public class DungeonManager {
         }
 
         if (world != null) {
+            // instances may share the template's region files
+            world.setAutoSave(false);
             world.setGameRule(org.bukkit.GameRule.MOB_GRIEFING, false);
             world.setGameRule(org.bukkit.GameRule.DO_MOB_SPAWNING, false);
         }
@@ -235,6 +584,14 @@ public class DungeonManager {
         return lootAliasKey;
     }
 
+    /**
+     * Whether the entity was spawned by the plugin from saved mob data.
+     */
+    public static boolean isDungeonMob(org.bukkit.entity.Entity entity) {
+        return entity instanceof org.bukkit.entity.LivingEntity
+                && entity.getPersistentDataContainer().has(dungeonMobKey, org.bukkit.persistence.PersistentDataType.BYTE);
+    }
+
     /**
      * Convenience wrapper; creates an instance with normal difficulty.
      */
@@ -247,33 +604,222 @@ public class DungeonManager {
      * difficulty modifiers when spawning mobs.
      */
     public World createDungeonInstance(String templateName, String instanceName, Difficulty difficulty) {
-        if (!dungeonCache.containsKey(templateName)) {
-            Bukkit.getLogger().warning("Template " + templateName
-                    + " is not loaded. Please ensure the template is loaded before creating an instance.");
+        if (!validateInstanceRequest(templateName, instanceName)) {
             return null;
         }
 
+        File instanceFolder = new File(Bukkit.getWorldContainer(), instanceName);
+        File templateFolder = new File(Bukkit.getWorldContainer(), templateName);
+        try {
+            if (!claimStagedFolder(templateName, instanceFolder)) {
+                prepareInstanceFolder(templateFolder, instanceFolder);
+            }
+        } catch (IOException | RuntimeException e) {
+            Bukkit.getLogger().severe("Failed to create dungeon instance: " + e.getMessage()
+                    + ". Ensure the server has write permissions.");
+            deleteFolder(instanceFolder);
+            return null;
+        }
+
+        World instance = loadInstanceWorld(templateName, instanceName, difficulty);
+        if (instance != null) {
+            // give the server a bit more breathing room; mobs will spawn after 5 seconds
+            Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> {
+                if (!isEntityFree(instance)) {
+                    clearMobs(instance);
+                }
+                getSpawnPlan(templateName).thenAcceptAsync(plan -> {
+                    if (Bukkit.getWorld(instance.getUID()) != null) {
+                        populateInstance(templateName, instance, plan, difficulty, null);
+                    }
+                }, mainThreadExecutor);
+            }, 100L); // 100 ticks = 5s
+        }
+        return instance;
+    }
+
+    /**
+     * Asynchronous variant of {@link #createDungeonInstance(String, String, Difficulty)}.
+     * The template copy runs on a Bukkit async worker, the world is then
+     * loaded on the main thread and the saved mobs are read off-thread before
+     * being spawned over several ticks. The returned future completes on the
+     * main thread once the world is loaded; if any stage fails the partially
+     * copied folder is removed and the future completes exceptionally.
+     */
+    public CompletableFuture<World> createDungeonInstanceAsync(String templateName, String instanceName,
+            Difficulty difficulty) {
+        // a hot standby world skips every stage; note that it keeps its own name
+        if (!isEditMode(instanceName)) {
+            World standbyWorld = standbyManager.claim(templateName, difficulty);
+            if (standbyWorld == null) {
+                standbyWorld = resetManager.claim(templateName, difficulty);
+            }
+            if (standbyWorld != null) {
+                return CompletableFuture.completedFuture(standbyWorld);
+            }
+        }
+        return buildInstanceAsync(templateName, instanceName, difficulty, false);
+    }
+
+    /**
+     * The actual clone/load/spawn pipeline behind
+     * {@link #createDungeonInstanceAsync}, without the standby shortcut.
+     * <code>eager</code> loads and populates every mob chunk up front (see
+     * {@link #populateEagerly}) instead of following
+     * <code>spawning.lazy-chunks</code>.
+     */
+    CompletableFuture<World> buildInstanceAsync(String templateName, String instanceName, Difficulty difficulty,
+            boolean eager) {
+        if (!validateInstanceRequest(templateName, instanceName)) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Cannot create instance " + instanceName + " from " + templateName));
+        }
+
+        File instanceFolder = new File(Bukkit.getWorldContainer(), instanceName);
+        File templateFolder = new File(Bukkit.getWorldContainer(), templateName);
+        // a pooled folder turns the copy stage into a rename
+        boolean staged = claimStagedFolder(templateName, instanceFolder);
+
+        CompletableFuture<World> future = CompletableFuture.runAsync(() -> {
+            if (staged) {
+                return;
+            }
+            try {
+                prepareInstanceFolder(templateFolder, instanceFolder);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor).thenApplyAsync(ignored -> {
+            World instance = loadInstanceWorld(templateName, instanceName, difficulty);
+            if (instance == null) {
+                throw new CompletionException(new IOException("Failed to load world " + instanceName));
+            }
+            return instance;
+        }, mainThreadExecutor);
+
+        // return the dependent stage so callers only see the world once the
+        // mob stage has been registered
+        return future.whenComplete((instance, ex) -> {
+            if (ex != null) {
+                Bukkit.getLogger().severe("Failed to create dungeon instance " + instanceName + ": "
+                        + (ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage()));
+                // roll back whatever was copied before the failure
+                deleteFolder(instanceFolder);
+                return;
+            }
+            // the spawn plan compiles off-thread (unless cached) while the 5
+            // second grace period runs
+            CompletableFuture<Void> ready = new CompletableFuture<>();
+            mobsReady.put(instanceName, ready);
+            CompletableFuture<SpawnPlan> mobs = getSpawnPlan(templateName);
+            Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(),
+                    () -> mobs.thenAcceptAsync(plan -> {
+                        if (Bukkit.getWorld(instanceName) == null) {
+                            ready.complete(null);
+                            return; // unloaded in the meantime
+                        }
+                        if (!isEntityFree(instance)) {
+                            clearMobs(instance);
+                        }
+                        (eager ? populateEagerly(templateName, instance, plan, difficulty)
+                                : populateInstance(templateName, instance, plan, difficulty, null))
+                                .whenComplete((v, spawnEx) -> ready.complete(null));
+                    }, mainThreadExecutor).exceptionally(planEx -> {
+                        ready.complete(null);
+                        return null;
+                    }), 100L);
+        });
+    }
+
+    /**
+     * Shared sanity checks for both creation paths. Logs the reason and
+     * returns false when the instance cannot be created.
+     */
+    private boolean validateInstanceRequest(String templateName, String instanceName) {
+        if (!templateNames.contains(templateName)) {
+            Bukkit.getLogger().warning("Template " + templateName
+                    + " is unknown. Please ensure the template folder exists in templates-dungeons.");
+            return false;
+        }
+        if (templateOptimizer.isOptimizing(templateName)) {
+            Bukkit.getLogger().warning("Template " + templateName + " is being optimized; try again shortly.");
+            return false;
+        }
+
         File instanceFolder = new File(Bukkit.getWorldContainer(), instanceName);
         if (instanceFolder.exists()) {
             Bukkit.getLogger().warning(
                     "Dungeon instance " + instanceName + " already exists. Please use a unique instance name.");
-            return null;
+            return false;
         }
 
         File templateFolder = new File(Bukkit.getWorldContainer(), templateName);
         if (!templateFolder.exists() || !templateFolder.isDirectory()) {
             Bukkit.getLogger().warning("Template folder for " + templateName
                     + " does not exist or is not a directory. Please check the templates-dungeons folder.");
-            return null;
+            return false;
         }
+        return true;
+    }
 
+    /**
+     * Move a pre-staged folder from the warm pool into place under the
+     * requested instance name. Returns false if no staged folder was available
+     * (or the world is an edit world, which always gets a fresh copy).
+     */
+    private boolean claimStagedFolder(String templateName, File instanceFolder) {
+        if (isEditMode(instanceFolder.getName())) {
+            return false;
+        }
+        File staged = instancePool.claim(templateName);
+        if (staged == null) {
+            return false;
+        }
         try {
-            // Copy the template folder to create a new instance
-            copyFolder(templateFolder.toPath(), instanceFolder.toPath());
+            Files.move(staged.toPath(), instanceFolder.toPath(), StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
-            Bukkit.getLogger().severe("Failed to create dungeon instance: " + e.getMessage()
-                    + ". Ensure the server has write permissions.");
-            return null;
+            Bukkit.getLogger().warning("Failed to claim pooled instance " + staged.getName() + ": " + e.getMessage());
+            deleteFolder(staged);
+            return false;
+        }
+        if (generatedInstances.remove(staged.getName())) {
+            generatedInstances.add(instanceFolder.getName());
+        }
+        return true;
+    }
+
+    /**
+     * Copy the template world into the instance folder and strip its uid.dat.
+     * Pure file work: safe to call from an async thread.
+     */
+    void prepareInstanceFolder(File templateFolder, File instanceFolder) throws IOException {
+        // Clone the template folder to create a new instance. edit worlds are
+        // copied back over the template later so they always get private files.
+        String instanceName = instanceFolder.getName();
+        String templateName = templateFolder.getName();
+        if (!isEditMode(instanceName) && "generator".equals(getInstanceMode(templateName))) {
+            BakedTemplate bakedTemplate = BakedTemplate.get(templateName);
+            if (bakedTemplate != null && bakedTemplate.getUnsupportedBlockEntities().isEmpty()) {
+                // nothing to copy: the generator serves the chunks on demand
+                Files.createDirectories(instanceFolder.toPath());
+                generatedInstances.add(instanceName);
+                return;
+            }
+            Bukkit.getLogger().warning("Template " + templateName + (bakedTemplate == null
+                    ? " is in generator mode but has not been baked; copying it instead."
+                    : " has block entities the bake cannot restore; copying it instead."));
+        }
+        // instances only take the region files listed in the template manifest;
+        // edit worlds need the whole map
+        TemplateManifest manifest = isEditMode(instanceName) ? null : getManifest(templateFolder.getName());
+        // blocks while the folder is being written, e.g. an edit session saved back
+        java.util.concurrent.locks.Lock lock = templateLock(templateName).readLock();
+        lock.lock();
+        try {
+            cloner.cloneFolder(templateFolder.toPath(), instanceFolder.toPath(),
+                    manifest != null ? manifest::accepts : null);
+        } finally {
+            lock.unlock();
         }
 
         // Delete the uid.dat file to avoid duplicate world issues
@@ -281,60 +827,393 @@ public class DungeonManager {
         if (uidFile.exists() && !uidFile.delete()) {
             Bukkit.getLogger().warning("Failed to delete uid.dat in " + instanceFolder.getAbsolutePath());
         }
-
-        // Load the new instance as a world
-        World instance = Bukkit.createWorld(new WorldCreator(instanceName));
-        if (instance != null) {
-            Bukkit.getLogger().info("Created dungeon instance: " + instanceName + " (difficulty=" + difficulty + ")");
-            // record difficulty so other systems (scoreboard) can access it later
-            instanceDifficulties.put(instanceName, difficulty);
-            // keep loot tables in sync with template just in case the template was
-            // added while the server was running
-            LootTableManager.getInstance().ensureTemplateHasAllDifficulties(templateName);
-            // disable natural mob spawning in edit mode worlds
-            if (instanceName.startsWith("editmode_")) {
-                instance.setGameRule(org.bukkit.GameRule.MOB_GRIEFING, false);
-                instance.setGameRule(org.bukkit.GameRule.DO_MOB_SPAWNING, false);
-                // editor worlds no longer pre‑force every chunk. the old
-                // loadAndForceAllChunksAsync helper (removed long ago) was the
-                // culprit when admins complained that the plugin was "loading all
-                // chunks in every world" during startup; we let chunks load on
-                // demand now.
-                // autosave feature disabled
+    }
+
+    /**
+     * Load an already prepared instance folder as a world and apply the usual
+     * per-instance setup. Must run on the main thread.
+     */
+    World loadInstanceWorld(String templateName, String instanceName, Difficulty difficulty) {
+        WorldCreator creator = new WorldCreator(instanceName);
+        if (generatedInstances.contains(instanceName)) {
+            BakedTemplate baked = BakedTemplate.get(templateName);
+            if (baked == null) {
+                Bukkit.getLogger().warning("Baked template " + templateName + " disappeared, cannot load "
+                        + instanceName);
+                return null;
+            }
+            creator.generator(new TemplateChunkGenerator(baked, spawnPoints.get(templateName)));
+        } else if (instanceName.startsWith("instance_")
+                && DungeonInstances.getInstance().getConfig().getBoolean("bounds.void-generator", true)) {
+            // chunks missing from the copy are never generated as real terrain
+            creator.generator(new VoidChunkGenerator());
+        }
+        World instance = Bukkit.createWorld(creator);
+        if (instance != null) {
+            Bukkit.getLogger().info("Created dungeon instance: " + instanceName + " (difficulty=" + difficulty + ")");
+            if (instanceName.startsWith("instance_")) {
+                // game rules, autosave, spawn caps, view distance of the template
+                InstanceProfile.load(templateName).apply(instance);
+                TemplateManifest footprint = getFootprint(templateName);
+                if (footprint != null) {
+                    instanceFootprints.put(instanceName, footprint);
+                    if (DungeonInstances.getInstance().getConfig().getBoolean("bounds.world-border", true)) {
+                        applyWorldBorder(instance, footprint);
+                    }
+                }
+            }
+            // record template and difficulty so other systems (scoreboard, loot)
+            // can look them up by world
+            if (!isEditMode(instanceName)) {
+                registry.register(new DungeonInstance(instance.getUID(), instanceName, templateName, difficulty,
+                        null, System.currentTimeMillis(), DungeonInstance.State.ACTIVE));
+                journal.created(instanceName, templateName, difficulty, generatedInstances.contains(instanceName));
+            }
+            // keep loot tables in sync with template just in case the template was
+            // added while the server was running
+            LootTableManager.getInstance().ensureTemplateHasAllDifficulties(templateName);
+            // disable natural mob spawning in edit mode worlds
+            if (instanceName.startsWith("editmode_")) {
+                instance.setGameRule(org.bukkit.GameRule.MOB_GRIEFING, false);
+                instance.setGameRule(org.bukkit.GameRule.DO_MOB_SPAWNING, false);
+                // editor worlds no longer pre‑force every chunk. the old
+                // loadAndForceAllChunksAsync helper (removed long ago) was the
+                // culprit when admins complained that the plugin was "loading all
+                // chunks in every world" during startup; we let chunks load on
+                // demand now.
+                // autosave feature disabled
+            }
+            // ensure all mobs in the new instance have AI enabled so they behave normally
+            Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> setAIForWorld(instance, true), 1L);
+        } else {
+            Bukkit.getLogger().warning(
+                    "Failed to load dungeon instance: " + instanceName + ". Check if the world folder is valid.");
+        }
+        return instance;
+    }
+
+    public InstancePoolManager getInstancePool() {
+        return instancePool;
+    }
+
+    public StandbyInstanceManager getStandbyManager() {
+        return standbyManager;
+    }
+
+    public HostWorldManager getHostManager() {
+        return hostManager;
+    }
+
+    public HibernationManager getHibernationManager() {
+        return hibernationManager;
+    }
+
+    public LazyMobSpawner getLazySpawner() {
+        return lazySpawner;
+    }
+
+    public TemplateOptimizer getTemplateOptimizer() {
+        return templateOptimizer;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public InstanceResetManager getResetManager() {
+        return resetManager;
+    }
+
+    /**
+     * Called when the last player left an instance: reset it in place for the
+     * next party when the template allows it, otherwise unload and delete it.
+     */
+    public void releaseDungeonInstance(String instanceName) {
+        World world = Bukkit.getWorld(instanceName);
+        if (world != null && world.getPlayers().isEmpty() && resetManager.tryReset(world)) {
+            return;
+        }
+        unloadDungeonInstance(instanceName);
+    }
+
+    /**
+     * Future completing when the saved mobs of the instance have all been
+     * spawned. Instances not created through the async pipeline report as
+     * ready immediately.
+     */
+    public CompletableFuture<Void> getMobsReady(String instanceName) {
+        CompletableFuture<Void> ready = mobsReady.get(instanceName);
+        return ready != null ? ready : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Region manifest of the template, or null if none has been generated.
+     */
+    public TemplateManifest getManifest(String templateName) {
+        return manifests.computeIfAbsent(templateName,
+                k -> java.util.Optional.ofNullable(TemplateManifest.load(k))).orElse(null);
+    }
+
+    /**
+     * How instances of the template are created: <code>copy</code> (clone the
+     * template folder) or <code>generator</code> (empty folder, chunks served
+     * from the baked template). Read from <code>instance-mode</code> in config.yml.
+     */
+    public String getInstanceMode(String templateName) {
+        org.bukkit.configuration.file.FileConfiguration config = DungeonInstances.getInstance().getConfig();
+        String mode = config.getString("instance-mode.templates." + templateName,
+                config.getString("instance-mode.default", "copy"));
+        return mode == null ? "copy" : mode.toLowerCase();
+    }
+
+    /**
+     * Bake the blocks and block entities of a template into its
+     * {@link BakedTemplate} file. The chunks of the footprint that
+     * <code>source</code> already has are snapshotted a few per tick on the
+     * main thread (missing chunks are skipped, never generated), then encoded
+     * and written off-thread.
+     */
+    public CompletableFuture<BakedTemplate> bakeTemplate(String templateName, World source) {
+        TemplateManifest footprint = getFootprint(templateName);
+        if (footprint == null) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Template " + templateName + " has no spawn point or saved mobs"));
+        }
+        java.util.List<long[]> coords = new java.util.ArrayList<>();
+        for (int cx = footprint.minChunkX; cx <= footprint.maxChunkX; cx++) {
+            for (int cz = footprint.minChunkZ; cz <= footprint.maxChunkZ; cz++) {
+                coords.add(new long[] { cx, cz });
+            }
+        }
+        java.util.List<org.bukkit.ChunkSnapshot> snapshots = new java.util.ArrayList<>(coords.size());
+        java.util.List<BakedBlockEntity> blockEntities = new java.util.ArrayList<>();
+        java.util.Set<String> unsupported = new java.util.TreeSet<>();
+        CompletableFuture<Void> captured = new CompletableFuture<>();
+        new org.bukkit.scheduler.BukkitRunnable() {
+            int next = 0;
+
+            @Override
+            public void run() {
+                if (Bukkit.getWorld(source.getUID()) == null) {
+                    captured.completeExceptionally(new IllegalStateException(source.getName() + " was unloaded"));
+                    cancel();
+                    return;
+                }
+                // a handful of chunks per tick keeps the server responsive
+                for (int n = 0; n < 16 && next < coords.size(); n++, next++) {
+                    long[] c = coords.get(next);
+                    if (!source.isChunkGenerated((int) c[0], (int) c[1])) {
+                        continue;
+                    }
+                    org.bukkit.Chunk chunk = source.getChunkAt((int) c[0], (int) c[1]);
+                    snapshots.add(chunk.getChunkSnapshot(false, true, false));
+                    for (org.bukkit.block.BlockState state : chunk.getTileEntities()) {
+                        if (!BakedBlockEntity.isSupported(state)) {
+                            unsupported.add(state.getType().getKey().toString());
+                            continue;
+                        }
+                        BakedBlockEntity be = BakedBlockEntity.capture(state);
+                        if (be != null) {
+                            blockEntities.add(be);
+                        }
+                    }
+                }
+                if (next >= coords.size()) {
+                    captured.complete(null);
+                    cancel();
+                }
+            }
+        }.runTaskTimer(DungeonInstances.getInstance(), 1L, 1L);
+
+        return captured.thenApplyAsync(v -> {
+            try {
+                BakedTemplate.write(templateName, snapshots, blockEntities, unsupported, source.getMinHeight(),
+                        source.getMaxHeight());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            BakedTemplate baked = BakedTemplate.get(templateName);
+            if (baked == null) {
+                throw new CompletionException(new IOException("Failed to read back the baked template"));
+            }
+            Bukkit.getLogger().info("Baked template " + templateName + ": " + baked.getChunkCount() + " chunks, "
+                    + blockEntities.size() + " block entities");
+            if (!unsupported.isEmpty()) {
+                Bukkit.getLogger().warning("Template " + templateName + " has block entities that cannot be baked ("
+                        + String.join(", ", unsupported) + "); generator mode will copy it instead.");
+            }
+            return baked;
+        }, asyncExecutor).thenApplyAsync(baked -> {
+            // staged folders of the old layout are no longer valid
+            instancePool.invalidate(templateName);
+            return baked;
+        }, mainThreadExecutor);
+    }
+
+    /**
+     * Regenerate the region manifest of a template from its bounds, stored
+     * chunks or saved mobs (see {@link TemplateManifest#generate}). Called
+     * after an admin save; staged pool folders built from the old layout are
+     * discarded.
+     */
+    public TemplateManifest generateManifest(String templateName, File worldFolder) {
+        int margin = DungeonInstances.getInstance().getConfig().getInt("manifest.margin-chunks", 4);
+        TemplateManifest manifest = TemplateManifest.generate(templateName, worldFolder, loadEditMobs(templateName),
+                spawnPoints.get(templateName), margin, InstanceProfile.load(templateName).bounds);
+        if (manifest != null) {
+            try {
+                manifest.save();
+                Bukkit.getLogger().info("Wrote region manifest for " + templateName + ": "
+                        + manifest.include.size() + " region files, chunks " + manifest.minChunkX + ","
+                        + manifest.minChunkZ + " to " + manifest.maxChunkX + "," + manifest.maxChunkZ);
+            } catch (IOException e) {
+                Bukkit.getLogger().warning("Failed to write manifest for " + templateName + ": " + e.getMessage());
+                manifest = null;
+            }
+        }
+        manifests.put(templateName, java.util.Optional.ofNullable(manifest));
+        footprints.remove(templateName);
+        instancePool.invalidate(templateName);
+        return manifest;
+    }
+
+    /**
+     * Store admin-set bounds (block coordinates, inclusive) in the template's
+     * profile, or clear them with null, and regenerate its manifest.
+     */
+    public TemplateManifest setTemplateBounds(String templateName, int[] blocks) throws IOException {
+        InstanceProfile profile = InstanceProfile.load(templateName);
+        profile.bounds = blocks == null ? null
+                : new InstanceProfile.Bounds(blocks[0] >> 4, blocks[1] >> 4, blocks[2] >> 4, blocks[3] >> 4);
+        profile.save(templateName);
+        return generateManifest(templateName, new File(Bukkit.getWorldContainer(), templateName));
+    }
+
+    /**
+     * Chunk range the template's dungeon occupies: the manifest's, or when no
+     * manifest was saved one computed (and cached) the same way from the
+     * template folder. Null if the template has no bounds, region data, saved
+     * mobs or spawn point.
+     */
+    public TemplateManifest getFootprint(String templateName) {
+        TemplateManifest manifest = getManifest(templateName);
+        if (manifest != null) {
+            return manifest;
+        }
+        return footprints.computeIfAbsent(templateName, k -> {
+            int margin = DungeonInstances.getInstance().getConfig().getInt("manifest.margin-chunks", 4);
+            return java.util.Optional.ofNullable(TemplateManifest.generate(k,
+                    new File(Bukkit.getWorldContainer(), k), loadEditMobs(k), spawnPoints.get(k), margin,
+                    InstanceProfile.load(k).bounds));
+        }).orElse(null);
+    }
+
+    /**
+     * True if the chunk lies outside the footprint of the instance it belongs
+     * to. Always false for worlds without a footprint.
+     */
+    public boolean isOutsideFootprint(String worldName, int chunkX, int chunkZ) {
+        TemplateManifest footprint = instanceFootprints.get(worldName);
+        return footprint != null && !footprint.containsChunk(chunkX, chunkZ);
+    }
+
+    /**
+     * Fit the world border around the template footprint. The border is
+     * square, so the longer side of the footprint decides its size.
+     */
+    private void applyWorldBorder(World world, TemplateManifest footprint) {
+        double minX = footprint.minChunkX * 16.0;
+        double minZ = footprint.minChunkZ * 16.0;
+        double maxX = (footprint.maxChunkX + 1) * 16.0;
+        double maxZ = (footprint.maxChunkZ + 1) * 16.0;
+        org.bukkit.WorldBorder border = world.getWorldBorder();
+        border.setCenter((minX + maxX) / 2, (minZ + maxZ) / 2);
+        border.setSize(Math.max(maxX - minX, maxZ - minZ));
+        border.setWarningDistance(0);
+    }
+
+    /**
+     * Names of all known templates, whether their world is loaded or not.
+     */
+    public java.util.Set<String> getTemplateNames() {
+        return new java.util.HashSet<>(templateNames);
+    }
+
+    /**
+     * Retrieve the difficulty associated with a given instance world name.
+     */
+    public Difficulty getDifficultyForInstance(String instanceName) {
+        DungeonInstance instance = registry.get(instanceName);
+        return instance != null ? instance.getDifficulty() : Difficulty.NORMAL;
+    }
+
+    public InstanceRegistry getRegistry() {
+        return registry;
+    }
+
+    public InstanceJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Deal with the instance folders left by the previous run. The folder
+     * list is taken now, before anything new is created; the journal then
+     * decides off-thread which of them are hibernated runs still worth
+     * keeping, and every other folder goes to the trash. Kept runs are handed
+     * back to the {@link HibernationManager} on the main thread.
+     */
+    public void recoverInstances() {
+        File[] leftovers = Bukkit.getWorldContainer()
+                .listFiles((file) -> file.isDirectory() && file.getName().startsWith("instance_"));
+        java.util.Map<String, File> folders = new java.util.HashMap<>();
+        if (leftovers != null) {
+            for (File f : leftovers) {
+                folders.put(f.getName(), f);
+            }
+        }
+        journal.recover(folders.keySet()).whenComplete((keep, ex) -> {
+            java.util.Map<String, InstanceJournal.Entry> kept = ex != null ? java.util.Collections.emptyMap() : keep;
+            if (ex != null) {
+                Bukkit.getLogger().warning("Instance journal recovery failed, purging every leftover instance: "
+                        + ex.getMessage());
             }
-            // ensure all mobs in the new instance have AI enabled so they behave normally
-            Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> setAIForWorld(instance, true), 1L);
-            // clear any existing creatures copied along with the world and respawn
-            // edit-mode mobs
-            if (templateName != null) {
-                // give the server a bit more breathing room; mobs will spawn after 5 seconds
-                Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> {
-                    clearMobs(instance);
-                    spawnSavedMobs(templateName, instance, difficulty);
-                }, 100L); // 100 ticks = 5s
+            int trashed = 0;
+            for (java.util.Map.Entry<String, File> e : folders.entrySet()) {
+                if (!kept.containsKey(e.getKey())) {
+                    // rename only; files are deleted by the throttled trash task
+                    trashManager.trash(e.getValue());
+                    trashed++;
+                }
             }
-        } else {
-            Bukkit.getLogger().warning(
-                    "Failed to load dungeon instance: " + instanceName + ". Check if the world folder is valid.");
-        }
-        return instance;
+            int purged = trashed;
+            Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), () -> {
+                for (InstanceJournal.Entry entry : kept.values()) {
+                    if (entry.generated) {
+                        // wakes with the baked template's generator again
+                        generatedInstances.add(entry.worldName);
+                    }
+                    hibernationManager.restore(entry);
+                }
+                Bukkit.getLogger().info("Recovered instances: " + purged + " leftover folder(s) purged, "
+                        + kept.size() + " hibernated run(s) kept.");
+            });
+        });
     }
 
     /**
-     * Retrieve the difficulty associated with a given instance world name.
+     * Registered instance of the world, or null if it is not an instance.
      */
-    public Difficulty getDifficultyForInstance(String instanceName) {
-        if (instanceName == null)
-            return Difficulty.NORMAL;
-        return instanceDifficulties.getOrDefault(instanceName, Difficulty.NORMAL);
+    public DungeonInstance getDungeonInstance(World world) {
+        return registry.get(world);
     }
 
     /**
      * Extract the template name from a world name used by this plugin (either
      * an instance or editmode world). The naming convention is
      * <code>instance_<template>_<uuid></code> or <code>editmode_<template></code>.
-     * This method mirrors the logic used elsewhere in the codebase such as
-     * <code>onPlayerRespawn</code>.
+     * Loaded instances should be looked up with {@link #getDungeonInstance}
+     * instead; this is for names of worlds that are not (or no longer)
+     * registered.
      *
      * @param worldName name of the world (may be null)
      * @return the template identifier or null if the world is not recognised
@@ -346,7 +1225,8 @@ public class DungeonManager {
         if (worldName.startsWith("instance_")) {
             remainder = worldName.substring("instance_".length());
         } else if (worldName.startsWith("editmode_")) {
-            remainder = worldName.substring("editmode_".length());
+            // no suffix: the template name may itself contain underscores
+            return worldName.substring("editmode_".length());
         } else {
             return null;
         }
@@ -390,6 +1270,7 @@ public class DungeonManager {
         if (world != null) {
             // move any players out before unloading to avoid leaving them stranded
             for (org.bukkit.entity.Player p : world.getPlayers()) {
+                hibernationManager.markLeaving(p.getUniqueId());
                 org.bukkit.Location safe = Bukkit.getWorlds().get(0).getSpawnLocation();
                 p.teleport(safe);
                 // p.sendMessage("[DungeonInstances] You have been moved out of an unloaded
@@ -402,46 +1283,40 @@ public class DungeonManager {
             Bukkit.getLogger().info("Dungeon instance " + instanceName + " was not loaded.");
         }
 
-        // drop any stored difficulty mapping for the instance
-        instanceDifficulties.remove(instanceName);
+        // drop the registry entry of the instance
+        registry.unregister(instanceName);
+        journal.deleted(instanceName);
+        releasePinnedChunks(instanceName);
+        generatedInstances.remove(instanceName);
+        instanceFootprints.remove(instanceName);
+        mobsReady.remove(instanceName);
+        standbyManager.forget(instanceName);
+        resetManager.forget(instanceName);
+        hibernationManager.forget(instanceName);
         // always attempt to remove the folder regardless of whether the world was
         File instanceFolder = new File(Bukkit.getWorldContainer(), instanceName);
         if (instanceFolder.exists()) {
             deleteFolder(instanceFolder);
-            Bukkit.getLogger().info("Deleted dungeon instance folder: " + instanceFolder.getAbsolutePath());
+            Bukkit.getLogger().info("Moved dungeon instance folder to the trash: " + instanceFolder.getAbsolutePath());
         } else {
             Bukkit.getLogger().info("No folder found for dungeon instance: " + instanceName);
         }
     }
 
+    /**
+     * Hand a folder to the background {@link TrashManager}. The folder is
+     * renamed away immediately, its files are removed later off-thread.
+     */
     public void deleteFolder(File folder) {
-        if (folder.isDirectory()) {
-            for (File file : folder.listFiles()) {
-                deleteFolder(file);
-            }
-        }
-        folder.delete();
+        trashManager.trash(folder);
+    }
+
+    public TrashManager getTrashManager() {
+        return trashManager;
     }
 
     private void copyFolder(Path source, Path target) throws IOException {
-        Files.walk(source).forEach(path -> {
-            try {
-                Path targetPath = target.resolve(source.relativize(path));
-                if (Files.isDirectory(path)) {
-                    Files.createDirectories(targetPath);
-                } else {
-                    // Skip locked files like session.lock or inaccessible files
-                    if (path.getFileName().toString().equals("session.lock")) {
-                        return;
-                    }
-                    Files.copy(path, targetPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (AccessDeniedException e) {
-                Bukkit.getLogger().warning("Access denied to file: " + path + ". Skipping...");
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to copy folder: " + path + ". Error: " + e.getMessage(), e);
-            }
-        });
+        TemplateCloner.copyTree(source, target);
     }
 
     public void copyWorld(File source, File target) {
@@ -452,6 +1327,103 @@ public class DungeonManager {
         }
     }
 
+    /**
+     * Bake a saved template folder for instancing, off the main thread: every
+     * living entity (what {@link #clearMobs} would remove) is dropped from the
+     * <code>entities/</code> region files, keeping item frames, paintings and
+     * the like, and <code>poi/</code> is deleted (the server rebuilds points
+     * of interest from the blocks). A marker file is written last so that
+     * instances cloned from the result skip {@link #clearMobs}. Completes with
+     * the number of entities removed.
+     */
+    public CompletableFuture<Integer> stripTemplateEntities(String templateName, File templateFolder) {
+        // the freshly copied folder may carry the edit world's marker but
+        // not be stripped yet; clones taken meanwhile must still clear mobs
+        File marker = new File(templateFolder, ENTITY_FREE_MARKER);
+        marker.delete();
+        return CompletableFuture.supplyAsync(() -> {
+            // off the main thread, so waiting for running clones is fine
+            java.util.concurrent.locks.Lock lock = templateLock(templateName).writeLock();
+            lock.lock();
+            try {
+                int removed = 0;
+                File[] regions = new File(templateFolder, "entities")
+                        .listFiles(f -> f.isFile() && f.getName().endsWith(".mca"));
+                if (regions != null) {
+                    for (File region : regions) {
+                        int[] count = new int[1];
+                        AnvilRegion.rewrite(region, chunk -> {
+                            int n = stripLivingEntities(chunk.get("Entities"));
+                            count[0] += n;
+                            return n > 0;
+                        });
+                        removed += count[0];
+                    }
+                }
+                TemplateCloner.deleteTree(new File(templateFolder, "poi").toPath());
+                Files.write(marker.toPath(),
+                        Long.toString(System.currentTimeMillis()).getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                Bukkit.getLogger().info("Stripped " + removed + " living entities from template " + templateName);
+                return removed;
+            } catch (IOException | RuntimeException e) {
+                throw new CompletionException(e);
+            } finally {
+                lock.unlock();
+            }
+        }, asyncExecutor).thenApplyAsync(removed -> {
+            // folders staged while the strip ran still hold the mobs
+            instancePool.invalidate(templateName);
+            return removed;
+        }, mainThreadExecutor);
+    }
+
+    /**
+     * Remove living entities from an NBT entity list, including passengers of
+     * the entities that stay. Returns how many were removed.
+     */
+    @SuppressWarnings("unchecked")
+    private int stripLivingEntities(Object entities) {
+        if (!(entities instanceof Nbt.TagList)) {
+            return 0;
+        }
+        int removed = 0;
+        java.util.Iterator<Object> it = ((Nbt.TagList) entities).items.iterator();
+        while (it.hasNext()) {
+            Object o = it.next();
+            if (!(o instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> entity = (Map<String, Object>) o;
+            if (isLivingEntityId(entity.get("id"))) {
+                it.remove();
+                removed++;
+            } else {
+                removed += stripLivingEntities(entity.get("Passengers"));
+            }
+        }
+        return removed;
+    }
+
+    private boolean isLivingEntityId(Object id) {
+        if (!(id instanceof String)) {
+            return false;
+        }
+        return livingEntityIds.computeIfAbsent((String) id, key -> {
+            org.bukkit.NamespacedKey nk = org.bukkit.NamespacedKey.fromString(key);
+            org.bukkit.entity.EntityType type = nk == null ? null : org.bukkit.Registry.ENTITY_TYPE.get(nk);
+            Class<?> cls = type == null ? null : type.getEntityClass();
+            return cls != null && LivingEntity.class.isAssignableFrom(cls) && !Player.class.isAssignableFrom(cls);
+        });
+    }
+
+    /**
+     * True if the world was cloned from a template stripped by
+     * {@link #stripTemplateEntities}, so it holds no mob we did not spawn.
+     */
+    public boolean isEntityFree(World world) {
+        return new File(world.getWorldFolder(), ENTITY_FREE_MARKER).isFile();
+    }
+
     /**
      * Remove every non-player living entity from the specified world.
      * Used when creating a fresh instance so that only our custom mobs
@@ -595,39 +1567,6 @@ public class DungeonManager {
         return null;
     }
 
-    private void applyEntityNBT(org.bukkit.entity.Entity e, String nbt) {
-        if (nbt == null) {
-            return;
-        }
-
-        // try raw Mojangson NBT first – this covers the vast majority of cases
-        // and avoids accidentally interpreting valid NBT as a JSON map. if
-        // parsing succeeds we return immediately; otherwise fall through to the
-        // map-based fallback.
-        try {
-            Class<?> nbtClass = Class.forName("net.minecraft.nbt.NBTTagCompound");
-            Class<?> parserClass = Class.forName("net.minecraft.nbt.MojangsonParser");
-            java.lang.reflect.Method parseMethod = parserClass.getMethod("parse", String.class);
-            Object tag = parseMethod.invoke(null, nbt);
-            Object craftEntity = e.getClass().getMethod("getHandle").invoke(e);
-            craftEntity.getClass().getMethod("load", nbtClass).invoke(craftEntity, tag);
-            // applied full NBT successfully
-            return;
-        } catch (Exception ignored) {
-            // parsing failed, try fallback below
-        }
-
-        // fallback to the limited JSON map format we sometimes write when
-        // reflection-based serialization couldn’t produce real NBT.
-        try {
-            Map<String, Object> map = gson.fromJson(nbt, new TypeToken<Map<String, Object>>() {
-            }.getType());
-            applySerializedMap(e, map);
-        } catch (Exception ex) {
-            Bukkit.getLogger().warning("Failed to apply JSON map to " + e + ": " + ex.getMessage());
-        }
-    }
-
     // apply a Bukkit serialized map back to an entity; handles a few common keys
     @SuppressWarnings({ "unchecked", "rawtypes" })
     private void applySerializedMap(org.bukkit.entity.Entity e, Map<String, Object> map) {
@@ -808,13 +1747,102 @@ public class DungeonManager {
         public Map<String, Object> extra; // optional additional data (equipment, attributes, etc.)
     }
 
-    private File mobFileFor(String templateName) {
+    /**
+     * The saved mobs file in use for the template: the binary
+     * <code>.dmob</code> if there is one, else a legacy or hand-edited
+     * <code>.json</code>, else where a new save goes (binary).
+     */
+    File mobFileFor(String templateName) {
+        File binary = binaryMobFile(templateName);
+        if (binary.isFile()) {
+            return binary;
+        }
+        File json = jsonMobFile(templateName);
+        return json.isFile() ? json : binary;
+    }
+
+    File binaryMobFile(String templateName) {
+        if (!mobDataFolder.exists()) {
+            mobDataFolder.mkdirs();
+        }
+        return new File(mobDataFolder, templateName + MobSpawnFile.EXTENSION);
+    }
+
+    File jsonMobFile(String templateName) {
         if (!mobDataFolder.exists()) {
             mobDataFolder.mkdirs();
         }
         return new File(mobDataFolder, templateName + ".json");
     }
 
+    /**
+     * Write the template's binary mobs out as pretty-printed JSON
+     * (<code>mobSpawns/&lt;template&gt;.json</code>) for hand editing. The
+     * binary file stays in use until {@link #importMobsJson(String)}.
+     */
+    public CompletableFuture<File> exportMobsJson(String templateName) {
+        File binary = binaryMobFile(templateName);
+        File json = jsonMobFile(templateName);
+        return CompletableFuture.supplyAsync(() -> {
+            if (!binary.isFile()) {
+                throw new CompletionException(new IOException("Template " + templateName + " has no "
+                        + MobSpawnFile.EXTENSION + " mob file"));
+            }
+            try {
+                java.util.List<MobData> mobs = MobSpawnFile.read(binary);
+                Path tmp = json.toPath().resolveSibling(json.getName() + ".tmp");
+                try (java.io.Writer w = Files.newBufferedWriter(tmp, java.nio.charset.StandardCharsets.UTF_8)) {
+                    gson.toJson(mobs, new TypeToken<java.util.List<MobData>>() {
+                    }.getType(), w);
+                }
+                Files.move(tmp, json.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                return json;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * Convert the template's JSON mobs into its binary mob file, then
+     * recompile the spawn plan. The JSON is kept next to it as
+     * <code>&lt;template&gt;.json.bak</code> (replacing an older backup).
+     * Completes with the number of mobs.
+     */
+    public CompletableFuture<Integer> importMobsJson(String templateName) {
+        File binary = binaryMobFile(templateName);
+        File json = jsonMobFile(templateName);
+        return CompletableFuture.supplyAsync(() -> {
+            if (!json.isFile()) {
+                throw new CompletionException(new IOException("Template " + templateName + " has no .json mob file"));
+            }
+            try {
+                java.util.List<MobData> mobs;
+                try (java.io.Reader r = Files.newBufferedReader(json.toPath(),
+                        java.nio.charset.StandardCharsets.UTF_8)) {
+                    mobs = gson.fromJson(r, new TypeToken<java.util.List<MobData>>() {
+                    }.getType());
+                } catch (com.google.gson.JsonParseException e) {
+                    throw new IOException("unreadable " + json.getName() + ": " + e.getMessage());
+                }
+                if (mobs == null) {
+                    mobs = java.util.Collections.emptyList();
+                }
+                MobSpawnFile.write(mobs, binary);
+                File backup = new File(json.getParentFile(), json.getName() + ".bak");
+                Files.move(json.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Bukkit.getLogger().info("Converted " + json.getName() + " (" + mobs.size() + " mobs) to "
+                        + binary.getName() + "; the JSON is kept as " + backup.getName());
+                return mobs.size();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor).thenApply(n -> {
+            refreshSpawnPlan(templateName);
+            return n;
+        });
+    }
+
     /**
      * Simplest entry point – does not filter and does not force-load chunks.
      * Used by auto-save tasks. Admins should call the overload that allows
@@ -870,60 +1898,62 @@ public class DungeonManager {
         if (editWorld == null)
             return;
 
-        File out = mobFileFor(templateName);
-        try (FileWriter fw = new FileWriter(out);
-                com.google.gson.stream.JsonWriter jw = new com.google.gson.stream.JsonWriter(fw)) {
-            jw.setIndent("  ");
-            jw.beginArray();
-            for (org.bukkit.entity.Entity e : editWorld.getEntities()) {
-                if (!(e instanceof org.bukkit.entity.LivingEntity) || e instanceof Player) {
+        java.util.List<MobData> saved = new java.util.ArrayList<>();
+        for (org.bukkit.entity.Entity e : editWorld.getEntities()) {
+            if (!(e instanceof org.bukkit.entity.LivingEntity) || e instanceof Player) {
+                continue;
+            }
+            if (centre != null) {
+                if (e.getLocation().distanceSquared(centre) > radius * radius) {
                     continue;
                 }
-                if (centre != null) {
-                    if (e.getLocation().distanceSquared(centre) > radius * radius) {
-                        continue;
-                    }
-                }
-                if (minY != Double.NEGATIVE_INFINITY) {
-                    if (e.getLocation().getY() < minY) {
-                        continue;
-                    }
-                }
-                org.bukkit.entity.LivingEntity le = (org.bukkit.entity.LivingEntity) e;
-                MobData d = new MobData();
-                d.uuid = e.getUniqueId().toString();
-                d.type = e.getType().name();
-                Location loc = e.getLocation();
-                d.x = loc.getX();
-                d.y = loc.getY();
-                d.z = loc.getZ();
-
-                // If y <= -45, ignore the mob
-                if (d.y <= -45) {
+            }
+            if (minY != Double.NEGATIVE_INFINITY) {
+                if (e.getLocation().getY() < minY) {
                     continue;
                 }
+            }
+            org.bukkit.entity.LivingEntity le = (org.bukkit.entity.LivingEntity) e;
+            MobData d = new MobData();
+            d.uuid = e.getUniqueId().toString();
+            d.type = e.getType().name();
+            Location loc = e.getLocation();
+            d.x = loc.getX();
+            d.y = loc.getY();
+            d.z = loc.getZ();
+
+            // If y <= -45, ignore the mob
+            if (d.y <= -45) {
+                continue;
+            }
 
-                d.yaw = loc.getYaw();
-                d.pitch = loc.getPitch();
-                d.nbt = serializeEntityNBT(e);
+            d.yaw = loc.getYaw();
+            d.pitch = loc.getPitch();
+            d.nbt = serializeEntityNBT(e);
 
-                Map<String, Object> extras = gatherExtras(le);
-                if (!extras.isEmpty()) {
-                    d.extra = extras;
-                }
+            Map<String, Object> extras = gatherExtras(le);
+            if (!extras.isEmpty()) {
+                // reduced to plain JSON values, exactly as a JSON save read back
+                d.extra = gson.fromJson(gson.toJsonTree(extras), new TypeToken<Map<String, Object>>() {
+                }.getType());
+            }
 
-                if (d.nbt == null) {
-                    Bukkit.getLogger().warning("NBT serialization returned null for " + e.getType() + " at "
-                            + loc.toVector());
-                }
-                gson.toJson(d, MobData.class, jw);
+            if (d.nbt == null) {
+                Bukkit.getLogger().warning("NBT serialization returned null for " + e.getType() + " at "
+                        + loc.toVector());
             }
-            jw.endArray();
+            saved.add(d);
+        }
+        try {
+            MobSpawnFile.write(saved, binaryMobFile(templateName));
+            // a JSON left from an export would be stale now
+            Files.deleteIfExists(jsonMobFile(templateName).toPath());
         } catch (IOException ex) {
             Bukkit.getLogger().severe("Failed to write mob data for template " + templateName + ": " + ex.getMessage());
         }
 
-        // clear current creatures and respawn from the newly saved file
+        // recompile the plan instances use, then respawn from it
+        refreshSpawnPlan(templateName);
         clearMobs(editWorld);
         spawnSavedMobs(templateName, editWorld, Difficulty.NORMAL);
 
@@ -995,6 +2025,14 @@ public class DungeonManager {
         File f = mobFileFor(templateName);
         if (!f.exists())
             return java.util.Collections.emptyList();
+        if (f.getName().endsWith(MobSpawnFile.EXTENSION)) {
+            try {
+                return MobSpawnFile.read(f);
+            } catch (IOException ex) {
+                Bukkit.getLogger().severe("Failed to load edit mobs: " + ex.getMessage());
+                return java.util.Collections.emptyList();
+            }
+        }
         try (java.io.FileReader r = new java.io.FileReader(f)) {
             java.util.List<MobData> l = gson.fromJson(r, new TypeToken<java.util.List<MobData>>() {
             }.getType());
@@ -1019,7 +2057,7 @@ public class DungeonManager {
         if (world == null)
             return false;
         String name = world.getName();
-        if (name.startsWith("editmode_") || name.startsWith("instance_"))
+        if (name.startsWith("editmode_") || name.startsWith("instance_") || HostWorldManager.isHostWorld(name))
             return true;
         // template worlds are also legitimate targets when the cache has been
         // populated (used by loadDungeonTemplate when populateMobs==true).
@@ -1032,7 +2070,10 @@ public class DungeonManager {
      * Spawn mobs previously saved for a dungeon template. The supplied difficulty
      * is used to adjust their attributes. Existing callers that do not care
      * about difficulty can use {@link #spawnSavedMobs(String, World)} which
-     * delegates to this method with {@link Difficulty#NORMAL}.
+     * delegates to this method with {@link Difficulty#NORMAL}. Edit and
+     * template worlds need every mob present (an edit save reads them back),
+     * so the chunks holding mobs are loaded asynchronously and held by a
+     * ticket until the whole plan has spawned.
      */
     public void spawnSavedMobs(String templateName, World world) {
         spawnSavedMobs(templateName, world, Difficulty.NORMAL);
@@ -1045,93 +2086,350 @@ public class DungeonManager {
                     + "); skipping to avoid loading chunks.");
             return;
         }
+        getSpawnPlan(templateName).thenAcceptAsync(plan -> {
+            if (plan.isEmpty()) {
+                Bukkit.getLogger().info("spawnSavedMobs: no saved mobs found for template " + templateName);
+                return;
+            }
+            ChunkPreloader.Preload preload = ChunkPreloader.preload(world, plan.byChunk().keySet());
+            preload.getFuture().thenCompose(v -> spawnPlan(templateName, world, plan, difficulty))
+                    .whenComplete((v, ex) -> preload.release());
+        }, mainThreadExecutor).exceptionally(ex -> {
+            Bukkit.getLogger().severe("Failed to load mob data for " + templateName + ": "
+                    + (ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage()));
+            return null;
+        });
+    }
 
+    /**
+     * The compiled saved mobs of a template. A cached plan is returned as
+     * long as the size and modification time of its mob file are unchanged;
+     * otherwise the file is hashed and recompiled off the main thread (the
+     * previous plan is kept if the hash matches). Completes off the main
+     * thread unless the plan was already cached.
+     */
+    public CompletableFuture<SpawnPlan> getSpawnPlan(String templateName) {
         File f = mobFileFor(templateName);
-        if (!f.exists()) {
-            Bukkit.getLogger().info("spawnSavedMobs: no saved mobs found for template " + templateName);
+        long size = f.isFile() ? f.length() : -1L;
+        long modified = f.lastModified();
+        return spawnPlans.compute(templateName, (k, current) -> {
+            if (current != null && !current.isDone()) {
+                return current; // already compiling
+            }
+            SpawnPlan previous = cachedPlan(current);
+            if (previous != null && previous.matches(size, modified)) {
+                return current;
+            }
+            return CompletableFuture.supplyAsync(() -> compileSpawnPlan(templateName, previous), asyncExecutor);
+        });
+    }
+
+    /**
+     * Startup hook: compile the template's plan in the background. A
+     * template that only has a JSON mob file (older saves, the bundled
+     * default) is converted to the binary format first; the original JSON
+     * stays as a <code>.json.bak</code> backup.
+     */
+    public void prepareSpawnPlan(String templateName) {
+        if (binaryMobFile(templateName).isFile() || !jsonMobFile(templateName).isFile()) {
+            getSpawnPlan(templateName);
             return;
         }
+        importMobsJson(templateName).exceptionally(ex -> {
+            Bukkit.getLogger().warning("Could not convert the mobs of " + templateName + ": "
+                    + (ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage()));
+            getSpawnPlan(templateName);
+            return 0;
+        });
+    }
+
+    /**
+     * Recompile the template's plan now, e.g. right after its mob file was
+     * written or replaced.
+     */
+    public CompletableFuture<SpawnPlan> refreshSpawnPlan(String templateName) {
+        return spawnPlans.compute(templateName, (k, current) -> {
+            // chained so an older compilation cannot finish last
+            CompletableFuture<?> before = current != null ? current : CompletableFuture.completedFuture(null);
+            return before.handle((p, ex) -> null).thenApplyAsync(
+                    v -> compileSpawnPlan(templateName, cachedPlan(current)), asyncExecutor);
+        });
+    }
+
+    private static SpawnPlan cachedPlan(CompletableFuture<SpawnPlan> future) {
+        return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    private SpawnPlan compileSpawnPlan(String templateName, SpawnPlan previous) {
+        File f = mobFileFor(templateName);
+        if (!f.isFile()) {
+            return SpawnPlan.compile(java.util.Collections.emptyList(), "", -1L, 0L);
+        }
+        long size = f.length();
+        long modified = f.lastModified();
+        java.nio.ByteBuffer data;
         try {
-            FileReader fr = new FileReader(f);
-            com.google.gson.stream.JsonReader jr = new com.google.gson.stream.JsonReader(fr);
-            jr.beginArray();
-            final int[] taskId = new int[1];
-            final java.util.concurrent.atomic.AtomicInteger readCount = new java.util.concurrent.atomic.AtomicInteger(
-                    0);
-            taskId[0] = Bukkit.getScheduler().scheduleSyncRepeatingTask(DungeonInstances.getInstance(), new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        if (!jr.hasNext()) {
-                            jr.endArray();
-                            jr.close();
-                            fr.close();
-                            Bukkit.getScheduler().cancelTask(taskId[0]);
-                            return;
-                        }
-                        MobData d = gson.fromJson(jr, MobData.class);
-                        int idx = readCount.getAndIncrement();
-                        Bukkit.getLogger()
-                                .info("spawnSavedMobs: entry #" + idx + " type=" + d.type + " uuid=" + d.uuid);
-                        try {
-                            org.bukkit.entity.EntityType type = org.bukkit.entity.EntityType.valueOf(d.type);
-                            Location loc = new Location(world, d.x, d.y, d.z, d.yaw, d.pitch);
-                            if (!world.isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
-                                world.loadChunk(loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
-                            }
-                            org.bukkit.entity.Entity spawned = world.spawnEntity(loc, type);
-                            if (spawned == null) {
-                                Bukkit.getLogger().warning(
-                                        "spawnSavedMobs: spawnEntity returned null for " + d.type + " at " + loc);
-                            } else if (spawned instanceof org.bukkit.entity.LivingEntity) {
-                                org.bukkit.entity.LivingEntity ent = (org.bukkit.entity.LivingEntity) spawned;
-                                // ensure the entity is flagged persistent so vanilla will not
-                                // despawn it when no players are nearby
-                                try {
-                                    ent.setPersistent(true);
-                                } catch (NoSuchMethodError | NoClassDefFoundError ignore) {
-                                    // older API versions may not have this method; it’s okay
-                                }
-                                // restore original UUID if possible (for deduplication/persistence)
-                                if (d.uuid != null) {
-                                    try {
-                                        java.util.UUID orig = java.util.UUID.fromString(d.uuid);
-                                        Object nms = ent.getClass().getMethod("getHandle").invoke(ent);
-                                        nms.getClass().getMethod("setUniqueId", java.util.UUID.class).invoke(nms, orig);
-                                    } catch (Exception ignore) {
-                                        // if reflection fails or method missing, ignore
-                                    }
-                                }
-                                if (d.nbt != null) {
-                                    applyEntityNBT(ent, d.nbt);
-                                }
-                                if (d.extra != null && !d.extra.isEmpty()) {
-                                    Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> {
-                                        applySerializedMap(ent, d.extra);
-                                    }, 1L);
-                                }
-                                ent.setAI(true);
-
-                                // scale attributes according to chosen difficulty
-                                applyDifficulty(ent, difficulty);
-
-                                ent.setPersistent(true); // ensure they don't despawn
-                            }
-                        } catch (IllegalArgumentException ignored) {
-                            Bukkit.getLogger().warning("Unknown mob type when spawning saved mob: " + d.type);
-                        }
-                    } catch (IOException ioe) {
-                        Bukkit.getLogger().severe("Error reading mob data while spawning: " + ioe.getMessage());
-                        Bukkit.getScheduler().cancelTask(taskId[0]);
-                    } catch (Exception ex) {
-                        Bukkit.getLogger().severe(
-                                "Unexpected error in spawnSavedMobs loop for template " + templateName + ": " + ex);
-                        // continue with next entry instead of cancelling task
+            data = MobSpawnFile.map(f);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        String hash;
+        try {
+            java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+            digest.update(data.duplicate());
+            hash = java.util.HexFormat.of().formatHex(digest.digest());
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // required on every JVM
+        }
+        if (previous != null && hash.equals(previous.getHash())) {
+            return previous.withFileStat(size, modified);
+        }
+        java.util.List<MobData> mobs;
+        try {
+            if (MobSpawnFile.isBinary(data)) {
+                mobs = MobSpawnFile.read(data);
+            } else {
+                mobs = gson.fromJson(java.nio.charset.StandardCharsets.UTF_8.decode(data.duplicate()).toString(),
+                        new TypeToken<java.util.List<MobData>>() {
+                        }.getType());
+            }
+        } catch (IOException | com.google.gson.JsonParseException e) {
+            throw new CompletionException(new IOException("unreadable " + f.getName() + ": " + e.getMessage()));
+        }
+        SpawnPlan plan = SpawnPlan.compile(mobs != null ? mobs : java.util.Collections.emptyList(), hash, size,
+                modified);
+        Bukkit.getLogger().info("Compiled spawn plan for " + templateName + " (" + plan.getEntries().size()
+                + " mobs)");
+        return plan;
+    }
+
+    /**
+     * Spawn the mobs of a plan, nearest to the template spawn point first, as
+     * many per tick as fit in the spawn budget (see {@link #spawnBudgetNanos()}).
+     * Mobs of chunks that are not loaded are never loaded for; they are
+     * handed to {@link LazyMobSpawner#defer} and spawn when their chunk loads.
+     * The future completes once every entry has been processed or the world
+     * went away.
+     */
+    public CompletableFuture<Void> spawnPlan(String templateName, World world, SpawnPlan plan,
+            Difficulty difficulty) {
+        return spawnPlan(templateName, world, plan, difficulty, null);
+    }
+
+    /**
+     * Same as {@link #spawnPlan(String, World, SpawnPlan, Difficulty)},
+     * calling <code>onSpawn</code> with every mob spawned.
+     */
+    public CompletableFuture<Void> spawnPlan(String templateName, World world, SpawnPlan plan,
+            Difficulty difficulty, java.util.function.Consumer<LivingEntity> onSpawn) {
+        return spawnPlan(templateName, world, plan, difficulty, null, onSpawn);
+    }
+
+    /**
+     * Same as {@link #spawnPlan(String, World, SpawnPlan, Difficulty,
+     * java.util.function.Consumer)}, ordering the mobs by distance from
+     * <code>origin</code> (the template spawn point when null).
+     */
+    public CompletableFuture<Void> spawnPlan(String templateName, World world, SpawnPlan plan,
+            Difficulty difficulty, Location origin, java.util.function.Consumer<LivingEntity> onSpawn) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (!isDungeonManagedWorld(world)) {
+            Bukkit.getLogger().warning("spawnPlan called for non-dungeon world '" +
+                    (world != null ? world.getName() : "null") + "' (template " + templateName + "); skipping.");
+            done.complete(null);
+            return done;
+        }
+        if (plan == null || plan.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+        Location from = origin != null ? origin : getSpawnLocation(templateName, world);
+        java.util.Iterator<SpawnPlan.Entry> it = plan.nearestFirst(from.getX(), from.getY(), from.getZ())
+                .iterator();
+        final org.bukkit.scheduler.BukkitTask[] taskHolder = new org.bukkit.scheduler.BukkitTask[1];
+        taskHolder[0] = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), () -> {
+            if (Bukkit.getWorld(world.getUID()) == null) {
+                taskHolder[0].cancel();
+                done.complete(null);
+                return;
+            }
+            long start = System.nanoTime();
+            long budget = spawnBudgetNanos();
+            // always spawn at least one, even when the server is struggling
+            do {
+                if (!it.hasNext()) {
+                    taskHolder[0].cancel();
+                    done.complete(null);
+                    return;
+                }
+                SpawnPlan.Entry entry = it.next();
+                if (!world.isChunkLoaded((int) (entry.getChunkKey() >> 32), (int) entry.getChunkKey())) {
+                    lazySpawner.defer(world, entry, difficulty, onSpawn);
+                    continue;
+                }
+                try {
+                    LivingEntity spawned = spawnMob(world, entry, difficulty);
+                    if (spawned != null && onSpawn != null) {
+                        onSpawn.accept(spawned);
                     }
+                } catch (Exception ex) {
+                    Bukkit.getLogger().severe(
+                            "Unexpected error in spawnPlan loop for template " + templateName + ": " + ex);
                 }
-            }, 0L, 1L);
-        } catch (IOException e) {
-            Bukkit.getLogger().severe("Failed to open mob data file for " + templateName + ": " + e.getMessage());
+            } while (System.nanoTime() - start < budget);
+        }, 0L, 1L);
+        return done;
+    }
+
+    /**
+     * Load every chunk holding a saved mob, pinned until
+     * {@link #releasePinnedChunks}, then spawn the whole plan. Used for hot
+     * standby worlds, which must be complete before a party is handed one.
+     */
+    CompletableFuture<Void> populateEagerly(String templateName, World world, SpawnPlan plan,
+            Difficulty difficulty) {
+        ChunkPreloader.Preload preload = ChunkPreloader.preload(world, plan.byChunk().keySet());
+        ChunkPreloader.Preload previous = pinnedChunks.put(world.getName(), preload);
+        if (previous != null) {
+            previous.release();
+        }
+        return preload.getFuture().thenCompose(v -> spawnPlan(templateName, world, plan, difficulty, null));
+    }
+
+    /**
+     * Write the baked block entities of a freshly generated chunk of a
+     * generator-mode instance (chest contents, signs, spawners...).
+     */
+    public void applyGeneratedBlockEntities(World world, org.bukkit.Chunk chunk) {
+        if (!generatedInstances.contains(world.getName())) {
+            return;
+        }
+        DungeonInstance instance = getDungeonInstance(world);
+        BakedTemplate baked = instance != null ? BakedTemplate.get(instance.getTemplate()) : null;
+        if (baked == null) {
+            return;
+        }
+        for (BakedBlockEntity be : baked.getBlockEntities(chunk.getX(), chunk.getZ())) {
+            be.apply(world.getBlockAt(be.getX(), be.getY(), be.getZ()));
+        }
+    }
+
+    /**
+     * Drop the chunk tickets taken by {@link #populateEagerly}, if any.
+     */
+    public void releasePinnedChunks(String worldName) {
+        ChunkPreloader.Preload preload = pinnedChunks.remove(worldName);
+        if (preload != null) {
+            preload.release();
+        }
+    }
+
+    /**
+     * Spawn the plan's mobs into an instance at the start of a run: lazily,
+     * chunk by chunk as the party explores (see {@link LazyMobSpawner}),
+     * unless <code>spawning.lazy-chunks</code> is off. The future completes
+     * once the mobs of the chunks loaded right now have spawned.
+     */
+    public CompletableFuture<Void> populateInstance(String templateName, World world, SpawnPlan plan,
+            Difficulty difficulty, java.util.function.Consumer<LivingEntity> onSpawn) {
+        if (DungeonInstances.getInstance().getConfig().getBoolean("spawning.lazy-chunks", true)
+                && isDungeonManagedWorld(world)) {
+            return lazySpawner.start(templateName, world, plan, difficulty, onSpawn);
+        }
+        return spawnPlan(templateName, world, plan, difficulty, onSpawn);
+    }
+
+    /**
+     * Time each spawn task may use per tick: <code>spawning.budget-ms</code>,
+     * scaled down as the recent MSPT climbs from
+     * <code>spawning.slowdown-mspt</code> towards 50 ms.
+     */
+    long spawnBudgetNanos() {
+        org.bukkit.configuration.file.FileConfiguration config = DungeonInstances.getInstance().getConfig();
+        double budgetMs = Math.max(0.0, config.getDouble("spawning.budget-ms", 4.0));
+        TickMonitor monitor = DungeonInstances.getInstance().getTickMonitor();
+        if (monitor != null) {
+            budgetMs *= monitor.headroom(config.getDouble("spawning.slowdown-mspt", 40.0));
+        }
+        return (long) (budgetMs * 1_000_000L);
+    }
+
+    /**
+     * Spawn a single planned mob and restore its NBT, equipment and difficulty
+     * scaling. Returns null without loading anything if the mob's chunk is not
+     * loaded; callers defer those entries. Must run on the main thread.
+     */
+    org.bukkit.entity.LivingEntity spawnMob(World world, SpawnPlan.Entry entry, Difficulty difficulty) {
+        MobData d = entry.getSource();
+        Location loc = new Location(world, d.x, d.y, d.z, d.yaw, d.pitch);
+        if (!world.isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
+            return null;
+        }
+        org.bukkit.entity.Entity spawned = world.spawnEntity(loc, entry.type);
+        if (spawned == null) {
+            Bukkit.getLogger().warning("spawnPlan: spawnEntity returned null for " + d.type + " at " + loc);
+            return null;
+        }
+        if (!(spawned instanceof org.bukkit.entity.LivingEntity)) {
+            return null;
+        }
+        org.bukkit.entity.LivingEntity ent = (org.bukkit.entity.LivingEntity) spawned;
+        // ensure the entity is flagged persistent so vanilla will not
+        // despawn it when no players are nearby
+        ent.setPersistent(true);
+        // restore original UUID if possible (for deduplication/persistence)
+        if (entry.uuid != null) {
+            try {
+                Object nms = ent.getClass().getMethod("getHandle").invoke(ent);
+                nms.getClass().getMethod("setUniqueId", java.util.UUID.class).invoke(nms, entry.uuid);
+            } catch (Exception ignore) {
+                // if reflection fails or method missing, ignore
+            }
+        }
+        if (entry.nbtTag != null) {
+            if (!SpawnPlan.loadTag(ent, entry.nbtTag)) {
+                Bukkit.getLogger().warning("Failed to apply saved NBT to " + ent.getType());
+            }
+        } else if (entry.nbtMap != null) {
+            applySerializedMap(ent, entry.nbtMap);
+        }
+        if (entry.extra != null || entry.equipment != null) {
+            Bukkit.getScheduler().runTaskLater(DungeonInstances.getInstance(), () -> {
+                applySerializedMap(ent, entry.extra);
+                applyEquipment(ent, entry.equipment);
+            }, 1L);
+        }
+        // after the saved NBT, which carries its own persistent data
+        ent.getPersistentDataContainer().set(dungeonMobKey, org.bukkit.persistence.PersistentDataType.BYTE, (byte) 1);
+        ent.setAI(true);
+
+        // scale attributes according to chosen difficulty
+        applyDifficulty(ent, difficulty);
+
+        ent.setPersistent(true); // ensure they don't despawn
+        return ent;
+    }
+
+    /**
+     * Put copies of pre-deserialized equipment on the entity.
+     */
+    private void applyEquipment(org.bukkit.entity.LivingEntity ent, Map<String, org.bukkit.inventory.ItemStack> items) {
+        org.bukkit.inventory.EntityEquipment equipment = ent.getEquipment();
+        if (items == null || equipment == null) {
+            return;
+        }
+        for (Map.Entry<String, org.bukkit.inventory.ItemStack> e : items.entrySet()) {
+            org.bukkit.inventory.ItemStack item = e.getValue().clone();
+            switch (e.getKey()) {
+                case "helmet" -> equipment.setHelmet(item);
+                case "chestplate" -> equipment.setChestplate(item);
+                case "leggings" -> equipment.setLeggings(item);
+                case "boots" -> equipment.setBoots(item);
+                case "itemInMainHand" -> equipment.setItemInMainHand(item);
+                case "itemInOffHand" -> equipment.setItemInOffHand(item);
+                default -> {
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -43,7 +43,8 @@ public class DungeonScoreboardManager {
 
     private void updateAll() {
         for (Player player : Bukkit.getOnlinePlayers()) {
-            if (player.getWorld().getName().startsWith("instance_")) {
+            if (DungeonInstances.getInstance().getDungeonManager().getDungeonInstance(player.getWorld()) != null
+                    || getHostSlot(player) != null) {
                 updateScoreboard(player);
             } else {
                 removeScoreboard(player);
@@ -51,6 +52,16 @@ public class DungeonScoreboardManager {
         }
     }
 
+    // slot of a player currently inside a shared host world run
+    private HostWorldManager.Slot getHostSlot(Player player) {
+        if (!HostWorldManager.isHostWorld(player.getWorld().getName())) {
+            return null;
+        }
+        HostWorldManager.Slot slot = DungeonInstances.getInstance().getDungeonManager().getHostManager()
+                .getSlotOf(player.getUniqueId());
+        return slot != null && slot.contains(player.getLocation()) ? slot : null;
+    }
+
     private void updateScoreboard(Player player) {
         PartyManager partyManager = DungeonInstances.getInstance().getPartyManager();
         PartyManager.Party party = partyManager.getPartyByPlayer(player);
@@ -72,17 +83,15 @@ public class DungeonScoreboardManager {
             oldObj.unregister();
         }
 
-        // Determine dungeon name from world name (instance_<dungeon>_<uuid>)
-        String worldName = player.getWorld().getName();
+        // Determine dungeon name from the host slot or the instance registry
         String dungeonName = "Dungeon";
-        if (worldName.startsWith("instance_")) {
-            int start = "instance_".length();
-            int lastUnderscore = worldName.lastIndexOf('_');
-            if (lastUnderscore > start) {
-                dungeonName = worldName.substring(start, lastUnderscore);
-            } else {
-                dungeonName = worldName.substring(start);
-            }
+        HostWorldManager.Slot slot = getHostSlot(player);
+        DungeonInstance instance = DungeonInstances.getInstance().getDungeonManager()
+                .getDungeonInstance(player.getWorld());
+        if (slot != null) {
+            dungeonName = slot.getTemplate();
+        } else if (instance != null) {
+            dungeonName = instance.getTemplate();
         }
 
         @SuppressWarnings("deprecation")
@@ -96,8 +105,8 @@ public class DungeonScoreboardManager {
 
         objective.getScore(ChatColor.GRAY + "Dungeon: " + ChatColor.WHITE + dungeonName).setScore(score--);
         // show difficulty on second row
-        DungeonManager.Difficulty diff = DungeonInstances.getInstance().getDungeonManager()
-                .getDifficultyForInstance(worldName);
+        DungeonManager.Difficulty diff = slot != null ? slot.getDifficulty()
+                : instance != null ? instance.getDifficulty() : DungeonManager.Difficulty.NORMAL;
         ChatColor diffColor;
         boolean bold = false;
         switch (diff) {
@@ -0,0 +1,239 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.Difficulty;
+
+/**
+ * Keeps runs alive when their instance empties without the party leaving on
+ * purpose (disconnect, death outside the instance, teleport quirks). The world
+ * is saved and unloaded, but its folder, difficulty and party binding stay
+ * for <code>hibernate.ttl-minutes</code>; a bound player running
+ * <code>/dungeon rejoin</code> loads it again. Expired instances are deleted
+ * by a reaper.
+ */
+public class HibernationManager {
+
+    private final DungeonManager dungeonManager;
+    // instance name -> binding, for hibernated and rejoined instances alike
+    private final Map<String, Binding> bindings = new HashMap<>();
+    // players moved out of an instance on purpose (leave, kick, unload) -> when;
+    // the teleport that follows changes their world right away, so older marks
+    // belong to a move that never happened and are ignored
+    private final Map<UUID, Long> leaving = new HashMap<>();
+    private static final long LEAVING_MILLIS = 5_000L;
+    private BukkitTask reaper;
+
+    private static class Binding {
+        final String templateName;
+        final Difficulty difficulty;
+        final Set<UUID> members;
+        long expiresAt;
+        boolean hibernated;
+
+        Binding(String templateName, Difficulty difficulty, Set<UUID> members) {
+            this.templateName = templateName;
+            this.difficulty = difficulty;
+            this.members = members;
+        }
+    }
+
+    public HibernationManager(DungeonManager dungeonManager) {
+        this.dungeonManager = dungeonManager;
+    }
+
+    private long ttlMillis() {
+        return DungeonInstances.getInstance().getConfig().getLong("hibernate.ttl-minutes", 10L) * 60_000L;
+    }
+
+    public void start() {
+        reaper = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), this::reap, 1200L, 1200L);
+    }
+
+    public void stop() {
+        if (reaper != null) {
+            reaper.cancel();
+            reaper = null;
+        }
+        bindings.clear();
+        leaving.clear();
+    }
+
+    /**
+     * Record that the player is about to leave their instance deliberately,
+     * so that the world does not hibernate on their account, and drop them
+     * from any binding.
+     */
+    public void markLeaving(UUID playerId) {
+        leaving.put(playerId, System.currentTimeMillis());
+        for (Binding binding : bindings.values()) {
+            binding.members.remove(playerId);
+        }
+    }
+
+    /**
+     * True (once) if {@link #markLeaving} was called for the player in the
+     * last few seconds.
+     */
+    public boolean consumeLeaving(UUID playerId) {
+        Long markedAt = leaving.remove(playerId);
+        return markedAt != null && System.currentTimeMillis() - markedAt <= LEAVING_MILLIS;
+    }
+
+    /**
+     * Drop the player's leaving mark, e.g. when they quit before their world
+     * changed.
+     */
+    public void clearLeaving(UUID playerId) {
+        leaving.remove(playerId);
+    }
+
+    /**
+     * Save and unload an instance that has just become empty. The last
+     * player's party (or the player alone) is bound to it. Returns false if
+     * the instance cannot hibernate and should be released as usual.
+     */
+    public boolean hibernate(World world, Player lastPlayer) {
+        String name = world.getName();
+        DungeonInstance instance = dungeonManager.getDungeonInstance(world);
+        if (ttlMillis() <= 0 || instance == null || instance.getState() != DungeonInstance.State.ACTIVE
+                || !world.getPlayers().isEmpty()) {
+            return false;
+        }
+        Binding binding = bindings.get(name);
+        if (binding == null) {
+            Set<UUID> members = new HashSet<>(instance.getParty());
+            PartyManager.Party party = DungeonInstances.getInstance().getPartyManager().getPartyByPlayer(lastPlayer);
+            if (party != null) {
+                members.addAll(party.getMembers());
+            }
+            members.add(lastPlayer.getUniqueId());
+            binding = new Binding(instance.getTemplate(), instance.getDifficulty(), members);
+        }
+        // mobs of unvisited chunks still spawn after waking up
+        dungeonManager.getLazySpawner().persist(world);
+        world.save();
+        if (!Bukkit.unloadWorld(world, true)) {
+            Bukkit.getLogger().warning("Could not unload " + name + " for hibernation; releasing it instead.");
+            return false;
+        }
+        dungeonManager.getRegistry().unregister(name);
+        binding.hibernated = true;
+        binding.expiresAt = System.currentTimeMillis() + ttlMillis();
+        dungeonManager.getJournal().hibernated(name, binding.expiresAt, binding.members);
+        bindings.put(name, binding);
+        // a fresh start for the bound players: their rejoin is not a leave
+        leaving.keySet().removeAll(binding.members);
+        Bukkit.getLogger().info("Hibernated dungeon instance " + name + " for " + binding.members.size()
+                + " player(s)");
+        return true;
+    }
+
+    /**
+     * Name of the hibernated or running instance the player may rejoin, or
+     * null. The most recently bound one wins if there are several.
+     */
+    public String getInstanceFor(UUID playerId) {
+        String best = null;
+        long bestExpiry = Long.MIN_VALUE;
+        for (Map.Entry<String, Binding> e : bindings.entrySet()) {
+            if (e.getValue().members.contains(playerId) && e.getValue().expiresAt > bestExpiry) {
+                best = e.getKey();
+                bestExpiry = e.getValue().expiresAt;
+            }
+        }
+        return best;
+    }
+
+    public boolean isHibernated(String instanceName) {
+        Binding binding = bindings.get(instanceName);
+        return binding != null && binding.hibernated;
+    }
+
+    /**
+     * Load the instance again if it is hibernated and return the world, or
+     * null if it is gone.
+     */
+    public World wake(String instanceName) {
+        final Binding binding = bindings.get(instanceName);
+        if (binding == null) {
+            return null;
+        }
+        World world = Bukkit.getWorld(instanceName);
+        if (world == null) {
+            world = dungeonManager.loadInstanceWorld(binding.templateName, instanceName, binding.difficulty);
+            if (world == null) {
+                forget(instanceName);
+                dungeonManager.unloadDungeonInstance(instanceName);
+                return null;
+            }
+            dungeonManager.getRegistry().update(world.getUID(), i -> i.withParty(binding.members));
+            dungeonManager.getLazySpawner().resume(binding.templateName, world, binding.difficulty);
+            Bukkit.getLogger().info("Woke up dungeon instance " + instanceName);
+        }
+        binding.hibernated = false;
+        leaving.keySet().removeAll(binding.members);
+        return world;
+    }
+
+    /**
+     * Wake the player's bound instance if needed and teleport them to its
+     * spawn point. Returns the instance world, or null if the run is gone.
+     * The caller checks the player is bound and not already inside.
+     */
+    public World rejoin(Player player, String instanceName) {
+        World instance = wake(instanceName);
+        if (instance == null) {
+            return null;
+        }
+        String templateName = dungeonManager.getDungeonInstance(instance).getTemplate();
+        DungeonInstances.getInstance().getPartyManager().setPreviousWorld(player.getUniqueId(),
+                player.getWorld().getName());
+        player.teleport(dungeonManager.getSpawnLocation(templateName, instance));
+        return instance;
+    }
+
+    /**
+     * Re-create the binding of a run that was hibernated when the server
+     * stopped (see {@link DungeonManager#recoverInstances()}).
+     */
+    public void restore(InstanceJournal.Entry entry) {
+        Binding binding = new Binding(entry.template, entry.difficulty, new HashSet<>(entry.members));
+        binding.hibernated = true;
+        binding.expiresAt = entry.expiresAt;
+        bindings.put(entry.worldName, binding);
+    }
+
+    public void forget(String instanceName) {
+        bindings.remove(instanceName);
+    }
+
+    private void reap() {
+        long now = System.currentTimeMillis();
+        leaving.values().removeIf(markedAt -> now - markedAt > LEAVING_MILLIS);
+        Iterator<Map.Entry<String, Binding>> it = bindings.entrySet().iterator();
+        java.util.List<String> expired = new java.util.ArrayList<>();
+        while (it.hasNext()) {
+            Map.Entry<String, Binding> e = it.next();
+            if (e.getValue().hibernated && e.getValue().expiresAt <= now) {
+                it.remove();
+                expired.add(e.getKey());
+            }
+        }
+        for (String name : expired) {
+            Bukkit.getLogger().info("Hibernated dungeon instance " + name + " expired");
+            dungeonManager.unloadDungeonInstance(name);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bukkit.Bukkit;
+import org.bukkit.GameRule;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.WorldCreator;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.Difficulty;
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.MobData;
+
+/**
+ * Engine for templates in <code>host</code> instance mode. Instead of one
+ * world per run, a few shared <code>dungeonhost_&lt;n&gt;</code> worlds are
+ * divided into a grid of slots; a run gets a free slot, the baked template
+ * is pasted at the slot offset and the spawn point and saved mobs are shifted
+ * by the same offset.
+ *
+ * <p>A slot is released (entities removed, slot returned to the free list)
+ * once none of its party members is inside it anymore. The next run pasting
+ * into that slot only rewrites the blocks that differ from the template.
+ *
+ * <p>All methods run on the main thread.
+ */
+public class HostWorldManager {
+
+    public static final String HOST_PREFIX = "dungeonhost_";
+    private static final Pattern NBT_POS = Pattern.compile(
+            "Pos:\\[(-?[0-9.E-]+)d,(-?[0-9.E-]+)d,(-?[0-9.E-]+)d\\]");
+
+    private final DungeonManager dungeonManager;
+    private final List<World> hostWorlds = new ArrayList<>();
+    private final List<Slot> activeSlots = new ArrayList<>();
+    // free slot indexes per host world
+    private final List<java.util.TreeSet<Integer>> freeSlots = new ArrayList<>();
+    // world chunks written by the last paste of each slot ("<world>:<index>")
+    private final java.util.Map<String, Set<Long>> slotFootprints = new java.util.HashMap<>();
+    private BukkitTask sweeper;
+
+    /**
+     * One allocated slot of a host world.
+     */
+    public static class Slot {
+        private final World world;
+        private final int index;
+        private final int originChunkX, originChunkZ;
+        private final int sizeChunks;
+        private final String template;
+        private final Difficulty difficulty;
+        private final Set<UUID> members;
+        private final long createdAt = System.currentTimeMillis();
+        // block offset applied to template coordinates
+        private final int offsetX, offsetZ;
+
+        private Slot(World world, int index, int originChunkX, int originChunkZ, int sizeChunks, String template,
+                Difficulty difficulty, Set<UUID> members, int offsetX, int offsetZ) {
+            this.world = world;
+            this.index = index;
+            this.originChunkX = originChunkX;
+            this.originChunkZ = originChunkZ;
+            this.sizeChunks = sizeChunks;
+            this.template = template;
+            this.difficulty = difficulty;
+            this.members = members;
+            this.offsetX = offsetX;
+            this.offsetZ = offsetZ;
+        }
+
+        public World getWorld() {
+            return world;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        public Difficulty getDifficulty() {
+            return difficulty;
+        }
+
+        public Set<UUID> getMembers() {
+            return members;
+        }
+
+        public boolean contains(Location loc) {
+            if (loc == null || loc.getWorld() == null || !loc.getWorld().getUID().equals(world.getUID())) {
+                return false;
+            }
+            int cx = loc.getBlockX() >> 4;
+            int cz = loc.getBlockZ() >> 4;
+            return cx >= originChunkX && cx < originChunkX + sizeChunks
+                    && cz >= originChunkZ && cz < originChunkZ + sizeChunks;
+        }
+
+        /**
+         * Translate a location given in template coordinates into the slot.
+         */
+        public Location translate(double x, double y, double z, float yaw, float pitch) {
+            return new Location(world, x + offsetX, y, z + offsetZ, yaw, pitch);
+        }
+
+        public Location getSpawnLocation() {
+            DungeonManager.SpawnPoint sp = DungeonInstances.getInstance().getDungeonManager()
+                    .getSpawnPoint(template);
+            if (sp == null) {
+                return translate(0.5, 64, 0.5, 0f, 0f);
+            }
+            return translate(sp.x, sp.y, sp.z, sp.yaw, sp.pitch);
+        }
+    }
+
+    public HostWorldManager(DungeonManager dungeonManager) {
+        this.dungeonManager = dungeonManager;
+    }
+
+    public static boolean isHostWorld(String worldName) {
+        return worldName != null && worldName.startsWith(HOST_PREFIX);
+    }
+
+    /**
+     * Remove host world folders left over from a previous run and start the
+     * slot sweeper. Called once on enable.
+     */
+    public void start() {
+        File[] leftovers = Bukkit.getWorldContainer()
+                .listFiles(f -> f.isDirectory() && isHostWorld(f.getName()));
+        if (leftovers != null) {
+            for (File folder : leftovers) {
+                if (Bukkit.getWorld(folder.getName()) == null) {
+                    dungeonManager.deleteFolder(folder);
+                }
+            }
+        }
+        sweeper = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), this::sweep, 100L, 100L);
+    }
+
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.cancel();
+            sweeper = null;
+        }
+    }
+
+    private FileConfiguration config() {
+        return DungeonInstances.getInstance().getConfig();
+    }
+
+    private int slotChunks() {
+        return Math.max(4, config().getInt("host.slot-size-chunks", 32));
+    }
+
+    private int gridWidth() {
+        return Math.max(1, config().getInt("host.grid-width", 8));
+    }
+
+    /**
+     * Allocate a slot for the template, paste it and spawn its mobs. The
+     * future completes on the main thread once the blocks are in place; mobs
+     * keep spawning afterwards.
+     */
+    public CompletableFuture<Slot> launch(String templateName, Difficulty difficulty, Set<UUID> members) {
+        BakedTemplate baked = BakedTemplate.get(templateName);
+        if (baked == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "Template " + templateName + " must be baked (/dungeon admin bake) to use host mode"));
+        }
+        int size = slotChunks();
+        // keep one empty chunk between neighbouring slots
+        if (baked.getWidthChunks() > size - 1 || baked.getDepthChunks() > size - 1) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Template " + templateName + " ("
+                    + baked.getWidthChunks() + "x" + baked.getDepthChunks() + " chunks) does not fit in a "
+                    + size + " chunk slot"));
+        }
+        Slot slot = allocate(templateName, difficulty, members, baked, size);
+        if (slot == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("No free host slot available"));
+        }
+        long budget = config().getLong("host.paste-budget-ms", 10L);
+        int offsetChunkX = slot.originChunkX - baked.getMinChunkX();
+        int offsetChunkZ = slot.originChunkZ - baked.getMinChunkZ();
+        // chunks left over from a different template previously pasted in this slot
+        Set<Long> footprint = new HashSet<>();
+        for (long key : baked.getChunkKeys()) {
+            footprint.add(BakedTemplate.chunkKey((int) (key >> 32) + offsetChunkX, (int) key + offsetChunkZ));
+        }
+        Set<Long> previous = slotFootprints.put(slot.world.getName() + ":" + slot.index, footprint);
+        Set<Long> stale = new HashSet<>(previous != null ? previous : Set.of());
+        stale.removeAll(footprint);
+        return BlockPaster.clear(slot.world, stale, budget)
+                .thenCompose(cleared -> BlockPaster.paste(baked, slot.world, offsetChunkX, offsetChunkZ, budget))
+                .thenApply(changed -> {
+                    Bukkit.getLogger().info("Pasted " + templateName + " into " + slot.world.getName() + " slot "
+                            + slot.index + " (" + changed + " blocks changed)");
+                    // the shifted plan is compiled once per slot offset and then reused
+                    dungeonManager.getSpawnPlan(templateName)
+                            .thenApplyAsync(plan -> plan.translated(slot.offsetX + "," + slot.offsetZ,
+                                    d -> translate(d, slot.offsetX, slot.offsetZ)),
+                                    task -> Bukkit.getScheduler().runTaskAsynchronously(DungeonInstances.getInstance(),
+                                            task))
+                            .thenAcceptAsync(plan -> {
+                                if (activeSlots.contains(slot)) {
+                                    dungeonManager.spawnPlan(templateName, slot.world, plan, difficulty,
+                                            slot.getSpawnLocation(), null);
+                                }
+                            }, task -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), task));
+                    return slot;
+                }).whenComplete((s, ex) -> {
+                    if (ex != null) {
+                        release(slot);
+                    }
+                });
+    }
+
+    private Slot allocate(String templateName, Difficulty difficulty, Set<UUID> members, BakedTemplate baked,
+            int size) {
+        int perWorld = gridWidth() * gridWidth();
+        int maxWorlds = Math.max(1, config().getInt("host.max-worlds", 2));
+        for (int w = 0; w < maxWorlds; w++) {
+            if (w >= hostWorlds.size()) {
+                World created = createHostWorld(w);
+                if (created == null) {
+                    return null;
+                }
+                hostWorlds.add(created);
+                java.util.TreeSet<Integer> free = new java.util.TreeSet<>();
+                for (int i = 0; i < perWorld; i++) {
+                    free.add(i);
+                }
+                freeSlots.add(free);
+            }
+            Integer index = freeSlots.get(w).pollFirst();
+            if (index == null) {
+                continue;
+            }
+            World world = hostWorlds.get(w);
+            int originChunkX = (index % gridWidth()) * size;
+            int originChunkZ = (index / gridWidth()) * size;
+            int offsetX = (originChunkX - baked.getMinChunkX()) * 16;
+            int offsetZ = (originChunkZ - baked.getMinChunkZ()) * 16;
+            Slot slot = new Slot(world, index, originChunkX, originChunkZ, size, templateName, difficulty,
+                    new HashSet<>(members), offsetX, offsetZ);
+            activeSlots.add(slot);
+            return slot;
+        }
+        return null;
+    }
+
+    private World createHostWorld(int n) {
+        World world = Bukkit.createWorld(new WorldCreator(HOST_PREFIX + n).generator(new VoidChunkGenerator()));
+        if (world == null) {
+            Bukkit.getLogger().warning("Failed to create host world " + HOST_PREFIX + n);
+            return null;
+        }
+        world.setGameRule(GameRule.MOB_GRIEFING, false);
+        world.setGameRule(GameRule.DO_MOB_SPAWNING, false);
+        world.setGameRule(GameRule.DO_DAYLIGHT_CYCLE, false);
+        world.setGameRule(GameRule.DO_WEATHER_CYCLE, false);
+        // host worlds are rebuilt from the bakes, nothing to persist
+        world.setAutoSave(false);
+        Bukkit.getLogger().info("Created host world " + world.getName());
+        return world;
+    }
+
+    /**
+     * Copy of a saved mob moved by the slot offset. The original UUID is
+     * dropped since several slots of the same template share one world.
+     */
+    private static MobData translate(MobData d, int dx, int dz) {
+        MobData copy = new MobData();
+        copy.type = d.type;
+        copy.x = d.x + dx;
+        copy.y = d.y;
+        copy.z = d.z + dz;
+        copy.yaw = d.yaw;
+        copy.pitch = d.pitch;
+        copy.extra = d.extra;
+        copy.nbt = d.nbt;
+        if (copy.nbt != null) {
+            // the saved NBT carries the template position, which load() would restore
+            Matcher m = NBT_POS.matcher(copy.nbt);
+            if (m.find()) {
+                try {
+                    String pos = "Pos:[" + (Double.parseDouble(m.group(1)) + dx) + "d," + m.group(2) + "d,"
+                            + (Double.parseDouble(m.group(3)) + dz) + "d]";
+                    copy.nbt = copy.nbt.substring(0, m.start()) + pos + copy.nbt.substring(m.end());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return copy;
+    }
+
+    public Slot getSlotAt(Location loc) {
+        for (Slot slot : activeSlots) {
+            if (slot.contains(loc)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Slot the player was launched into, or null.
+     */
+    public Slot getSlotOf(UUID playerId) {
+        for (Slot slot : activeSlots) {
+            if (slot.members.contains(playerId)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    public int getActiveSlotCount() {
+        return activeSlots.size();
+    }
+
+    public int getActiveSlotCount(String templateName) {
+        int count = 0;
+        for (Slot slot : activeSlots) {
+            if (slot.template.equals(templateName)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drop a player from their slot (e.g. /dungeon leave) and release the
+     * slot if nobody is left inside.
+     */
+    public void leave(Player player) {
+        Slot slot = getSlotOf(player.getUniqueId());
+        if (slot == null) {
+            return;
+        }
+        slot.members.remove(player.getUniqueId());
+        if (!isOccupied(slot)) {
+            release(slot);
+        }
+    }
+
+    private boolean isOccupied(Slot slot) {
+        for (UUID id : slot.members) {
+            Player p = Bukkit.getPlayer(id);
+            // dead players are about to respawn in the slot
+            if (p != null && p.isOnline() && (p.isDead() || slot.contains(p.getLocation()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Release slots whose party is gone. Slots get a grace period after
+     * launch so the party has time to be teleported in.
+     */
+    private void sweep() {
+        long grace = config().getLong("host.launch-grace-seconds", 60L) * 1000L;
+        long now = System.currentTimeMillis();
+        for (Slot slot : new ArrayList<>(activeSlots)) {
+            if (now - slot.createdAt > grace && !isOccupied(slot)) {
+                release(slot);
+            }
+        }
+    }
+
+    /**
+     * Remove the slot's entities and return it to the free list.
+     */
+    public void release(Slot slot) {
+        if (!activeSlots.remove(slot)) {
+            return;
+        }
+        // mobs of chunks the party never loaded must not show up for the next one
+        dungeonManager.getLazySpawner().dropDeferred(slot.world, key -> {
+            int cx = (int) (key >> 32);
+            int cz = (int) key;
+            return cx >= slot.originChunkX && cx < slot.originChunkX + slot.sizeChunks
+                    && cz >= slot.originChunkZ && cz < slot.originChunkZ + slot.sizeChunks;
+        });
+        int removed = 0;
+        for (Entity e : slot.world.getEntities()) {
+            if (!(e instanceof Player) && slot.contains(e.getLocation())) {
+                e.remove();
+                removed++;
+            }
+        }
+        int w = hostWorlds.indexOf(slot.world);
+        if (w >= 0) {
+            freeSlots.get(w).add(slot.index);
+        }
+        Bukkit.getLogger().info("Released " + slot.world.getName() + " slot " + slot.index + " (" + slot.template
+                + ", " + removed + " entities removed)");
+    }
+
+    /**
+     * Release every slot and unload the host worlds (admin purge, disable).
+     */
+    public void releaseAll() {
+        for (Slot slot : new ArrayList<>(activeSlots)) {
+            release(slot);
+        }
+        for (World world : hostWorlds) {
+            for (Player p : world.getPlayers()) {
+                p.teleport(Bukkit.getWorlds().get(0).getSpawnLocation());
+            }
+            Bukkit.unloadWorld(world, false);
+            dungeonManager.deleteFolder(world.getWorldFolder());
+        }
+        hostWorlds.clear();
+        freeSlots.clear();
+        slotFootprints.clear();
+    }
+}
@@ -0,0 +1,265 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Bukkit;
+
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.Difficulty;
+
+/**
+ * Append-only log of instance lifecycle events, stored as
+ * <code>plugins/DungeonInstances/instances.journal</code>. One tab separated
+ * line per event:
+ *
+ * <pre>
+ * &lt;millis&gt; CREATE    &lt;world&gt; &lt;template&gt; &lt;difficulty&gt; &lt;copy|generator&gt;
+ * &lt;millis&gt; HIBERNATE &lt;world&gt; &lt;expiresAt&gt; &lt;uuid,uuid,...&gt;
+ * &lt;millis&gt; DELETE    &lt;world&gt;
+ * </pre>
+ *
+ * A world loaded again after hibernating gets a fresh CREATE line. The last
+ * field tells whether the world's chunks come from a baked template; older
+ * lines without it are copies.
+ *
+ * Lines are written and flushed in order by a single background thread, so a
+ * crash loses at most the last few events; a torn last line is ignored on
+ * replay. On startup {@link #recover} folds the log into the last known state
+ * of each instance and rewrites it with only what is still needed.
+ */
+public class InstanceJournal {
+
+    public static final String CREATE = "CREATE";
+    public static final String HIBERNATE = "HIBERNATE";
+    public static final String DELETE = "DELETE";
+
+    private static final String COPY = "copy";
+    private static final String GENERATOR = "generator";
+
+    private static final File JOURNAL_FILE = new File("plugins/DungeonInstances/instances.journal");
+
+    private final File file;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "DungeonInstances-journal");
+        t.setDaemon(true);
+        return t;
+    });
+    private BufferedWriter out;
+
+    public InstanceJournal() {
+        this(JOURNAL_FILE);
+    }
+
+    InstanceJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Last known state of one instance after replaying the journal.
+     */
+    public static class Entry {
+        public final String worldName;
+        public String template;
+        public Difficulty difficulty = Difficulty.NORMAL;
+        // chunks served by the baked template's generator (instance-mode generator)
+        public boolean generated;
+        public boolean hibernated;
+        public long expiresAt;
+        public Set<UUID> members = new HashSet<>();
+
+        Entry(String worldName) {
+            this.worldName = worldName;
+        }
+    }
+
+    public void created(String worldName, String template, Difficulty difficulty, boolean generated) {
+        append(CREATE, worldName, template, difficulty.name(), mode(generated));
+    }
+
+    private static String mode(boolean generated) {
+        return generated ? GENERATOR : COPY;
+    }
+
+    public void hibernated(String worldName, long expiresAt, Set<UUID> members) {
+        List<String> ids = new ArrayList<>();
+        for (UUID id : members) {
+            ids.add(id.toString());
+        }
+        append(HIBERNATE, worldName, Long.toString(expiresAt), String.join(",", ids));
+    }
+
+    public void deleted(String worldName) {
+        append(DELETE, worldName);
+    }
+
+    private void append(String... fields) {
+        String line = System.currentTimeMillis() + "\t" + String.join("\t", fields);
+        if (writer.isShutdown()) {
+            return; // plugin disabled; the next start purges what is left
+        }
+        writer.execute(() -> {
+            try {
+                if (out == null) {
+                    file.getParentFile().mkdirs();
+                    out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                out.write(line);
+                out.newLine();
+                out.flush();
+            } catch (IOException e) {
+                Bukkit.getLogger().warning("Failed to write instance journal: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Replay the journal on the writer thread (so that it runs before any
+     * event appended afterwards) and keep only the hibernated, unexpired
+     * instances whose folder is still among <code>folders</code>. The journal
+     * is compacted down to those, which are returned.
+     */
+    public java.util.concurrent.CompletableFuture<Map<String, Entry>> recover(Set<String> folders) {
+        return java.util.concurrent.CompletableFuture.supplyAsync(() -> {
+            long now = System.currentTimeMillis();
+            Map<String, Entry> keep = new LinkedHashMap<>();
+            for (Entry e : replay().values()) {
+                if (e.hibernated && e.expiresAt > now && folders.contains(e.worldName)) {
+                    keep.put(e.worldName, e);
+                }
+            }
+            compact(keep.values());
+            return keep;
+        }, writer);
+    }
+
+    /**
+     * Fold the journal into the last state of every instance that was not
+     * deleted.
+     */
+    private Map<String, Entry> replay() {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return entries;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Bukkit.getLogger().warning("Failed to read instance journal: " + e.getMessage());
+            return entries;
+        }
+        for (String line : lines) {
+            String[] f = line.split("\t");
+            if (f.length < 3) {
+                continue; // torn line
+            }
+            try {
+                switch (f[1]) {
+                    case CREATE: {
+                        Entry e = new Entry(f[2]);
+                        e.template = f[3];
+                        e.difficulty = Difficulty.valueOf(f[4]);
+                        e.generated = f.length > 5 && GENERATOR.equals(f[5]);
+                        entries.put(f[2], e);
+                        break;
+                    }
+                    case HIBERNATE: {
+                        Entry e = entries.get(f[2]);
+                        if (e != null) {
+                            e.hibernated = true;
+                            e.expiresAt = Long.parseLong(f[3]);
+                            e.members.clear();
+                            if (f.length > 4) {
+                                for (String id : f[4].split(",")) {
+                                    if (!id.isEmpty()) {
+                                        e.members.add(UUID.fromString(id));
+                                    }
+                                }
+                            }
+                        }
+                        break;
+                    }
+                    case DELETE:
+                        entries.remove(f[2]);
+                        break;
+                    default:
+                        break;
+                }
+            } catch (RuntimeException ex) {
+                // truncated or hand-edited line
+                Bukkit.getLogger().fine("Skipping journal line: " + line);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Replace the journal with the events needed to describe the given
+     * entries. Runs on the writer thread.
+     */
+    private void compact(Iterable<Entry> keep) {
+        List<String> lines = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Entry e : keep) {
+            lines.add(now + "\t" + CREATE + "\t" + e.worldName + "\t" + e.template + "\t" + e.difficulty.name()
+                    + "\t" + mode(e.generated));
+            if (e.hibernated) {
+                List<String> ids = new ArrayList<>();
+                for (UUID id : e.members) {
+                    ids.add(id.toString());
+                }
+                lines.add(now + "\t" + HIBERNATE + "\t" + e.worldName + "\t" + e.expiresAt + "\t"
+                        + String.join(",", ids));
+            }
+        }
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            file.getParentFile().mkdirs();
+            Path tmp = file.toPath().resolveSibling(file.getName() + ".tmp");
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Bukkit.getLogger().warning("Failed to compact instance journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Flush pending events and close the file (plugin disable).
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
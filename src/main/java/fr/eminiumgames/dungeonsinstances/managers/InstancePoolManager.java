@@ -0,0 +1,176 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+
+/**
+ * Keeps a small pool of ready-to-load <code>instance_&lt;template&gt;_&lt;uuid&gt;</code>
+ * folders per template. The folders are cloned from the template (with
+ * uid.dat already stripped) by a background refiller so that launching a
+ * dungeon only has to rename one of them.
+ *
+ * <p>Pool sizes come from <code>pool.default-size</code> and the per-template
+ * overrides under <code>pool.templates</code> in config.yml.
+ */
+public class InstancePoolManager {
+
+    private final DungeonManager dungeonManager;
+    private final Map<String, ConcurrentLinkedDeque<File>> pools = new ConcurrentHashMap<>();
+    // templates that currently have a refill job running
+    private final Set<String> refilling = ConcurrentHashMap.newKeySet();
+    // bumped whenever a template's staged folders become stale; a refill only
+    // adds folders staged within the epoch it started in
+    private final Map<String, Integer> epochs = new ConcurrentHashMap<>();
+
+    public InstancePoolManager(DungeonManager dungeonManager) {
+        this.dungeonManager = dungeonManager;
+    }
+
+    /**
+     * Number of staged folders we try to keep for the given template.
+     */
+    public int getTargetSize(String templateName) {
+        org.bukkit.configuration.file.FileConfiguration config = DungeonInstances.getInstance().getConfig();
+        ConfigurationSection perTemplate = config.getConfigurationSection("pool.templates");
+        if (perTemplate != null && perTemplate.contains(templateName)) {
+            return Math.max(0, perTemplate.getInt(templateName));
+        }
+        return Math.max(0, config.getInt("pool.default-size", 0));
+    }
+
+    /**
+     * Take a staged folder for the template, or null if the pool is empty.
+     * Folders that disappeared in the meantime (e.g. an admin purge) are
+     * skipped. A refill is scheduled in every case.
+     */
+    public File claim(String templateName) {
+        ConcurrentLinkedDeque<File> pool = pools.get(templateName);
+        File claimed = null;
+        if (pool != null) {
+            File candidate;
+            while ((candidate = pool.poll()) != null) {
+                if (new File(candidate, "level.dat").exists()) {
+                    claimed = candidate;
+                    break;
+                }
+            }
+        }
+        refill(templateName);
+        return claimed;
+    }
+
+    public int size(String templateName) {
+        ConcurrentLinkedDeque<File> pool = pools.get(templateName);
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * Top up every loaded template's pool in the background.
+     */
+    public void refillAll() {
+        for (String templateName : dungeonManager.getTemplateNames()) {
+            refill(templateName);
+        }
+    }
+
+    /**
+     * Stage folders off the main thread until the template's pool reaches its
+     * target size. Only one refill job runs per template at a time.
+     */
+    public void refill(String templateName) {
+        // optimized templates are restaged once the pass is over
+        if (getTargetSize(templateName) <= 0 || dungeonManager.getTemplateOptimizer().isOptimizing(templateName)
+                || !refilling.add(templateName)) {
+            return;
+        }
+        int epoch = epoch(templateName);
+        Bukkit.getScheduler().runTaskAsynchronously(DungeonInstances.getInstance(), () -> {
+            try {
+                ConcurrentLinkedDeque<File> pool;
+                synchronized (this) {
+                    if (epoch != epoch(templateName)) {
+                        return; // invalidated before we started, restarted below
+                    }
+                    pool = pools.computeIfAbsent(templateName, k -> new ConcurrentLinkedDeque<>());
+                }
+                File templateFolder = new File(Bukkit.getWorldContainer(), templateName);
+                while (pool.size() < getTargetSize(templateName) && templateFolder.isDirectory()) {
+                    File staged = new File(Bukkit.getWorldContainer(),
+                            "instance_" + templateName + "_" + UUID.randomUUID());
+                    try {
+                        dungeonManager.prepareInstanceFolder(templateFolder, staged);
+                    } catch (IOException | RuntimeException e) {
+                        Bukkit.getLogger().warning("Failed to stage a pooled instance for " + templateName + ": "
+                                + e.getMessage());
+                        dungeonManager.deleteFolder(staged);
+                        break;
+                    }
+                    boolean added;
+                    synchronized (this) {
+                        added = epoch == epoch(templateName);
+                        if (added) {
+                            pool.add(staged);
+                        }
+                    }
+                    if (!added) {
+                        // cloned from the template as it was before the invalidation
+                        dungeonManager.deleteFolder(staged);
+                        break;
+                    }
+                }
+            } finally {
+                refilling.remove(templateName);
+                if (epoch != epoch(templateName)) {
+                    // the invalidation's own refill was skipped while we ran
+                    Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), () -> refill(templateName));
+                }
+            }
+        });
+    }
+
+    /**
+     * Discard the staged folders of a template (e.g. after the template was
+     * saved again) and stage new ones.
+     */
+    public void invalidate(String templateName) {
+        ConcurrentLinkedDeque<File> pool;
+        synchronized (this) {
+            epochs.merge(templateName, 1, Integer::sum);
+            pool = pools.remove(templateName);
+        }
+        if (pool != null && !pool.isEmpty()) {
+            Bukkit.getScheduler().runTaskAsynchronously(DungeonInstances.getInstance(), () -> {
+                for (File staged : pool) {
+                    dungeonManager.deleteFolder(staged);
+                }
+            });
+        }
+        refill(templateName);
+    }
+
+    /**
+     * Forget every staged folder. Used after a purge removed them from disk.
+     */
+    public synchronized void clear() {
+        Set<String> stale = new java.util.HashSet<>(pools.keySet());
+        stale.addAll(refilling);
+        for (String templateName : stale) {
+            epochs.merge(templateName, 1, Integer::sum);
+        }
+        pools.clear();
+    }
+
+    private int epoch(String templateName) {
+        return epochs.getOrDefault(templateName, 0);
+    }
+}
@@ -0,0 +1,181 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bukkit.Bukkit;
+import org.bukkit.GameRule;
+import org.bukkit.World;
+import org.bukkit.entity.SpawnCategory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * World settings applied to every instance of a template when it is loaded,
+ * stored as <code>plugins/DungeonInstances/profiles/&lt;template&gt;.json</code>.
+ * A template without a file gets {@link #defaults()}, which is written out so
+ * it can be edited; changes apply to the next instance.
+ *
+ * <p>Fields left null keep the server's setting. View and simulation distance
+ * are Paper only and ignored on Spigot. {@link #bounds}, set with
+ * <code>/dungeon admin bounds</code>, is not a world setting: it overrides
+ * the chunk range taken as the template footprint.
+ */
+public class InstanceProfile {
+
+    private static final File PROFILE_FOLDER = new File("plugins/DungeonInstances/profiles");
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    // game rule name -> value ("false", "0", ...)
+    public Map<String, String> gameRules = new LinkedHashMap<>();
+    public Boolean autoSave;
+    // spawn category name (MONSTER, ANIMAL, ...) -> natural spawn cap
+    public Map<String, Integer> spawnLimits = new LinkedHashMap<>();
+    public Integer viewDistance;
+    public Integer simulationDistance;
+    // inclusive chunk range of the dungeon, or null to detect it
+    public Bounds bounds;
+
+    public static class Bounds {
+        public int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+
+        public Bounds() {
+        }
+
+        public Bounds(int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+            this.minChunkX = Math.min(minChunkX, maxChunkX);
+            this.minChunkZ = Math.min(minChunkZ, maxChunkZ);
+            this.maxChunkX = Math.max(minChunkX, maxChunkX);
+            this.maxChunkZ = Math.max(minChunkZ, maxChunkZ);
+        }
+    }
+
+    /**
+     * Settings for a world whose content is entirely placed by the plugin:
+     * no natural spawns, weather, raids or spawn chunks, no autosave.
+     */
+    public static InstanceProfile defaults() {
+        InstanceProfile p = new InstanceProfile();
+        p.gameRules.put("doMobSpawning", "false");
+        p.gameRules.put("doPatrolSpawning", "false");
+        p.gameRules.put("doTraderSpawning", "false");
+        p.gameRules.put("doInsomnia", "false");
+        p.gameRules.put("doWeatherCycle", "false");
+        p.gameRules.put("doFireTick", "false");
+        p.gameRules.put("mobGriefing", "false");
+        p.gameRules.put("spawnChunkRadius", "0");
+        p.gameRules.put("randomTickSpeed", "3");
+        p.autoSave = false;
+        p.spawnLimits.put("MONSTER", 0);
+        p.spawnLimits.put("ANIMAL", 0);
+        p.spawnLimits.put("WATER_ANIMAL", 0);
+        p.spawnLimits.put("WATER_AMBIENT", 0);
+        p.spawnLimits.put("AMBIENT", 0);
+        return p;
+    }
+
+    public static File fileFor(String templateName) {
+        return new File(PROFILE_FOLDER, templateName + ".json");
+    }
+
+    /**
+     * Load the template's profile, creating the file with the defaults if it
+     * does not exist yet.
+     */
+    public static InstanceProfile load(String templateName) {
+        File f = fileFor(templateName);
+        if (!f.exists()) {
+            InstanceProfile p = defaults();
+            try {
+                PROFILE_FOLDER.mkdirs();
+                try (FileWriter w = new FileWriter(f)) {
+                    GSON.toJson(p, w);
+                }
+            } catch (IOException e) {
+                Bukkit.getLogger().warning("Failed to write default profile for " + templateName + ": "
+                        + e.getMessage());
+            }
+            return p;
+        }
+        try (FileReader r = new FileReader(f)) {
+            InstanceProfile p = GSON.fromJson(r, InstanceProfile.class);
+            return p != null ? p : defaults();
+        } catch (IOException | com.google.gson.JsonParseException e) {
+            Bukkit.getLogger().warning("Failed to read profile for " + templateName + ", using defaults: "
+                    + e.getMessage());
+            return defaults();
+        }
+    }
+
+    public void save(String templateName) throws IOException {
+        PROFILE_FOLDER.mkdirs();
+        try (FileWriter w = new FileWriter(fileFor(templateName))) {
+            GSON.toJson(this, w);
+        }
+    }
+
+    /**
+     * Apply every setting of the profile to the world. Unknown game rules or
+     * spawn categories are logged and skipped.
+     */
+    public void apply(World world) {
+        if (gameRules != null) {
+            for (Map.Entry<String, String> e : gameRules.entrySet()) {
+                applyGameRule(world, e.getKey(), e.getValue());
+            }
+        }
+        if (autoSave != null) {
+            world.setAutoSave(autoSave);
+        }
+        if (spawnLimits != null) {
+            for (Map.Entry<String, Integer> e : spawnLimits.entrySet()) {
+                try {
+                    world.setSpawnLimit(SpawnCategory.valueOf(e.getKey().toUpperCase()), e.getValue());
+                } catch (IllegalArgumentException ex) {
+                    Bukkit.getLogger().warning("Unknown spawn category in profile: " + e.getKey());
+                }
+            }
+        }
+        // Paper only
+        if (viewDistance != null) {
+            invokeInt(world, "setViewDistance", viewDistance);
+        }
+        if (simulationDistance != null) {
+            invokeInt(world, "setSimulationDistance", simulationDistance);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void applyGameRule(World world, String name, String value) {
+        GameRule<?> rule = GameRule.getByName(name);
+        if (rule == null) {
+            // e.g. spawnChunkRadius before 1.20.5
+            Bukkit.getLogger().fine("Game rule " + name + " does not exist on this server");
+            return;
+        }
+        try {
+            if (rule.getType() == Boolean.class) {
+                world.setGameRule((GameRule<Boolean>) rule, Boolean.parseBoolean(value));
+            } else if (rule.getType() == Integer.class) {
+                world.setGameRule((GameRule<Integer>) rule, Integer.parseInt(value.trim()));
+            }
+        } catch (NumberFormatException e) {
+            Bukkit.getLogger().warning("Invalid value for game rule " + name + ": " + value);
+        }
+    }
+
+    private static void invokeInt(World world, String method, int value) {
+        try {
+            world.getClass().getMethod(method, int.class).invoke(world, value);
+        } catch (NoSuchMethodException e) {
+            // not Paper
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Bukkit.getLogger().warning("Failed to call " + method + " on " + world.getName() + ": " + e);
+        }
+    }
+}
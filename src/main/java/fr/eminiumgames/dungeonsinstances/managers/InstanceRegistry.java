@@ -0,0 +1,69 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+import org.bukkit.World;
+
+/**
+ * Loaded instance worlds by world UID (and by name for callers that only
+ * have the name, e.g. when the world is already unloaded). Listeners look up
+ * template and difficulty here instead of parsing world names.
+ */
+public class InstanceRegistry {
+
+    private final Map<UUID, DungeonInstance> byUid = new ConcurrentHashMap<>();
+    private final Map<String, DungeonInstance> byName = new ConcurrentHashMap<>();
+
+    public void register(DungeonInstance instance) {
+        DungeonInstance previous = byName.put(instance.getWorldName(), instance);
+        if (previous != null && !previous.getWorldUid().equals(instance.getWorldUid())) {
+            byUid.remove(previous.getWorldUid());
+        }
+        byUid.put(instance.getWorldUid(), instance);
+    }
+
+    public void unregister(String worldName) {
+        DungeonInstance removed = byName.remove(worldName);
+        if (removed != null) {
+            byUid.remove(removed.getWorldUid());
+        }
+    }
+
+    public DungeonInstance get(World world) {
+        return world == null ? null : byUid.get(world.getUID());
+    }
+
+    public DungeonInstance get(UUID worldUid) {
+        return byUid.get(worldUid);
+    }
+
+    public DungeonInstance get(String worldName) {
+        return worldName == null ? null : byName.get(worldName);
+    }
+
+    /**
+     * Replace the instance registered under the world UID with the result of
+     * the update. Does nothing if the world is not registered.
+     */
+    public void update(UUID worldUid, UnaryOperator<DungeonInstance> update) {
+        DungeonInstance current = byUid.get(worldUid);
+        if (current != null) {
+            register(update.apply(current));
+        }
+    }
+
+    public void setState(World world, DungeonInstance.State state) {
+        if (world != null) {
+            update(world.getUID(), i -> i.withState(state));
+        }
+    }
+
+    public Collection<DungeonInstance> getAll() {
+        return Collections.unmodifiableCollection(byUid.values());
+    }
+}
@@ -0,0 +1,400 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.ExperienceOrb;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.Projectile;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockIgniteEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.block.SignChangeEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.inventory.InventoryOpenEvent;
+import org.bukkit.event.inventory.InventoryPickupItemEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerTakeLecternBookEvent;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.Difficulty;
+
+/**
+ * Optional reset mode: instead of unloading and deleting an instance once
+ * its party leaves, the world is put back to the template state in place and
+ * kept loaded for the next party of the same template and difficulty.
+ *
+ * <p>Block changes in instance worlds are tracked per chunk through the block
+ * events below, and so are opened containers, hopper transfers, edited signs
+ * and lecterns. A reset removes the mobs spawned by the plugin and the drops
+ * of the run (items, experience, projectiles), re-pastes only the touched
+ * chunks from the {@link BakedTemplate}, block entity contents included, and
+ * respawns the saved mobs; the world is then idle (AI off) until claimed.
+ * Entities that came with the template (item frames, paintings, armor
+ * stands...) are left alone. Only baked templates can be reset.
+ *
+ * <p>All methods run on the main thread.
+ */
+public class InstanceResetManager implements Listener {
+
+    private final DungeonManager dungeonManager;
+    private final DirtyChunks dirtyChunks;
+    // "template:DIFFICULTY" -> reset worlds waiting for a party
+    private final Map<String, Deque<World>> idle = new HashMap<>();
+    private final Map<String, Long> idleSince = new HashMap<>();
+    private final Set<String> resetting = new HashSet<>();
+    // reset count per world; mobs are tagged with it so stale ones can be dropped
+    private final Map<String, Integer> generations = new HashMap<>();
+    private final org.bukkit.NamespacedKey generationKey = new org.bukkit.NamespacedKey(
+            DungeonInstances.getInstance(), "reset_generation");
+    private BukkitTask expiryTask;
+
+    public InstanceResetManager(DungeonManager dungeonManager) {
+        this.dungeonManager = dungeonManager;
+        this.dirtyChunks = new DirtyChunks(world -> dungeonManager.getDungeonInstance(world) != null);
+    }
+
+    private static String key(String templateName, Difficulty difficulty) {
+        return templateName + ":" + difficulty.name();
+    }
+
+    private FileConfiguration config() {
+        return DungeonInstances.getInstance().getConfig();
+    }
+
+    /**
+     * Whether instances of the template are reset instead of deleted.
+     */
+    public boolean isResetEnabled(String templateName) {
+        return config().getBoolean("reset.templates." + templateName, config().getBoolean("reset.default", false));
+    }
+
+    public void start() {
+        expiryTask = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), this::expireIdle,
+                1200L, 1200L);
+    }
+
+    public void stop() {
+        if (expiryTask != null) {
+            expiryTask.cancel();
+            expiryTask = null;
+        }
+    }
+
+    /**
+     * Hand out an idle reset world for the template/difficulty, or null.
+     */
+    public World claim(String templateName, Difficulty difficulty) {
+        Deque<World> worlds = idle.get(key(templateName, difficulty));
+        while (worlds != null && !worlds.isEmpty()) {
+            World world = worlds.poll();
+            idleSince.remove(world.getName());
+            if (Bukkit.getWorld(world.getUID()) == null) {
+                continue;
+            }
+            dungeonManager.setAIForWorld(world, true);
+            dungeonManager.getRegistry().setState(world, DungeonInstance.State.ACTIVE);
+            Bukkit.getLogger().info("Reusing reset instance " + world.getName());
+            return world;
+        }
+        return null;
+    }
+
+    public boolean isIdle(String worldName) {
+        return idleSince.containsKey(worldName) || resetting.contains(worldName);
+    }
+
+    /**
+     * Start resetting an instance whose party just left. Returns false when
+     * the instance cannot be reset (mode off, template not baked, too many
+     * idle worlds already) and should be unloaded as usual.
+     */
+    public boolean tryReset(World world) {
+        String worldName = world.getName();
+        DungeonInstance instance = dungeonManager.getDungeonInstance(world);
+        if (instance == null || !isResetEnabled(instance.getTemplate()) || resetting.contains(worldName)) {
+            return false;
+        }
+        String templateName = instance.getTemplate();
+        BakedTemplate baked = BakedTemplate.get(templateName);
+        if (baked == null) {
+            return false;
+        }
+        Difficulty difficulty = instance.getDifficulty();
+        String key = key(templateName, difficulty);
+        int maxIdle = config().getInt("reset.max-idle-per-template", 2);
+        Deque<World> worlds = idle.get(key);
+        if (worlds != null && worlds.size() >= maxIdle) {
+            return false;
+        }
+
+        resetting.add(worldName);
+        dungeonManager.getRegistry().setState(world, DungeonInstance.State.RESETTING);
+        int generation = generations.merge(worldName, 1, Integer::sum);
+        // mobs of unloaded chunks are dropped by onEntitiesLoad when they come back
+        for (Entity e : world.getEntities()) {
+            if (DungeonManager.isDungeonMob(e) || isRunLeftover(e)) {
+                e.remove();
+            }
+        }
+        List<Long> toRestore = new ArrayList<>();
+        for (long chunkKey : dirtyChunks.take(worldName)) {
+            if (baked.hasChunk((int) (chunkKey >> 32), (int) chunkKey)) {
+                toRestore.add(chunkKey);
+            }
+        }
+        long budget = config().getLong("reset.budget-ms", 10L);
+        long start = System.currentTimeMillis();
+        BlockPaster.paste(baked, world, 0, 0, toRestore, budget)
+                .thenCompose(changed -> {
+                    Bukkit.getLogger().info("Reset " + worldName + ": " + toRestore.size() + " chunks, " + changed
+                            + " blocks restored in " + (System.currentTimeMillis() - start) + " ms");
+                    return dungeonManager.getSpawnPlan(templateName).thenComposeAsync(
+                            plan -> dungeonManager.populateInstance(templateName, world, plan, difficulty,
+                                    ent -> ent.getPersistentDataContainer().set(generationKey,
+                                            org.bukkit.persistence.PersistentDataType.INTEGER, generation)),
+                            task -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), task));
+                })
+                .whenComplete((v, ex) -> {
+                    resetting.remove(worldName);
+                    if (Bukkit.getWorld(world.getUID()) == null) {
+                        return;
+                    }
+                    if (ex != null || !world.getPlayers().isEmpty()) {
+                        // a failed or interrupted reset is not trustworthy
+                        if (ex != null) {
+                            Bukkit.getLogger().warning("Reset of " + worldName + " failed: " + ex.getMessage());
+                        }
+                        if (world.getPlayers().isEmpty()) {
+                            dungeonManager.unloadDungeonInstance(worldName);
+                        }
+                        return;
+                    }
+                    dungeonManager.setAIForWorld(world, false);
+                    // the next party gets a fresh binding
+                    dungeonManager.getRegistry().update(world.getUID(),
+                            i -> i.withParty(null).withState(DungeonInstance.State.IDLE));
+                    idle.computeIfAbsent(key, k -> new ArrayDeque<>()).add(world);
+                    idleSince.put(worldName, System.currentTimeMillis());
+                });
+        return true;
+    }
+
+    /**
+     * Forget an instance that is being unloaded.
+     */
+    public void forget(String worldName) {
+        dirtyChunks.forget(worldName);
+        generations.remove(worldName);
+        idleSince.remove(worldName);
+        for (Deque<World> worlds : idle.values()) {
+            worlds.removeIf(w -> w.getName().equals(worldName));
+        }
+    }
+
+    private void expireIdle() {
+        long maxIdle = config().getLong("reset.idle-minutes", 10L) * 60_000L;
+        long now = System.currentTimeMillis();
+        for (Deque<World> worlds : idle.values()) {
+            for (Iterator<World> it = worlds.iterator(); it.hasNext();) {
+                World world = it.next();
+                Long since = idleSince.get(world.getName());
+                if (since != null && now - since > maxIdle) {
+                    it.remove();
+                    idleSince.remove(world.getName());
+                    dungeonManager.unloadDungeonInstance(world.getName());
+                }
+            }
+        }
+    }
+
+    private static boolean isRunLeftover(Entity e) {
+        return e instanceof Item || e instanceof ExperienceOrb || e instanceof Projectile;
+    }
+
+    private void markDirty(Block block) {
+        dirtyChunks.mark(block);
+    }
+
+    private void markDirty(List<Block> blocks) {
+        dirtyChunks.mark(blocks);
+    }
+
+    private void markDirty(InventoryHolder holder) {
+        dirtyChunks.mark(holder);
+    }
+
+    /**
+     * Mobs saved with a chunk that unloaded before a reset belong to an
+     * earlier run: remove them when the chunk loads again.
+     */
+    @EventHandler
+    public void onEntitiesLoad(org.bukkit.event.world.EntitiesLoadEvent event) {
+        Integer generation = generations.get(event.getWorld().getName());
+        if (generation == null) {
+            return;
+        }
+        for (Entity e : event.getEntities()) {
+            if (!DungeonManager.isDungeonMob(e)) {
+                continue;
+            }
+            Integer tag = e.getPersistentDataContainer().get(generationKey,
+                    org.bukkit.persistence.PersistentDataType.INTEGER);
+            if (tag == null || tag != generation) {
+                e.remove();
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        markDirty(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        markDirty(event.getBlock());
+        markDirty(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockIgnite(BlockIgniteEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockSpread(BlockSpreadEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockGrow(BlockGrowEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) {
+        markDirty(event.getToBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onLeavesDecay(LeavesDecayEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        markDirty(event.getBlock());
+        for (Block b : event.getBlocks()) {
+            markDirty(b);
+            markDirty(b.getRelative(event.getDirection()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        markDirty(event.getBlock());
+        for (Block b : event.getBlocks()) {
+            markDirty(b);
+            markDirty(b.getRelative(event.getDirection()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    // opening a container is enough to roll its loot table
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryOpen(InventoryOpenEvent event) {
+        markDirty(event.getInventory().getHolder());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryMoveItem(InventoryMoveItemEvent event) {
+        markDirty(event.getSource().getHolder());
+        markDirty(event.getDestination().getHolder());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryPickupItem(InventoryPickupItemEvent event) {
+        markDirty(event.getInventory().getHolder());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSignChange(SignChangeEvent event) {
+        markDirty(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTakeLecternBook(PlayerTakeLecternBookEvent event) {
+        markDirty(event.getLectern().getBlock());
+    }
+
+    // chiseled bookshelves have no inventory screen, spawners take spawn eggs
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInteract(PlayerInteractEvent event) {
+        Block block = event.getClickedBlock();
+        if (event.getAction() == Action.RIGHT_CLICK_BLOCK && block != null
+                && (block.getType() == Material.CHISELED_BOOKSHELF || block.getType() == Material.SPAWNER)) {
+            markDirty(block);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.Difficulty;
+
+/**
+ * Spawns the saved mobs of an instance only when the chunk they stand in is
+ * loaded, instead of loading the whole dungeon up front. The spawn plan is
+ * bucketed by chunk key; chunks already loaded when a run starts are filled
+ * right away (nearest to the spawn point first), the others when a
+ * {@link ChunkLoadEvent} fires for them. Every entry spawns at most once per
+ * run, even if its chunk unloads and loads again.
+ *
+ * <p>When an instance hibernates, the entries already spawned are stored in
+ * the world's persistent data so that waking it up continues the same run.
+ * Queued mobs are spawned within the per-tick budget of
+ * {@link DungeonManager#spawnPlan}.
+ *
+ * <p>Eager spawns ({@link DungeonManager#spawnPlan}, host slots) do not load
+ * chunks either: their entries in unloaded chunks are {@link #defer deferred}
+ * here and spawned once, when the chunk loads.
+ *
+ * <p>All methods run on the main thread.
+ */
+public class LazyMobSpawner implements Listener {
+
+    private final DungeonManager dungeonManager;
+    // instance world name -> run in progress
+    private final Map<String, Run> runs = new HashMap<>();
+    // instance world name -> chunk key -> eager spawns waiting for the chunk
+    private final Map<String, Map<Long, List<Deferred>>> deferred = new HashMap<>();
+    private final NamespacedKey spawnedKey;
+    private final NamespacedKey planKey;
+
+    private final class Run {
+        final String templateName;
+        final World world;
+        final SpawnPlan plan;
+        final Difficulty difficulty;
+        final Consumer<LivingEntity> onSpawn;
+        // plan entries already spawned, and those waiting in the queue
+        final BitSet spawned;
+        final BitSet queued = new BitSet();
+        final Deque<SpawnPlan.Entry> queue = new ArrayDeque<>();
+        // completes once the chunks loaded at the start are populated
+        final CompletableFuture<Void> initial = new CompletableFuture<>();
+        BukkitTask task;
+
+        Run(String templateName, World world, SpawnPlan plan, Difficulty difficulty,
+                Consumer<LivingEntity> onSpawn, BitSet spawned) {
+            this.templateName = templateName;
+            this.world = world;
+            this.plan = plan;
+            this.difficulty = difficulty;
+            this.onSpawn = onSpawn;
+            this.spawned = spawned;
+        }
+
+        void enqueue(List<SpawnPlan.Entry> entries) {
+            for (SpawnPlan.Entry e : entries) {
+                if (!spawned.get(e.index) && !queued.get(e.index)) {
+                    queued.set(e.index);
+                    queue.add(e);
+                }
+            }
+            if (!queue.isEmpty() && task == null) {
+                task = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), this::drain, 0L, 1L);
+            }
+        }
+
+        private void drain() {
+            long start = System.nanoTime();
+            long budget = dungeonManager.spawnBudgetNanos();
+            do {
+                SpawnPlan.Entry e = queue.poll();
+                if (e == null) {
+                    task.cancel();
+                    task = null;
+                    initial.complete(null);
+                    if (spawned.cardinality() == plan.getEntries().size()) {
+                        runs.remove(world.getName(), this);
+                    }
+                    return;
+                }
+                queued.clear(e.index);
+                if (!world.isChunkLoaded((int) (e.getChunkKey() >> 32), (int) e.getChunkKey())) {
+                    continue; // unloaded again before its turn; queued anew when it loads
+                }
+                spawned.set(e.index);
+                try {
+                    LivingEntity ent = dungeonManager.spawnMob(world, e, difficulty);
+                    if (ent != null) {
+                        DungeonInstance instance = dungeonManager.getDungeonInstance(world);
+                        if (instance != null && instance.getState() != DungeonInstance.State.ACTIVE) {
+                            // standby and idle reset worlds wait with AI off
+                            ent.setAI(false);
+                        }
+                        if (onSpawn != null) {
+                            onSpawn.accept(ent);
+                        }
+                    }
+                } catch (Exception ex) {
+                    Bukkit.getLogger().severe("Unexpected error spawning a mob of " + templateName + " in "
+                            + world.getName() + ": " + ex);
+                }
+            } while (System.nanoTime() - start < budget);
+        }
+
+        void cancel() {
+            if (task != null) {
+                task.cancel();
+                task = null;
+            }
+            initial.complete(null);
+        }
+    }
+
+    /**
+     * Progress of a run as kept in the world's persistent data: the hash of
+     * its plan and the indexes of the entries already spawned.
+     */
+    static final class Progress {
+        final String planHash;
+        final BitSet spawned;
+
+        Progress(String planHash, BitSet spawned) {
+            this.planHash = planHash;
+            this.spawned = spawned;
+        }
+
+        void write(PersistentDataContainer data, NamespacedKey planKey, NamespacedKey spawnedKey) {
+            data.set(planKey, PersistentDataType.STRING, planHash);
+            data.set(spawnedKey, PersistentDataType.LONG_ARRAY, spawned.toLongArray());
+        }
+
+        /**
+         * The stored progress, or null if there is none.
+         */
+        static Progress read(PersistentDataContainer data, NamespacedKey planKey, NamespacedKey spawnedKey) {
+            String hash = data.get(planKey, PersistentDataType.STRING);
+            long[] bits = data.get(spawnedKey, PersistentDataType.LONG_ARRAY);
+            if (hash == null || bits == null) {
+                return null;
+            }
+            return new Progress(hash, BitSet.valueOf(bits));
+        }
+
+        /**
+         * Whether the progress was made on this plan; indexes of another
+         * version of the mob file mean nothing.
+         */
+        boolean matches(SpawnPlan plan) {
+            return planHash.equals(plan.getHash());
+        }
+    }
+
+    private static final class Deferred {
+        final SpawnPlan.Entry entry;
+        final Difficulty difficulty;
+        final Consumer<LivingEntity> onSpawn;
+
+        Deferred(SpawnPlan.Entry entry, Difficulty difficulty, Consumer<LivingEntity> onSpawn) {
+            this.entry = entry;
+            this.difficulty = difficulty;
+            this.onSpawn = onSpawn;
+        }
+    }
+
+    public LazyMobSpawner(DungeonManager dungeonManager) {
+        this.dungeonManager = dungeonManager;
+        this.spawnedKey = new NamespacedKey(DungeonInstances.getInstance(), "lazy_spawned");
+        this.planKey = new NamespacedKey(DungeonInstances.getInstance(), "lazy_plan");
+    }
+
+    /**
+     * Start a new run of the plan in the world, replacing any previous one.
+     * The future completes once the mobs of the chunks loaded right now have
+     * spawned; the rest follow as their chunks load.
+     */
+    public CompletableFuture<Void> start(String templateName, World world, SpawnPlan plan, Difficulty difficulty,
+            Consumer<LivingEntity> onSpawn) {
+        world.getPersistentDataContainer().remove(spawnedKey);
+        world.getPersistentDataContainer().remove(planKey);
+        return begin(templateName, world, plan, difficulty, onSpawn, new BitSet());
+    }
+
+    private CompletableFuture<Void> begin(String templateName, World world, SpawnPlan plan, Difficulty difficulty,
+            Consumer<LivingEntity> onSpawn, BitSet spawned) {
+        forget(world.getName());
+        if (plan.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Run run = new Run(templateName, world, plan, difficulty, onSpawn, spawned);
+        runs.put(world.getName(), run);
+        Set<Long> loaded = new HashSet<>();
+        for (Chunk chunk : world.getLoadedChunks()) {
+            loaded.add(BakedTemplate.chunkKey(chunk.getX(), chunk.getZ()));
+        }
+        org.bukkit.Location origin = dungeonManager.getSpawnLocation(templateName, world);
+        run.enqueue(plan.nearestFirst(origin.getX(), origin.getY(), origin.getZ()).stream()
+                .filter(e -> loaded.contains(e.getChunkKey())).toList());
+        if (run.task == null) {
+            run.initial.complete(null);
+        }
+        Bukkit.getLogger().info("Lazy spawning " + plan.getEntries().size() + " mobs in " + world.getName() + " ("
+                + run.queue.size() + " in loaded chunks)");
+        return run.initial;
+    }
+
+    /**
+     * Store the progress of the world's run in its persistent data, before it
+     * is saved for hibernation.
+     */
+    public void persist(World world) {
+        Run run = runs.get(world.getName());
+        if (run == null) {
+            return;
+        }
+        new Progress(run.plan.getHash(), run.spawned).write(world.getPersistentDataContainer(), planKey,
+                spawnedKey);
+    }
+
+    /**
+     * Continue the run stored by {@link #persist(World)} after the world was
+     * loaded again. Nothing happens if there is none, or if the template's
+     * mobs were saved again since (the stored progress would not match).
+     */
+    public void resume(String templateName, World world, Difficulty difficulty) {
+        Progress progress = Progress.read(world.getPersistentDataContainer(), planKey, spawnedKey);
+        if (progress == null) {
+            return;
+        }
+        dungeonManager.getSpawnPlan(templateName).thenAcceptAsync(plan -> {
+            if (Bukkit.getWorld(world.getUID()) == null) {
+                return;
+            }
+            if (!progress.matches(plan)) {
+                Bukkit.getLogger().warning("Mobs of " + templateName + " changed while " + world.getName()
+                        + " was hibernated; its unvisited chunks stay empty.");
+                return;
+            }
+            begin(templateName, world, plan, difficulty, null, progress.spawned);
+        }, task -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), task));
+    }
+
+    /**
+     * Spawn the entry once its chunk loads, instead of loading the chunk now.
+     */
+    public void defer(World world, SpawnPlan.Entry entry, Difficulty difficulty, Consumer<LivingEntity> onSpawn) {
+        deferred.computeIfAbsent(world.getName(), k -> new HashMap<>())
+                .computeIfAbsent(entry.getChunkKey(), k -> new ArrayList<>())
+                .add(new Deferred(entry, difficulty, onSpawn));
+    }
+
+    /**
+     * Drop the deferred spawns of the given chunks (host slot released).
+     */
+    public void dropDeferred(World world, java.util.function.LongPredicate chunkKeys) {
+        Map<Long, List<Deferred>> byChunk = deferred.get(world.getName());
+        if (byChunk != null) {
+            byChunk.keySet().removeIf(chunkKeys::test);
+            if (byChunk.isEmpty()) {
+                deferred.remove(world.getName());
+            }
+        }
+    }
+
+    private void spawnDeferred(World world, long chunkKey, List<Deferred> pending) {
+        if (Bukkit.getWorld(world.getUID()) == null) {
+            return;
+        }
+        if (!world.isChunkLoaded((int) (chunkKey >> 32), (int) chunkKey)) {
+            // unloaded again before the next tick
+            for (Deferred d : pending) {
+                defer(world, d.entry, d.difficulty, d.onSpawn);
+            }
+            return;
+        }
+        for (Deferred d : pending) {
+            try {
+                LivingEntity ent = dungeonManager.spawnMob(world, d.entry, d.difficulty);
+                if (ent != null && d.onSpawn != null) {
+                    d.onSpawn.accept(ent);
+                }
+            } catch (Exception ex) {
+                Bukkit.getLogger().severe("Unexpected error spawning a deferred mob in " + world.getName() + ": "
+                        + ex);
+            }
+        }
+    }
+
+    public boolean isRunning(String worldName) {
+        return runs.containsKey(worldName);
+    }
+
+    public void forget(String worldName) {
+        deferred.remove(worldName);
+        Run run = runs.remove(worldName);
+        if (run != null) {
+            run.cancel();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        long chunkKey = BakedTemplate.chunkKey(event.getChunk().getX(), event.getChunk().getZ());
+        Map<Long, List<Deferred>> byChunk = deferred.get(event.getWorld().getName());
+        List<Deferred> pending = byChunk != null ? byChunk.remove(chunkKey) : null;
+        if (byChunk != null && byChunk.isEmpty()) {
+            deferred.remove(event.getWorld().getName());
+        }
+        if (pending != null) {
+            World world = event.getWorld();
+            // never while the chunk is still loading
+            Bukkit.getScheduler().runTask(DungeonInstances.getInstance(),
+                    () -> spawnDeferred(world, chunkKey, pending));
+        }
+        Run run = runs.get(event.getWorld().getName());
+        if (run == null) {
+            return;
+        }
+        List<SpawnPlan.Entry> bucket = run.plan.byChunk()
+                .get(BakedTemplate.chunkKey(event.getChunk().getX(), event.getChunk().getZ()));
+        if (bucket != null) {
+            // spawned from the next tick on, never while the chunk is still loading
+            run.enqueue(bucket);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        forget(event.getWorld().getName());
+    }
+}
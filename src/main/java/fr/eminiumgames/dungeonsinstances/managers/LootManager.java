@@ -33,14 +33,26 @@ public class LootManager implements Listener {
 
         World world = ent.getWorld();
         String worldName = world.getName();
-        String template = DungeonManager.getTemplateFromWorld(worldName);
-        if (template == null) {
+        DungeonInstance instance = DungeonInstances.getInstance().getDungeonManager().getDungeonInstance(world);
+        String template = instance != null ? instance.getTemplate() : null;
+        DungeonManager.Difficulty diff;
+        HostWorldManager.Slot slot = HostWorldManager.isHostWorld(worldName)
+                ? DungeonInstances.getInstance().getDungeonManager().getHostManager().getSlotAt(ent.getLocation())
+                : null;
+        if (slot != null) {
+            // shared host world: the slot tells which run the mob belongs to
+            template = slot.getTemplate();
+            diff = slot.getDifficulty();
+        } else if (instance != null) {
+            diff = instance.getDifficulty();
+        } else if (worldName.startsWith("editmode_")) {
+            // edit worlds drop the Normal loot
+            template = DungeonManager.getTemplateFromWorld(worldName);
+            diff = DungeonManager.Difficulty.NORMAL;
+        } else {
             // not an instance/edit world we care about
             return;
         }
-
-        DungeonManager.Difficulty diff = DungeonInstances.getInstance().getDungeonManager()
-                .getDifficultyForInstance(worldName);
         LootTableManager.LootPool pool = LootTableManager.getInstance().getLootPool(template, diff, alias);
         if (pool == null || pool.loots.isEmpty())
             return;
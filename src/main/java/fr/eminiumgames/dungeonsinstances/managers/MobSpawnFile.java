@@ -0,0 +1,468 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.MobData;
+
+/**
+ * Binary form of a template's saved mobs (<code>mobSpawns/&lt;template&gt;.dmob</code>):
+ *
+ * <pre>
+ * "DMOB" u8 version
+ * strings   varint count, then per string: varint length, UTF-8 bytes
+ * values    varint count, then per shared map or list (children first):
+ *           u8 kind (MAP/LIST), varint size, entries
+ * mobs      varint count, then per mob: u8 flags, [uuid: 2 x i64 | varint string],
+ *           varint type, x y z as f64, yaw pitch as f32,
+ *           [nbt: varint length + binary compound | varint string],
+ *           [extra: value]
+ * </pre>
+ *
+ * Strings (entity types, map keys, item ids...) are stored once and referred
+ * to by index + 1 (0 is null). Maps and lists in the <code>extra</code> data
+ * are stored once per distinct content, so the equipment and attribute maps
+ * repeated across mobs cost a single varint each. Mob NBT is kept as a binary
+ * compound when printing it back reproduces the saved SNBT exactly, and as
+ * the original string otherwise. Values hold what Gson reads from the JSON
+ * form (doubles, strings, booleans, maps, lists), so converting between the
+ * two formats is lossless.
+ *
+ * <p>Files are read through a read-only memory-mapped buffer and written to a
+ * temporary file that replaces the target atomically. No Bukkit state is
+ * touched; callers run these methods off the main thread where possible.
+ */
+public final class MobSpawnFile {
+
+    public static final String EXTENSION = ".dmob";
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = { 'D', 'M', 'O', 'B' };
+    private static final int FLAG_UUID = 1, FLAG_NBT_BINARY = 2, FLAG_NBT_STRING = 4, FLAG_EXTRA = 8,
+            FLAG_UUID_STRING = 16;
+    // value tags
+    private static final byte NULL = 0, FALSE = 1, TRUE = 2, DOUBLE = 3, STRING = 4, SHARED = 5, INT = 6;
+    // shared value kinds
+    private static final byte MAP = 1, LIST = 2;
+
+    private MobSpawnFile() {
+    }
+
+    /**
+     * Whether the bytes start like a binary mob file.
+     */
+    public static boolean isBinary(ByteBuffer buf) {
+        if (buf.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buf.get(buf.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Map the file read-only. The mapping stays valid after the channel is
+     * closed.
+     */
+    public static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public static List<MobData> read(File file) throws IOException {
+        return read(map(file));
+    }
+
+    /**
+     * Decode the mobs from the buffer, starting at its position.
+     */
+    public static List<MobData> read(ByteBuffer in) throws IOException {
+        ByteBuffer buf = in.duplicate();
+        try {
+            if (!isBinary(buf)) {
+                throw new IOException("not a " + EXTENSION + " file");
+            }
+            buf.position(buf.position() + MAGIC.length);
+            int version = buf.get() & 0xFF;
+            if (version > VERSION) {
+                throw new IOException("mob file version " + version + " is newer than supported (" + VERSION + ")");
+            }
+            String[] strings = new String[count(buf)];
+            for (int i = 0; i < strings.length; i++) {
+                int len = count(buf);
+                byte[] bytes = new byte[len];
+                buf.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            Object[] shared = new Object[count(buf)];
+            for (int i = 0; i < shared.length; i++) {
+                byte kind = buf.get();
+                int size = count(buf);
+                if (kind == MAP) {
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    for (int j = 0; j < size; j++) {
+                        map.put(string(buf, strings), readValue(buf, strings, shared, i));
+                    }
+                    shared[i] = map;
+                } else if (kind == LIST) {
+                    List<Object> list = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) {
+                        list.add(readValue(buf, strings, shared, i));
+                    }
+                    shared[i] = list;
+                } else {
+                    throw new IOException("unknown value kind " + kind);
+                }
+            }
+            int n = count(buf);
+            List<MobData> mobs = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int flags = buf.get();
+                MobData d = new MobData();
+                if ((flags & FLAG_UUID) != 0) {
+                    d.uuid = new UUID(buf.getLong(), buf.getLong()).toString();
+                } else if ((flags & FLAG_UUID_STRING) != 0) {
+                    d.uuid = string(buf, strings);
+                }
+                d.type = string(buf, strings);
+                d.x = buf.getDouble();
+                d.y = buf.getDouble();
+                d.z = buf.getDouble();
+                d.yaw = buf.getFloat();
+                d.pitch = buf.getFloat();
+                if ((flags & FLAG_NBT_BINARY) != 0) {
+                    int len = count(buf);
+                    ByteBuffer slice = buf.slice(buf.position(), len);
+                    buf.position(buf.position() + len);
+                    try (DataInputStream nbt = new DataInputStream(new BufferInput(slice))) {
+                        d.nbt = Nbt.toSnbt(Nbt.readRoot(nbt));
+                    }
+                } else if ((flags & FLAG_NBT_STRING) != 0) {
+                    d.nbt = string(buf, strings);
+                }
+                if ((flags & FLAG_EXTRA) != 0) {
+                    Object extra = readValue(buf, strings, shared, shared.length);
+                    if (!(extra instanceof Map)) {
+                        throw new IOException("extra data of mob " + i + " is not a map");
+                    }
+                    d.extra = copy(extra);
+                }
+                mobs.add(d);
+            }
+            return mobs;
+        } catch (java.nio.BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("truncated " + EXTENSION + " file");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(Object value) {
+        // shared values are reused across mobs; give every mob its own tree
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> e : ((Map<String, Object>) value).entrySet()) {
+                map.put(e.getKey(), copy(e.getValue()));
+            }
+            return (T) map;
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object o : (List<Object>) value) {
+                list.add(copy(o));
+            }
+            return (T) list;
+        }
+        return (T) value;
+    }
+
+    private static Object readValue(ByteBuffer buf, String[] strings, Object[] shared, int limit)
+            throws IOException {
+        byte tag = buf.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case DOUBLE:
+                return buf.getDouble();
+            case INT:
+                return (double) zigzag(varint(buf));
+            case STRING:
+                return string(buf, strings);
+            case SHARED: {
+                int index = count(buf);
+                // shared values only refer to earlier ones
+                if (index >= limit) {
+                    throw new IOException("bad value reference " + index);
+                }
+                return shared[index];
+            }
+            default:
+                throw new IOException("unknown value tag " + tag);
+        }
+    }
+
+    private static String string(ByteBuffer buf, String[] strings) throws IOException {
+        int ref = count(buf);
+        if (ref == 0) {
+            return null;
+        }
+        if (ref > strings.length) {
+            throw new IOException("bad string reference " + ref);
+        }
+        return strings[ref - 1];
+    }
+
+    private static long varint(ByteBuffer buf) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint too long");
+    }
+
+    private static int count(ByteBuffer buf) throws IOException {
+        long n = varint(buf);
+        if (n < 0 || n > buf.capacity()) {
+            throw new IOException("bad length " + n);
+        }
+        return (int) n;
+    }
+
+    private static long zigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Encode the mobs and replace <code>target</code> with them.
+     */
+    public static void write(List<MobData> mobs, File target) throws IOException {
+        Encoder enc = new Encoder();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        enc.varint(out, mobs.size());
+        for (MobData d : mobs) {
+            UUID uuid = null;
+            if (d.uuid != null) {
+                try {
+                    uuid = UUID.fromString(d.uuid);
+                } catch (IllegalArgumentException ignored) {
+                }
+                if (uuid != null && !uuid.toString().equals(d.uuid)) {
+                    uuid = null; // hand-edited, keep the text as it is
+                }
+            }
+            byte[] nbt = d.nbt != null ? binaryNbt(d.nbt) : null;
+            int flags = (uuid != null ? FLAG_UUID : d.uuid != null ? FLAG_UUID_STRING : 0)
+                    | (nbt != null ? FLAG_NBT_BINARY : d.nbt != null ? FLAG_NBT_STRING : 0)
+                    | (d.extra != null ? FLAG_EXTRA : 0);
+            out.writeByte(flags);
+            if (uuid != null) {
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            } else if (d.uuid != null) {
+                enc.string(out, d.uuid);
+            }
+            enc.string(out, d.type);
+            out.writeDouble(d.x);
+            out.writeDouble(d.y);
+            out.writeDouble(d.z);
+            out.writeFloat(d.yaw);
+            out.writeFloat(d.pitch);
+            if (nbt != null) {
+                enc.varint(out, nbt.length);
+                out.write(nbt);
+            } else if (d.nbt != null) {
+                enc.string(out, d.nbt);
+            }
+            if (d.extra != null) {
+                enc.value(out, d.extra);
+            }
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream(body.size() + 4096);
+        DataOutputStream header = new DataOutputStream(file);
+        header.write(MAGIC);
+        header.writeByte(VERSION);
+        enc.varint(header, enc.strings.size());
+        for (String s : enc.strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            enc.varint(header, bytes.length);
+            header.write(bytes);
+        }
+        enc.varint(header, enc.sharedCount);
+        enc.shared.writeTo(header);
+        body.writeTo(header);
+        header.flush();
+
+        Path tmp = target.toPath().resolveSibling(target.getName() + ".tmp");
+        try {
+            Files.write(tmp, file.toByteArray());
+            Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * The NBT as a binary compound, or null if it is not SNBT that prints
+     * back identically (e.g. the JSON maps older saves fell back to).
+     */
+    private static byte[] binaryNbt(String snbt) {
+        try {
+            Map<String, Object> root = Nbt.fromSnbt(snbt);
+            if (!Nbt.toSnbt(root).equals(snbt)) {
+                return null;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                Nbt.writeRoot(out, root);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static final class Encoder {
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> stringIds = new HashMap<>();
+        final ByteArrayOutputStream shared = new ByteArrayOutputStream();
+        // encoded content of a shared value -> its index
+        final Map<String, Integer> sharedIds = new HashMap<>();
+        int sharedCount;
+
+        void varint(DataOutputStream out, long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        void string(DataOutputStream out, String s) throws IOException {
+            if (s == null) {
+                varint(out, 0);
+                return;
+            }
+            Integer id = stringIds.get(s);
+            if (id == null) {
+                strings.add(s);
+                id = strings.size();
+                stringIds.put(s, id);
+            }
+            varint(out, id);
+        }
+
+        void value(DataOutputStream out, Object v) throws IOException {
+            if (v == null) {
+                out.writeByte(NULL);
+            } else if (v instanceof Boolean) {
+                out.writeByte((Boolean) v ? TRUE : FALSE);
+            } else if (v instanceof Number) {
+                double d = ((Number) v).doubleValue();
+                long l = (long) d;
+                if (l == d && Math.abs(l) < (1L << 52) && !(d == 0 && 1 / d < 0)) {
+                    out.writeByte(INT);
+                    varint(out, (l << 1) ^ (l >> 63));
+                } else {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble(d);
+                }
+            } else if (v instanceof String) {
+                out.writeByte(STRING);
+                string(out, (String) v);
+            } else if (v instanceof Map || v instanceof List) {
+                out.writeByte(SHARED);
+                varint(out, share(v));
+            } else {
+                // Gson would have written it as a string as well
+                out.writeByte(STRING);
+                string(out, String.valueOf(v));
+            }
+        }
+
+        private int share(Object v) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (v instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) v;
+                out.writeByte(MAP);
+                varint(out, map.size());
+                for (Map.Entry<?, ?> e : map.entrySet()) {
+                    string(out, String.valueOf(e.getKey()));
+                    value(out, e.getValue());
+                }
+            } else {
+                List<?> list = (List<?>) v;
+                out.writeByte(LIST);
+                varint(out, list.size());
+                for (Object o : list) {
+                    value(out, o);
+                }
+            }
+            out.flush();
+            String key = new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
+            Integer id = sharedIds.get(key);
+            if (id == null) {
+                bytes.writeTo(shared);
+                id = sharedCount++;
+                sharedIds.put(key, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Stream over a buffer slice, for the NBT reader.
+     */
+    private static final class BufferInput extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInput(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal reader/writer for Minecraft's binary NBT, enough to edit region
+ * file chunks without going through the server. Tags map to plain Java
+ * values: compounds are <code>Map&lt;String, Object&gt;</code> (insertion
+ * ordered), lists are {@link TagList}, arrays are <code>byte[]</code>,
+ * <code>int[]</code> and <code>long[]</code>, and numbers keep their boxed
+ * type so that a read/write round trip is lossless.
+ *
+ * <p>Also reads and prints the text form (SNBT) the server produces with
+ * <code>CompoundTag#toString</code>, so saved mob NBT can be stored as binary.
+ */
+public final class Nbt {
+
+    public static final byte END = 0, BYTE = 1, SHORT = 2, INT = 3, LONG = 4, FLOAT = 5, DOUBLE = 6,
+            BYTE_ARRAY = 7, STRING = 8, LIST = 9, COMPOUND = 10, INT_ARRAY = 11, LONG_ARRAY = 12;
+
+    // deeper nesting only comes from corrupt or malicious data
+    private static final int MAX_DEPTH = 512;
+
+    private Nbt() {
+    }
+
+    /**
+     * A list tag; the element type is kept so that empty lists round-trip.
+     */
+    public static final class TagList {
+        public final byte type;
+        public final List<Object> items;
+
+        public TagList(byte type, List<Object> items) {
+            this.type = type;
+            this.items = items;
+        }
+    }
+
+    /**
+     * Read a named root compound (its name is discarded).
+     */
+    public static Map<String, Object> readRoot(DataInput in) throws IOException {
+        byte type = in.readByte();
+        if (type != COMPOUND) {
+            throw new IOException("root tag is not a compound (" + type + ")");
+        }
+        in.readUTF();
+        return readCompound(in, 0);
+    }
+
+    /**
+     * Write a compound as an unnamed root tag.
+     */
+    public static void writeRoot(DataOutput out, Map<String, Object> root) throws IOException {
+        out.writeByte(COMPOUND);
+        out.writeUTF("");
+        writeCompound(out, root);
+    }
+
+    private static Map<String, Object> readCompound(DataInput in, int depth) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (true) {
+            byte type = in.readByte();
+            if (type == END) {
+                return map;
+            }
+            String name = in.readUTF();
+            map.put(name, readPayload(in, type, depth + 1));
+        }
+    }
+
+    private static Object readPayload(DataInput in, byte type, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("NBT nested too deeply");
+        }
+        switch (type) {
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case BYTE_ARRAY: {
+                byte[] a = new byte[checkLength(in.readInt())];
+                in.readFully(a);
+                return a;
+            }
+            case STRING:
+                return in.readUTF();
+            case LIST: {
+                byte elementType = in.readByte();
+                int n = checkLength(in.readInt());
+                List<Object> items = new ArrayList<>(Math.min(n, 1024));
+                for (int i = 0; i < n; i++) {
+                    items.add(readPayload(in, elementType, depth + 1));
+                }
+                return new TagList(elementType, items);
+            }
+            case COMPOUND:
+                return readCompound(in, depth);
+            case INT_ARRAY: {
+                int[] a = new int[checkLength(in.readInt())];
+                for (int i = 0; i < a.length; i++) {
+                    a[i] = in.readInt();
+                }
+                return a;
+            }
+            case LONG_ARRAY: {
+                long[] a = new long[checkLength(in.readInt())];
+                for (int i = 0; i < a.length; i++) {
+                    a[i] = in.readLong();
+                }
+                return a;
+            }
+            default:
+                throw new IOException("unknown NBT tag type " + type);
+        }
+    }
+
+    private static int checkLength(int n) throws IOException {
+        if (n < 0) {
+            throw new IOException("negative NBT length");
+        }
+        return n;
+    }
+
+    private static void writeCompound(DataOutput out, Map<String, Object> map) throws IOException {
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            byte type = typeOf(e.getValue());
+            out.writeByte(type);
+            out.writeUTF(e.getKey());
+            writePayload(out, e.getValue());
+        }
+        out.writeByte(END);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writePayload(DataOutput out, Object value) throws IOException {
+        if (value instanceof Byte) {
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeDouble((Double) value);
+        } else if (value instanceof byte[]) {
+            byte[] a = (byte[]) value;
+            out.writeInt(a.length);
+            out.write(a);
+        } else if (value instanceof String) {
+            out.writeUTF((String) value);
+        } else if (value instanceof TagList) {
+            TagList list = (TagList) value;
+            out.writeByte(list.items.isEmpty() ? list.type : typeOf(list.items.get(0)));
+            out.writeInt(list.items.size());
+            for (Object item : list.items) {
+                writePayload(out, item);
+            }
+        } else if (value instanceof Map) {
+            writeCompound(out, (Map<String, Object>) value);
+        } else if (value instanceof int[]) {
+            int[] a = (int[]) value;
+            out.writeInt(a.length);
+            for (int v : a) {
+                out.writeInt(v);
+            }
+        } else if (value instanceof long[]) {
+            long[] a = (long[]) value;
+            out.writeInt(a.length);
+            for (long v : a) {
+                out.writeLong(v);
+            }
+        } else {
+            throw new IOException("cannot write " + (value == null ? "null" : value.getClass().getName()) + " as NBT");
+        }
+    }
+
+    /**
+     * Parse an SNBT compound such as <code>{Health:20.0f,Tags:["boss"]}</code>.
+     */
+    public static Map<String, Object> fromSnbt(String text) throws IOException {
+        SnbtReader reader = new SnbtReader(text);
+        reader.skipSpace();
+        if (!reader.peek('{')) {
+            throw new IOException("SNBT is not a compound");
+        }
+        Object value = reader.readValue(0);
+        reader.skipSpace();
+        if (reader.pos != text.length()) {
+            throw new IOException("trailing data at " + reader.pos);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) value;
+        return map;
+    }
+
+    /**
+     * Print a compound the way the server does (no spaces, number suffixes,
+     * keys quoted only when needed).
+     */
+    public static String toSnbt(Map<String, Object> root) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        printSnbt(sb, root);
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printSnbt(StringBuilder sb, Object value) throws IOException {
+        if (value instanceof Byte) {
+            sb.append(value).append('b');
+        } else if (value instanceof Short) {
+            sb.append(value).append('s');
+        } else if (value instanceof Integer) {
+            sb.append(value);
+        } else if (value instanceof Long) {
+            sb.append(value).append('L');
+        } else if (value instanceof Float) {
+            sb.append(value).append('f');
+        } else if (value instanceof Double) {
+            sb.append(value).append('d');
+        } else if (value instanceof String) {
+            quote(sb, (String) value);
+        } else if (value instanceof byte[]) {
+            sb.append("[B;");
+            byte[] a = (byte[]) value;
+            for (int i = 0; i < a.length; i++) {
+                sb.append(i > 0 ? "," : "").append(a[i]).append('B');
+            }
+            sb.append(']');
+        } else if (value instanceof int[]) {
+            sb.append("[I;");
+            int[] a = (int[]) value;
+            for (int i = 0; i < a.length; i++) {
+                sb.append(i > 0 ? "," : "").append(a[i]);
+            }
+            sb.append(']');
+        } else if (value instanceof long[]) {
+            sb.append("[L;");
+            long[] a = (long[]) value;
+            for (int i = 0; i < a.length; i++) {
+                sb.append(i > 0 ? "," : "").append(a[i]).append('L');
+            }
+            sb.append(']');
+        } else if (value instanceof TagList) {
+            sb.append('[');
+            List<Object> items = ((TagList) value).items;
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                printSnbt(sb, items.get(i));
+            }
+            sb.append(']');
+        } else if (value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> e : ((Map<String, Object>) value).entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                if (e.getKey().matches("[A-Za-z0-9._+-]+")) {
+                    sb.append(e.getKey());
+                } else {
+                    quote(sb, e.getKey());
+                }
+                sb.append(':');
+                printSnbt(sb, e.getValue());
+            }
+            sb.append('}');
+        } else {
+            throw new IOException("cannot print " + (value == null ? "null" : value.getClass().getName()) + " as SNBT");
+        }
+    }
+
+    // same quote choice as the server: double quotes unless the string holds
+    // a double quote before any single quote
+    private static void quote(StringBuilder sb, String s) {
+        StringBuilder body = new StringBuilder();
+        char q = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                body.append('\\');
+            } else if (c == '"' || c == '\'') {
+                if (q == 0) {
+                    q = c == '"' ? '\'' : '"';
+                }
+                if (q == c) {
+                    body.append('\\');
+                }
+            }
+            body.append(c);
+        }
+        if (q == 0) {
+            q = '"';
+        }
+        sb.append(q).append(body).append(q);
+    }
+
+    private static final class SnbtReader {
+        private static final java.util.regex.Pattern NUMBER = java.util.regex.Pattern.compile(
+                "([-+]?(?:[0-9]+\\.?|[0-9]*\\.[0-9]+)(?:e[-+]?[0-9]+)?)([bslfd]?)",
+                java.util.regex.Pattern.CASE_INSENSITIVE);
+        private static final java.util.regex.Pattern INTEGER = java.util.regex.Pattern.compile("[-+]?(?:0|[1-9][0-9]*)");
+
+        private final String text;
+        private int pos;
+
+        SnbtReader(String text) {
+            this.text = text;
+        }
+
+        boolean peek(char c) {
+            return pos < text.length() && text.charAt(pos) == c;
+        }
+
+        void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        void expect(char c) throws IOException {
+            skipSpace();
+            if (!peek(c)) {
+                throw new IOException("expected '" + c + "' at " + pos);
+            }
+            pos++;
+        }
+
+        Object readValue(int depth) throws IOException {
+            if (depth > MAX_DEPTH) {
+                throw new IOException("SNBT nested too deeply");
+            }
+            skipSpace();
+            if (peek('{')) {
+                pos++;
+                Map<String, Object> map = new LinkedHashMap<>();
+                skipSpace();
+                if (peek('}')) {
+                    pos++;
+                    return map;
+                }
+                while (true) {
+                    skipSpace();
+                    String key = peek('"') || peek('\'') ? readQuoted() : readToken();
+                    if (key.isEmpty()) {
+                        throw new IOException("expected key at " + pos);
+                    }
+                    expect(':');
+                    map.put(key, readValue(depth + 1));
+                    skipSpace();
+                    if (peek(',')) {
+                        pos++;
+                    } else {
+                        expect('}');
+                        return map;
+                    }
+                }
+            }
+            if (peek('[')) {
+                pos++;
+                if (pos + 1 < text.length() && text.charAt(pos + 1) == ';') {
+                    char kind = text.charAt(pos);
+                    pos += 2;
+                    return readArray(kind);
+                }
+                List<Object> items = new ArrayList<>();
+                byte type = END;
+                skipSpace();
+                if (peek(']')) {
+                    pos++;
+                    return new TagList(type, items);
+                }
+                while (true) {
+                    Object item = readValue(depth + 1);
+                    byte itemType = typeOf(item);
+                    if (type != END && itemType != type) {
+                        throw new IOException("mixed list at " + pos);
+                    }
+                    type = itemType;
+                    items.add(item);
+                    skipSpace();
+                    if (peek(',')) {
+                        pos++;
+                    } else {
+                        expect(']');
+                        return new TagList(type, items);
+                    }
+                }
+            }
+            if (peek('"') || peek('\'')) {
+                return readQuoted();
+            }
+            String token = readToken();
+            if (token.isEmpty()) {
+                throw new IOException("expected value at " + pos);
+            }
+            return scalar(token);
+        }
+
+        private Object readArray(char kind) throws IOException {
+            List<Object> values = new ArrayList<>();
+            skipSpace();
+            if (peek(']')) {
+                pos++;
+            } else {
+                while (true) {
+                    skipSpace();
+                    values.add(scalar(readToken()));
+                    skipSpace();
+                    if (peek(',')) {
+                        pos++;
+                    } else {
+                        expect(']');
+                        break;
+                    }
+                }
+            }
+            switch (Character.toUpperCase(kind)) {
+                case 'B': {
+                    byte[] a = new byte[values.size()];
+                    for (int i = 0; i < a.length; i++) {
+                        a[i] = ((Number) values.get(i)).byteValue();
+                    }
+                    return a;
+                }
+                case 'I': {
+                    int[] a = new int[values.size()];
+                    for (int i = 0; i < a.length; i++) {
+                        a[i] = ((Number) values.get(i)).intValue();
+                    }
+                    return a;
+                }
+                case 'L': {
+                    long[] a = new long[values.size()];
+                    for (int i = 0; i < a.length; i++) {
+                        a[i] = ((Number) values.get(i)).longValue();
+                    }
+                    return a;
+                }
+                default:
+                    throw new IOException("unknown array type " + kind);
+            }
+        }
+
+        private String readToken() {
+            int start = pos;
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (!(Character.isLetterOrDigit(c) || c == '.' || c == '_' || c == '+' || c == '-')) {
+                    break;
+                }
+                pos++;
+            }
+            return text.substring(start, pos);
+        }
+
+        private String readQuoted() throws IOException {
+            char q = text.charAt(pos++);
+            StringBuilder sb = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '\\') {
+                    if (pos >= text.length()) {
+                        break;
+                    }
+                    sb.append(text.charAt(pos++));
+                } else if (c == q) {
+                    return sb.toString();
+                } else {
+                    sb.append(c);
+                }
+            }
+            throw new IOException("unterminated string");
+        }
+
+        private static Object scalar(String token) {
+            if (token.equalsIgnoreCase("true")) {
+                return (byte) 1;
+            }
+            if (token.equalsIgnoreCase("false")) {
+                return (byte) 0;
+            }
+            java.util.regex.Matcher m = NUMBER.matcher(token);
+            if (m.matches()) {
+                String n = m.group(1);
+                String suffix = m.group(2).toLowerCase(java.util.Locale.ROOT);
+                try {
+                    switch (suffix) {
+                        case "b":
+                            return Byte.parseByte(n);
+                        case "s":
+                            return Short.parseShort(n);
+                        case "l":
+                            return Long.parseLong(n);
+                        case "f":
+                            return Float.parseFloat(n);
+                        case "d":
+                            return Double.parseDouble(n);
+                        default:
+                            return INTEGER.matcher(n).matches() ? (Object) Integer.parseInt(n)
+                                    : (Object) Double.parseDouble(n);
+                    }
+                } catch (NumberFormatException e) {
+                    // out of range: the server reads it as a string too
+                }
+            }
+            return token;
+        }
+    }
+
+    private static byte typeOf(Object value) throws IOException {
+        if (value instanceof Byte) {
+            return BYTE;
+        } else if (value instanceof Short) {
+            return SHORT;
+        } else if (value instanceof Integer) {
+            return INT;
+        } else if (value instanceof Long) {
+            return LONG;
+        } else if (value instanceof Float) {
+            return FLOAT;
+        } else if (value instanceof Double) {
+            return DOUBLE;
+        } else if (value instanceof byte[]) {
+            return BYTE_ARRAY;
+        } else if (value instanceof String) {
+            return STRING;
+        } else if (value instanceof TagList) {
+            return LIST;
+        } else if (value instanceof Map) {
+            return COMPOUND;
+        } else if (value instanceof int[]) {
+            return INT_ARRAY;
+        } else if (value instanceof long[]) {
+            return LONG_ARRAY;
+        }
+        throw new IOException("cannot write " + (value == null ? "null" : value.getClass().getName()) + " as NBT");
+    }
+}
@@ -164,7 +164,11 @@ public class PartyManager {
 
         // If requested, teleport the player back when leaving while in an instance
         if (teleportBack) {
-            if (player.getWorld() != null && player.getWorld().getName().startsWith("instance_")) {
+            if (isInInstance(player)) {
+                DungeonInstances.getInstance().getDungeonManager().getHibernationManager()
+                        .markLeaving(player.getUniqueId());
+                // gives up their host slot, which is released once nobody is left in it
+                DungeonInstances.getInstance().getDungeonManager().getHostManager().leave(player);
                 String prev = previousWorlds.remove(player.getUniqueId());
                 if (prev != null && Bukkit.getWorld(prev) != null) {
                     player.teleport(Bukkit.getWorld(prev).getSpawnLocation());
@@ -228,7 +232,11 @@ public class PartyManager {
 
         // If the kicked player is in an instance, teleport them back to previous world
         if (kicked != null && kicked.isOnline()) {
-            if (kicked.getWorld() != null && kicked.getWorld().getName().startsWith("instance_")) {
+            if (isInInstance(kicked)) {
+                DungeonInstances.getInstance().getDungeonManager().getHibernationManager()
+                        .markLeaving(kicked.getUniqueId());
+                // gives up their host slot, which is released once nobody is left in it
+                DungeonInstances.getInstance().getDungeonManager().getHostManager().leave(kicked);
                 String prev = previousWorlds.remove(memberId);
                 if (prev != null && Bukkit.getWorld(prev) != null) {
                     kicked.teleport(Bukkit.getWorld(prev).getSpawnLocation());
@@ -269,7 +277,11 @@ public class PartyManager {
             // Bukkit.getOfflinePlayer(memberId).getName();
             if (member != null && member.isOnline()) {
                 // if in instance, teleport back
-                if (member.getWorld() != null && member.getWorld().getName().startsWith("instance_")) {
+                if (isInInstance(member)) {
+                    DungeonInstances.getInstance().getDungeonManager().getHibernationManager()
+                            .markLeaving(member.getUniqueId());
+                    // gives up their host slot, which is released once nobody is left in it
+                    DungeonInstances.getInstance().getDungeonManager().getHostManager().leave(member);
                     String prev = previousWorlds.remove(memberId);
                     if (prev != null && Bukkit.getWorld(prev) != null) {
                         member.teleport(Bukkit.getWorld(prev).getSpawnLocation());
@@ -332,6 +344,18 @@ public class PartyManager {
         }
     }
 
+    // in an instance world, or inside a run's slot of a shared host world
+    private static boolean isInInstance(Player player) {
+        if (player.getWorld() == null) {
+            return false;
+        }
+        DungeonManager dungeonManager = DungeonInstances.getInstance().getDungeonManager();
+        if (HostWorldManager.isHostWorld(player.getWorld().getName())) {
+            return dungeonManager.getHostManager().getSlotAt(player.getLocation()) != null;
+        }
+        return dungeonManager.getDungeonInstance(player.getWorld()) != null;
+    }
+
     public static class Party {
         private final String name;
         private final UUID leader;
@@ -0,0 +1,321 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.EntityType;
+import org.bukkit.inventory.ItemStack;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.MobData;
+
+/**
+ * The saved mobs of a template in the form spawning needs them: entity types
+ * resolved, NBT strings parsed into server compounds, equipment deserialized
+ * into item stacks. Compiled once off the main thread from
+ * <code>mobSpawns/&lt;template&gt;.json</code> and shared by every instance
+ * of the template; {@link DungeonManager#getSpawnPlan} recompiles it when the
+ * file's SHA-256 changes.
+ *
+ * <p>Plans are immutable. Parsed compounds and item stacks are copied for
+ * each spawn, since the server may modify what it is given.
+ */
+public final class SpawnPlan {
+
+    private static final Gson GSON = new Gson();
+    private static final String[] EQUIPMENT_SLOTS = { "helmet", "chestplate", "leggings", "boots",
+            "itemInMainHand", "itemInOffHand" };
+
+    private final String hash;
+    private final long fileSize;
+    private final long fileModified;
+    private final List<Entry> entries;
+    // plans shifted by a host slot offset, built on first use
+    private final Map<String, SpawnPlan> translated = new java.util.concurrent.ConcurrentHashMap<>();
+    // entries sorted by distance from the last origin asked for
+    private volatile Ordering ordering;
+    // entries by packed chunk key (see BakedTemplate#chunkKey), built on first use
+    private volatile Map<Long, List<Entry>> byChunk;
+
+    private static final class Ordering {
+        final double x, y, z;
+        final List<Entry> entries;
+
+        Ordering(double x, double y, double z, List<Entry> entries) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * One mob, ready to spawn.
+     */
+    public static final class Entry {
+        // position in the plan, stable for a given file
+        final int index;
+        final MobData source;
+        final EntityType type;
+        final UUID uuid;
+        // server compound, or null when the NBT could not be parsed as such
+        final Object nbtTag;
+        // legacy JSON map stored in the nbt field by old saves
+        final Map<String, Object> nbtMap;
+        // extra data minus the equipment, which is kept deserialized below
+        final Map<String, Object> extra;
+        final Map<String, ItemStack> equipment;
+
+        Entry(int index, MobData source, EntityType type, UUID uuid, Object nbtTag, Map<String, Object> nbtMap,
+                Map<String, Object> extra, Map<String, ItemStack> equipment) {
+            this.index = index;
+            this.source = source;
+            this.type = type;
+            this.uuid = uuid;
+            this.nbtTag = nbtTag;
+            this.nbtMap = nbtMap;
+            this.extra = extra;
+            this.equipment = equipment;
+        }
+
+        public MobData getSource() {
+            return source;
+        }
+
+        public EntityType getType() {
+            return type;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Packed key of the chunk the mob stands in.
+         */
+        public long getChunkKey() {
+            return BakedTemplate.chunkKey((int) Math.floor(source.x) >> 4, (int) Math.floor(source.z) >> 4);
+        }
+    }
+
+    private SpawnPlan(String hash, long fileSize, long fileModified, List<Entry> entries) {
+        this.hash = hash;
+        this.fileSize = fileSize;
+        this.fileModified = fileModified;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Compile a plan from parsed mob data. <code>hash</code>, size and
+     * modification time describe the source file (empty/0 when there is none).
+     */
+    public static SpawnPlan compile(List<MobData> mobs, String hash, long fileSize, long fileModified) {
+        List<Entry> entries = new ArrayList<>(mobs.size());
+        for (MobData d : mobs) {
+            Entry entry = compileEntry(entries.size(), d);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return new SpawnPlan(hash, fileSize, fileModified, entries);
+    }
+
+    /**
+     * Plan for mob data that does not come from a file.
+     */
+    public static SpawnPlan compile(List<MobData> mobs) {
+        return compile(mobs, "", 0L, 0L);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Entry compileEntry(int index, MobData d) {
+        EntityType type;
+        try {
+            type = EntityType.valueOf(d.type);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            Bukkit.getLogger().warning("Unknown mob type in saved mobs: " + d.type);
+            return null;
+        }
+        UUID uuid = null;
+        if (d.uuid != null) {
+            try {
+                uuid = UUID.fromString(d.uuid);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        Object tag = null;
+        Map<String, Object> nbtMap = null;
+        if (d.nbt != null) {
+            tag = parseTag(d.nbt);
+            if (tag == null) {
+                try {
+                    nbtMap = GSON.fromJson(d.nbt, new TypeToken<Map<String, Object>>() {
+                    }.getType());
+                } catch (RuntimeException e) {
+                    Bukkit.getLogger().warning("Unreadable NBT for saved " + d.type + ": " + e.getMessage());
+                }
+            }
+        }
+        Map<String, Object> extra = null;
+        Map<String, ItemStack> equipment = null;
+        if (d.extra != null && !d.extra.isEmpty()) {
+            extra = new LinkedHashMap<>(d.extra);
+            Object eq = extra.remove("Equipment");
+            if (eq instanceof Map) {
+                equipment = new LinkedHashMap<>();
+                for (String slot : EQUIPMENT_SLOTS) {
+                    Object item = ((Map<?, ?>) eq).get(slot);
+                    if (item instanceof Map) {
+                        try {
+                            equipment.put(slot, ItemStack.deserialize((Map) item));
+                        } catch (RuntimeException e) {
+                            Bukkit.getLogger().warning("Failed to read " + slot + " of saved " + d.type + ": "
+                                    + e.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+        return new Entry(index, d, type, uuid, tag, nbtMap, extra, equipment);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * The entries nearest to the given point first (e.g. the spawn point, so
+     * the first rooms fill up first). The order is kept for the next caller
+     * using the same point.
+     */
+    public List<Entry> nearestFirst(double x, double y, double z) {
+        Ordering o = ordering;
+        if (o != null && o.x == x && o.y == y && o.z == z) {
+            return o.entries;
+        }
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(java.util.Comparator.comparingDouble(e -> {
+            double dx = e.source.x - x, dy = e.source.y - y, dz = e.source.z - z;
+            return dx * dx + dy * dy + dz * dz;
+        }));
+        List<Entry> result = Collections.unmodifiableList(sorted);
+        ordering = new Ordering(x, y, z, result);
+        return result;
+    }
+
+    /**
+     * The entries grouped by the chunk they stand in, in plan order.
+     */
+    public Map<Long, List<Entry>> byChunk() {
+        Map<Long, List<Entry>> map = byChunk;
+        if (map == null) {
+            Map<Long, List<Entry>> grouped = new java.util.HashMap<>();
+            for (Entry e : entries) {
+                grouped.computeIfAbsent(e.getChunkKey(), k -> new ArrayList<>()).add(e);
+            }
+            grouped.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            map = Collections.unmodifiableMap(grouped);
+            byChunk = map;
+        }
+        return map;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * True if the source file still has the size and modification time it
+     * had when the plan was compiled (cheap check before hashing it again).
+     */
+    public boolean matches(long size, long modified) {
+        return size == fileSize && modified == fileModified;
+    }
+
+    /**
+     * Same plan for a source file whose content did not change but whose
+     * timestamp did.
+     */
+    SpawnPlan withFileStat(long size, long modified) {
+        return new SpawnPlan(hash, size, modified, entries);
+    }
+
+    /**
+     * The plan with every mob passed through <code>op</code> (e.g. moved to
+     * a host slot), compiled once per <code>key</code>.
+     */
+    public SpawnPlan translated(String key, UnaryOperator<MobData> op) {
+        return translated.computeIfAbsent(key, k -> {
+            List<MobData> mobs = new ArrayList<>(entries.size());
+            for (Entry e : entries) {
+                mobs.add(op.apply(e.source));
+            }
+            return compile(mobs, hash, fileSize, fileModified);
+        });
+    }
+
+    // server NBT access, resolved once
+    private static volatile boolean nbtResolved;
+    private static Method parseMethod;
+    private static Method copyMethod;
+    private static Class<?> nbtClass;
+
+    private static synchronized void resolveNbt() {
+        if (nbtResolved) {
+            return;
+        }
+        try {
+            nbtClass = Class.forName("net.minecraft.nbt.NBTTagCompound");
+            parseMethod = Class.forName("net.minecraft.nbt.MojangsonParser").getMethod("parse", String.class);
+            try {
+                copyMethod = nbtClass.getMethod("copy");
+            } catch (NoSuchMethodException e) {
+                copyMethod = null;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            parseMethod = null;
+        }
+        nbtResolved = true;
+    }
+
+    private static Object parseTag(String nbt) {
+        resolveNbt();
+        if (parseMethod == null) {
+            return null;
+        }
+        try {
+            return parseMethod.invoke(null, nbt);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Load a compiled compound into the entity. Returns false if the server
+     * does not expose the method.
+     */
+    static boolean loadTag(org.bukkit.entity.Entity entity, Object tag) {
+        resolveNbt();
+        try {
+            Object copy = copyMethod != null ? copyMethod.invoke(tag) : tag;
+            Object handle = entity.getClass().getMethod("getHandle").invoke(entity);
+            handle.getClass().getMethod("load", nbtClass).invoke(handle, copy);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+}
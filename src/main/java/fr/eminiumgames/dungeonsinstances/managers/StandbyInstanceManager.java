@@ -0,0 +1,254 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.Difficulty;
+
+/**
+ * Optional hot-standby mode: keeps fully loaded, mob-populated instance
+ * worlds per template and difficulty so that a party can be handed one
+ * immediately. Standby worlds sit with AI disabled until claimed.
+ *
+ * <p>The number of worlds kept for each template/difficulty follows the
+ * observed launch rate: every minute an exponentially weighted average of
+ * launches (time constant of about an hour) is updated and multiplied by
+ * <code>standby.lead-minutes</code>. Only launches that found no standby
+ * world count, so standby worlds do not keep their own demand alive, and
+ * nothing is kept below <code>standby.min-launches-per-hour</code>. Standby
+ * worlds are evicted, and none are built, while the server is above
+ * <code>standby.max-mspt</code> or below
+ * <code>standby.min-free-memory-percent</code>.
+ *
+ * <p>Standby worlds are populated eagerly: every chunk holding a saved mob
+ * is loaded and pinned until the world is claimed, whatever
+ * <code>spawning.lazy-chunks</code> says.
+ *
+ * <p>All methods run on the main thread.
+ */
+public class StandbyInstanceManager {
+
+    // per-minute smoothing factor giving a ~60 minute time constant
+    private static final double RATE_ALPHA = 1.0 - Math.exp(-1.0 / 60.0);
+
+    private final DungeonManager dungeonManager;
+    private final Map<String, Deque<World>> standby = new HashMap<>();
+    // launches seen during the current minute and the smoothed rate per minute
+    private final Map<String, Integer> launchesThisMinute = new HashMap<>();
+    private final Map<String, Double> launchRate = new HashMap<>();
+    private boolean building;
+    private BukkitTask maintenanceTask;
+    private BukkitTask rateTask;
+
+    public StandbyInstanceManager(DungeonManager dungeonManager) {
+        this.dungeonManager = dungeonManager;
+    }
+
+    private static String key(String templateName, Difficulty difficulty) {
+        return templateName + ":" + difficulty.name();
+    }
+
+    public boolean isEnabled() {
+        return DungeonInstances.getInstance().getConfig().getBoolean("standby.enabled", false);
+    }
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        rateTask = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), this::updateRates,
+                1200L, 1200L); // every minute
+        maintenanceTask = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), this::maintain,
+                200L, 200L); // every 10 seconds
+    }
+
+    public void stop() {
+        if (rateTask != null) {
+            rateTask.cancel();
+        }
+        if (maintenanceTask != null) {
+            maintenanceTask.cancel();
+        }
+    }
+
+    /**
+     * Hand out a ready standby world for the template/difficulty, or null.
+     * Calls that find none count as a launch for the demand estimate.
+     */
+    public World claim(String templateName, Difficulty difficulty) {
+        String key = key(templateName, difficulty);
+        if (!isEnabled()) {
+            return null;
+        }
+        Deque<World> worlds = standby.get(key);
+        while (worlds != null && !worlds.isEmpty()) {
+            World world = worlds.poll();
+            if (Bukkit.getWorld(world.getUID()) == null) {
+                continue; // purged meanwhile
+            }
+            dungeonManager.releasePinnedChunks(world.getName());
+            dungeonManager.setAIForWorld(world, true);
+            dungeonManager.getRegistry().setState(world, DungeonInstance.State.ACTIVE);
+            Bukkit.getLogger().info("Claimed standby instance " + world.getName() + " for " + key);
+            return world;
+        }
+        launchesThisMinute.merge(key, 1, Integer::sum);
+        return null;
+    }
+
+    /**
+     * Drop an unloaded world from the standby lists.
+     */
+    public void forget(String worldName) {
+        for (Deque<World> worlds : standby.values()) {
+            worlds.removeIf(w -> w.getName().equals(worldName));
+        }
+    }
+
+    public boolean isStandby(String worldName) {
+        for (Deque<World> worlds : standby.values()) {
+            for (World w : worlds) {
+                if (w.getName().equals(worldName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Accept an already populated world into the standby pool (used when a
+     * world can be recycled). Returns false if that key is already full.
+     */
+    public boolean offer(String templateName, Difficulty difficulty, World world) {
+        String key = key(templateName, difficulty);
+        if (!isEnabled() || overloaded() || count(key) >= targetSize(key)) {
+            return false;
+        }
+        dungeonManager.setAIForWorld(world, false);
+        dungeonManager.getRegistry().setState(world, DungeonInstance.State.STANDBY);
+        standby.computeIfAbsent(key, k -> new ArrayDeque<>()).add(world);
+        return true;
+    }
+
+    private void updateRates() {
+        java.util.Set<String> keys = new java.util.HashSet<>(launchRate.keySet());
+        keys.addAll(launchesThisMinute.keySet());
+        for (String key : keys) {
+            int launches = launchesThisMinute.getOrDefault(key, 0);
+            double rate = launchRate.getOrDefault(key, 0.0);
+            launchRate.put(key, rate + RATE_ALPHA * (launches - rate));
+        }
+        launchesThisMinute.clear();
+    }
+
+    private int targetSize(String key) {
+        FileConfiguration config = DungeonInstances.getInstance().getConfig();
+        double lead = config.getDouble("standby.lead-minutes", 5.0);
+        int max = config.getInt("standby.max-per-template", 2);
+        double rate = launchRate.getOrDefault(key, 0.0);
+        if (rate * 60.0 < config.getDouble("standby.min-launches-per-hour", 4.0)) {
+            return 0;
+        }
+        int wanted = (int) Math.ceil(rate * lead - 0.05);
+        return Math.max(0, Math.min(max, wanted));
+    }
+
+    private int count(String key) {
+        Deque<World> worlds = standby.get(key);
+        return worlds == null ? 0 : worlds.size();
+    }
+
+    private int total() {
+        int n = 0;
+        for (Deque<World> worlds : standby.values()) {
+            n += worlds.size();
+        }
+        return n;
+    }
+
+    private boolean overloaded() {
+        FileConfiguration config = DungeonInstances.getInstance().getConfig();
+        TickMonitor monitor = DungeonInstances.getInstance().getTickMonitor();
+        double maxMspt = config.getDouble("standby.max-mspt", 45.0);
+        double minFree = config.getDouble("standby.min-free-memory-percent", 15.0) / 100.0;
+        return (monitor != null && monitor.isAbove(maxMspt)) || TickMonitor.freeMemoryRatio() < minFree;
+    }
+
+    /**
+     * Evict under pressure or when demand dropped, otherwise build at most
+     * one missing standby world at a time.
+     */
+    private void maintain() {
+        if (overloaded()) {
+            evictOne(null);
+            return;
+        }
+        for (String key : standby.keySet()) {
+            if (count(key) > targetSize(key)) {
+                evictOne(key);
+                return;
+            }
+        }
+        int maxTotal = DungeonInstances.getInstance().getConfig().getInt("standby.max-total", 6);
+        if (building || total() >= maxTotal) {
+            return;
+        }
+        for (String key : launchRate.keySet()) {
+            if (count(key) < targetSize(key)) {
+                build(key);
+                return;
+            }
+        }
+    }
+
+    private void evictOne(String onlyKey) {
+        for (Map.Entry<String, Deque<World>> entry : standby.entrySet()) {
+            if (onlyKey != null && !onlyKey.equals(entry.getKey())) {
+                continue;
+            }
+            Iterator<World> it = entry.getValue().iterator();
+            if (it.hasNext()) {
+                World world = it.next();
+                it.remove();
+                Bukkit.getLogger().info("Evicting standby instance " + world.getName());
+                dungeonManager.unloadDungeonInstance(world.getName());
+                return;
+            }
+        }
+    }
+
+    private void build(String key) {
+        int sep = key.lastIndexOf(':');
+        String templateName = key.substring(0, sep);
+        Difficulty difficulty = Difficulty.valueOf(key.substring(sep + 1));
+        String name = "instance_" + templateName + "_" + UUID.randomUUID();
+        building = true;
+        dungeonManager.buildInstanceAsync(templateName, name, difficulty, true)
+                .thenApply(world -> {
+                    // completes on the main thread; not a running instance
+                    dungeonManager.getRegistry().setState(world, DungeonInstance.State.STANDBY);
+                    return world;
+                })
+                .thenCompose(world -> dungeonManager.getMobsReady(world.getName()).thenApply(v -> world))
+                .whenComplete((world, ex) -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), () -> {
+                    building = false;
+                    if (ex != null || world == null || Bukkit.getWorld(world.getUID()) == null) {
+                        return;
+                    }
+                    dungeonManager.setAIForWorld(world, false);
+                    standby.computeIfAbsent(key, k -> new ArrayDeque<>()).add(world);
+                    Bukkit.getLogger().info("Standby instance " + name + " ready for " + key);
+                }));
+    }
+}
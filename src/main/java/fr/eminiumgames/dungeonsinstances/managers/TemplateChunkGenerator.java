@@ -0,0 +1,130 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.generator.BiomeProvider;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.generator.ChunkGenerator;
+import org.bukkit.generator.WorldInfo;
+
+/**
+ * Generator for instances created in <code>generator</code> mode: every
+ * chunk is filled from the {@link BakedTemplate} of the template instead of
+ * being copied on disk. Chunks outside the bake are left empty (air) and no
+ * vanilla terrain, caves, decorations, structures or mobs are generated.
+ *
+ * <p>Only the chunks players actually load get materialized in the instance
+ * folder. Block entity contents are not part of chunk generation; they are
+ * written by {@link DungeonManager#applyGeneratedBlockEntities} once the new
+ * chunk is loaded.
+ */
+public class TemplateChunkGenerator extends ChunkGenerator {
+
+    private final BakedTemplate baked;
+    private final DungeonManager.SpawnPoint spawn;
+
+    public TemplateChunkGenerator(BakedTemplate baked, DungeonManager.SpawnPoint spawn) {
+        this.baked = baked;
+        this.spawn = spawn;
+    }
+
+    @Override
+    public void generateNoise(WorldInfo worldInfo, Random random, int chunkX, int chunkZ, ChunkData chunkData) {
+        BakedTemplate.Chunk chunk = baked.decode(chunkX, chunkZ);
+        if (chunk == null) {
+            return;
+        }
+        int minHeight = chunkData.getMinHeight();
+        int maxHeight = chunkData.getMaxHeight();
+        for (int s = 0; s < chunk.getSectionCount(); s++) {
+            int baseY = chunk.getMinY() + (s << 4);
+            if (baseY < minHeight || baseY + 16 > maxHeight) {
+                continue; // template was baked with a different height range
+            }
+            BlockData uniform = chunk.getUniform(s);
+            if (uniform != null) {
+                if (!uniform.getMaterial().isAir()) {
+                    chunkData.setRegion(0, baseY, 0, 16, baseY + 16, 16, uniform);
+                }
+                continue;
+            }
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        BlockData data = chunk.getBlock(s, x, y, z);
+                        if (!data.getMaterial().isAir()) {
+                            chunkData.setBlock(x, baseY + y, z, data);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public BiomeProvider getDefaultBiomeProvider(WorldInfo worldInfo) {
+        return new BiomeProvider() {
+            @Override
+            public Biome getBiome(WorldInfo info, int x, int y, int z) {
+                Biome biome = baked.getBiome(x >> 4, z >> 4);
+                return biome != null ? biome : Biome.PLAINS;
+            }
+
+            @Override
+            public List<Biome> getBiomes(WorldInfo info) {
+                List<Biome> biomes = new java.util.ArrayList<>(baked.getBiomes());
+                if (!biomes.contains(Biome.PLAINS)) {
+                    biomes.add(Biome.PLAINS);
+                }
+                return biomes;
+            }
+        };
+    }
+
+    @Override
+    public Location getFixedSpawnLocation(World world, Random random) {
+        // skip the vanilla spawn search, the dungeon spawn point is used anyway
+        return spawn != null ? spawn.toLocation(world) : new Location(world, 0.5, 64, 0.5);
+    }
+
+    @Override
+    public List<BlockPopulator> getDefaultPopulators(World world) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean shouldGenerateNoise() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateSurface() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateCaves() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateDecorations() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateMobs() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateStructures() {
+        return false;
+    }
+}
@@ -0,0 +1,251 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.bukkit.Bukkit;
+
+/**
+ * Clones template world folders into instance folders. Depending on what the
+ * filesystem supports we either ask it for a copy-on-write clone (reflink) or
+ * fall back to a plain byte copy.
+ *
+ * <p>Hard links are not offered: the server opens region files read-write and
+ * writes them in place, so an instance sharing them would write into the
+ * template, and breaking every link before the world loads is a full copy.
+ */
+public class TemplateCloner {
+
+    public enum Strategy {
+        REFLINK, COPY
+    }
+
+    // sub folders whose .mca files are only rewritten when a chunk is saved
+    private static final String[] REGION_FOLDERS = { "region", "entities", "poi" };
+
+    private final Strategy strategy;
+
+    /**
+     * @param configured value of <code>clone.strategy</code> (auto, reflink or
+     *                   copy)
+     * @param probeDir   directory on the same filesystem as the instances, used
+     *                   to test what the filesystem supports
+     */
+    public TemplateCloner(String configured, File probeDir) {
+        this.strategy = resolve(configured, probeDir);
+        Bukkit.getLogger().info("[DungeonInstances] template clone strategy: " + strategy);
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Clone <code>source</code> into <code>target</code>. The clone never
+     * shares data with the source once written.
+     *
+     * @param filter optional filter on paths relative to the source; only
+     *               accepted files and folders are cloned (null = all)
+     */
+    public void cloneFolder(Path source, Path target, Predicate<Path> filter) throws IOException {
+        if (strategy == Strategy.REFLINK) {
+            if (filter == null ? reflinkTree(source, target) : reflinkFiles(source, target, filter)) {
+                Files.deleteIfExists(target.resolve("session.lock"));
+                return;
+            }
+            // reflink can still fail for individual trees (other mount, quota);
+            // wipe the partial result and copy normally
+            Bukkit.getLogger().warning("Reflink clone of " + source + " failed; falling back to a full copy.");
+            deleteTree(target);
+        }
+        copyTree(source, target, filter);
+    }
+
+    /**
+     * Plain recursive copy, skipping session.lock and unreadable files. This is
+     * the historical behaviour of DungeonManager.copyFolder.
+     */
+    public static void copyTree(Path source, Path target) throws IOException {
+        copyTree(source, target, null);
+    }
+
+    /**
+     * Same as {@link #copyTree(Path, Path)} but only copies the paths
+     * (relative to <code>source</code>) accepted by the filter.
+     */
+    public static void copyTree(Path source, Path target, Predicate<Path> filter) throws IOException {
+        try (Stream<Path> walk = Files.walk(source)) {
+            walk.filter(path -> accepted(source, path, filter)).forEach(path -> {
+                try {
+                    Path targetPath = target.resolve(source.relativize(path));
+                    if (Files.isDirectory(path)) {
+                        Files.createDirectories(targetPath);
+                    } else {
+                        // Skip locked files like session.lock or inaccessible files
+                        if (path.getFileName().toString().equals("session.lock")) {
+                            return;
+                        }
+                        Files.copy(path, targetPath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } catch (AccessDeniedException e) {
+                    Bukkit.getLogger().warning("Access denied to file: " + path + ". Skipping...");
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to copy folder: " + path + ". Error: " + e.getMessage(), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * True if the relative path points at a region file (region/, entities/
+     * or poi/) which the server only touches when a chunk is saved.
+     */
+    public static boolean isRegionFile(Path relative) {
+        if (relative.getNameCount() < 2 || !relative.getFileName().toString().endsWith(".mca")) {
+            return false;
+        }
+        String folder = relative.getName(relative.getNameCount() - 2).toString();
+        for (String f : REGION_FOLDERS) {
+            if (f.equals(folder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean accepted(Path root, Path path, Predicate<Path> filter) {
+        if (filter == null || path.equals(root)) {
+            return true;
+        }
+        // a rejected folder hides everything below it
+        Path relative = root.relativize(path);
+        for (int i = 1; i <= relative.getNameCount(); i++) {
+            if (!filter.test(relative.subpath(0, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean reflinkTree(Path source, Path target) {
+        try {
+            Files.createDirectories(target);
+            Process p = new ProcessBuilder("cp", "-R", "--reflink=always",
+                    source.toAbsolutePath() + File.separator + ".", target.toAbsolutePath().toString())
+                    .redirectErrorStream(true).start();
+            p.getInputStream().transferTo(java.io.OutputStream.nullOutputStream());
+            return p.waitFor(5, TimeUnit.MINUTES) && p.exitValue() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Reflink only the accepted files, preserving their relative paths.
+     */
+    private static boolean reflinkFiles(Path source, Path target, Predicate<Path> filter) throws IOException {
+        List<String> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(source)) {
+            walk.filter(path -> !Files.isDirectory(path) && accepted(source, path, filter)
+                    && !path.getFileName().toString().equals("session.lock"))
+                    .forEach(path -> files.add(source.relativize(path).toString()));
+        }
+        Files.createDirectories(target);
+        // keep command lines reasonably short
+        for (int i = 0; i < files.size(); i += 200) {
+            List<String> cmd = new ArrayList<>(List.of("cp", "--reflink=always", "--parents", "-t",
+                    target.toAbsolutePath().toString()));
+            cmd.addAll(files.subList(i, Math.min(files.size(), i + 200)));
+            try {
+                Process p = new ProcessBuilder(cmd).directory(source.toFile()).redirectErrorStream(true).start();
+                p.getInputStream().transferTo(java.io.OutputStream.nullOutputStream());
+                if (!p.waitFor(5, TimeUnit.MINUTES) || p.exitValue() != 0) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static Strategy resolve(String configured, File probeDir) {
+        String wanted = configured == null ? "auto" : configured.trim().toLowerCase();
+        switch (wanted) {
+            case "copy":
+                return Strategy.COPY;
+            case "reflink":
+                if (probeReflink(probeDir)) {
+                    return Strategy.REFLINK;
+                }
+                Bukkit.getLogger().warning("clone.strategy=reflink but the filesystem does not support it.");
+                return Strategy.COPY;
+            case "hardlink":
+                // instances would write their chunks into the template
+                Bukkit.getLogger().warning("clone.strategy=hardlink is no longer supported; using auto.");
+                return resolve("auto", probeDir);
+            default:
+                if (probeReflink(probeDir)) {
+                    return Strategy.REFLINK;
+                }
+                return Strategy.COPY;
+        }
+    }
+
+    /**
+     * Try a reflink copy of a throwaway file inside <code>dir</code>.
+     */
+    private static boolean probeReflink(File dir) {
+        Path src = null;
+        Path dst = null;
+        try {
+            src = Files.createTempFile(dir.toPath(), ".dungeon-probe", ".tmp");
+            Files.write(src, new byte[] { 1 });
+            dst = src.resolveSibling(src.getFileName() + ".clone");
+            Process p = new ProcessBuilder("cp", "--reflink=always", src.toString(), dst.toString())
+                    .redirectErrorStream(true).start();
+            p.getInputStream().transferTo(java.io.OutputStream.nullOutputStream());
+            return p.waitFor(10, TimeUnit.SECONDS) && p.exitValue() == 0;
+        } catch (IOException | SecurityException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            try {
+                if (dst != null) {
+                    Files.deleteIfExists(dst);
+                }
+                if (src != null) {
+                    Files.deleteIfExists(src);
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.bukkit.Bukkit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Describes which files of a template world an instance actually needs.
+ * Generated on <code>/dungeon admin save</code> and stored as
+ * <code>plugins/DungeonInstances/manifests/&lt;template&gt;.json</code>. The
+ * chunk range is, in order of preference: the bounds set with
+ * <code>/dungeon admin bounds</code>, every chunk stored in the template's
+ * <code>region/</code> files, or the saved mobs and spawn point plus a margin
+ * when the template has no region data.
+ *
+ * <p>Region files (<code>region/</code>, <code>entities/</code>,
+ * <code>poi/</code>) are only copied when listed in {@link #include};
+ * everything under {@link #exclude} is never copied. Other files such as
+ * level.dat or data/ are always kept.
+ */
+public class TemplateManifest {
+
+    public static final int VERSION = 1;
+    private static final File MANIFEST_FOLDER = new File("plugins/DungeonInstances/manifests");
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final String[] REGION_FOLDERS = { "region", "entities", "poi" };
+    private static final String[] DEFAULT_EXCLUDES = { "playerdata/", "stats/", "advancements/", "session.lock",
+            "uid.dat" };
+
+    public int version = VERSION;
+    public String template;
+    public long generatedAt;
+    // inclusive chunk range containing the dungeon
+    public int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+    // region files to copy, relative to the world folder ("region/r.0.0.mca")
+    public List<String> include = new ArrayList<>();
+    // relative paths or folder prefixes (ending with '/') never copied
+    public List<String> exclude = new ArrayList<>();
+
+    /**
+     * Whether the file at <code>relative</code> (relative to the template
+     * folder) should be part of an instance.
+     */
+    public boolean accepts(Path relative) {
+        String rel = relative.toString().replace(File.separatorChar, '/');
+        for (String ex : exclude) {
+            if (ex.endsWith("/") ? rel.startsWith(ex) || (rel + "/").equals(ex) : rel.equals(ex)) {
+                return false;
+            }
+        }
+        if (TemplateCloner.isRegionFile(relative)) {
+            return include.contains(rel);
+        }
+        return true;
+    }
+
+    public boolean containsChunk(int cx, int cz) {
+        return cx >= minChunkX && cx <= maxChunkX && cz >= minChunkZ && cz <= maxChunkZ;
+    }
+
+    /**
+     * Build a manifest for the template (see the class comment for where the
+     * chunk range comes from). <code>marginChunks</code> only grows the range
+     * derived from the mobs and spawn point. Returns null when there is
+     * nothing to anchor the footprint on.
+     */
+    public static TemplateManifest generate(String templateName, File worldFolder,
+            Collection<DungeonManager.MobData> mobs, DungeonManager.SpawnPoint spawn, int marginChunks,
+            InstanceProfile.Bounds bounds) {
+        TemplateManifest m = new TemplateManifest();
+        m.template = templateName;
+        m.generatedAt = System.currentTimeMillis();
+        if (bounds != null) {
+            m.minChunkX = bounds.minChunkX;
+            m.minChunkZ = bounds.minChunkZ;
+            m.maxChunkX = bounds.maxChunkX;
+            m.maxChunkZ = bounds.maxChunkZ;
+        } else if (!storedChunkRange(worldFolder, m)) {
+            int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            List<double[]> points = new ArrayList<>();
+            if (spawn != null) {
+                points.add(new double[] { spawn.x, spawn.z });
+            }
+            if (mobs != null) {
+                for (DungeonManager.MobData d : mobs) {
+                    points.add(new double[] { d.x, d.z });
+                }
+            }
+            if (points.isEmpty()) {
+                return null;
+            }
+            for (double[] p : points) {
+                int cx = ((int) Math.floor(p[0])) >> 4;
+                int cz = ((int) Math.floor(p[1])) >> 4;
+                minX = Math.min(minX, cx);
+                minZ = Math.min(minZ, cz);
+                maxX = Math.max(maxX, cx);
+                maxZ = Math.max(maxZ, cz);
+            }
+            m.minChunkX = minX - marginChunks;
+            m.minChunkZ = minZ - marginChunks;
+            m.maxChunkX = maxX + marginChunks;
+            m.maxChunkZ = maxZ + marginChunks;
+        }
+
+        // region files are 32x32 chunks; keep every existing one overlapping the range
+        for (String folder : REGION_FOLDERS) {
+            for (int rx = m.minChunkX >> 5; rx <= m.maxChunkX >> 5; rx++) {
+                for (int rz = m.minChunkZ >> 5; rz <= m.maxChunkZ >> 5; rz++) {
+                    String rel = folder + "/r." + rx + "." + rz + ".mca";
+                    if (new File(worldFolder, rel).isFile()) {
+                        m.include.add(rel);
+                    }
+                }
+            }
+        }
+        for (String ex : DEFAULT_EXCLUDES) {
+            m.exclude.add(ex);
+        }
+        return m;
+    }
+
+    /**
+     * Set the range of <code>m</code> to the chunks actually stored in the
+     * world's <code>region/</code> files (location tables only). Returns
+     * false if there are none.
+     */
+    private static boolean storedChunkRange(File worldFolder, TemplateManifest m) {
+        File[] regions = new File(worldFolder, "region").listFiles((dir, name) -> name.endsWith(".mca"));
+        if (regions == null) {
+            return false;
+        }
+        int[] range = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+        for (File region : regions) {
+            String[] parts = region.getName().split("\\.");
+            int rx, rz;
+            try {
+                rx = Integer.parseInt(parts[1]);
+                rz = Integer.parseInt(parts[2]);
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                continue; // not r.<x>.<z>.mca
+            }
+            try {
+                AnvilRegion.forEachPresentChunk(region, slot -> {
+                    int cx = (rx << 5) + (slot & 31);
+                    int cz = (rz << 5) + (slot >> 5);
+                    range[0] = Math.min(range[0], cx);
+                    range[1] = Math.min(range[1], cz);
+                    range[2] = Math.max(range[2], cx);
+                    range[3] = Math.max(range[3], cz);
+                });
+            } catch (IOException e) {
+                Bukkit.getLogger().warning("Could not read " + region + ": " + e.getMessage());
+            }
+        }
+        if (range[0] > range[2]) {
+            return false;
+        }
+        m.minChunkX = range[0];
+        m.minChunkZ = range[1];
+        m.maxChunkX = range[2];
+        m.maxChunkZ = range[3];
+        return true;
+    }
+
+    public static File fileFor(String templateName) {
+        return new File(MANIFEST_FOLDER, templateName + ".json");
+    }
+
+    /**
+     * Load the manifest for a template, or null if none was generated (or it
+     * has an unknown format version).
+     */
+    public static TemplateManifest load(String templateName) {
+        File f = fileFor(templateName);
+        if (!f.exists()) {
+            return null;
+        }
+        try (FileReader r = new FileReader(f)) {
+            TemplateManifest m = GSON.fromJson(r, TemplateManifest.class);
+            if (m == null || m.version != VERSION) {
+                return null;
+            }
+            return m;
+        } catch (IOException | com.google.gson.JsonParseException e) {
+            Bukkit.getLogger().warning("Failed to read manifest for " + templateName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void save() throws IOException {
+        MANIFEST_FOLDER.mkdirs();
+        try (FileWriter w = new FileWriter(fileFor(template))) {
+            GSON.toJson(this, w);
+        }
+    }
+}
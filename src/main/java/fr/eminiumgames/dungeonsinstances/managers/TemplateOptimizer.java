@@ -0,0 +1,356 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+
+/**
+ * One-time pass that brings a template's chunks up to the running server's
+ * format. Region files are scanned off the main thread for chunks saved by an
+ * older Minecraft version (<code>DataVersion</code>) or without baked light
+ * (<code>isLightOn</code>); only if there are any is the template copied to a
+ * work folder, loaded from there under its own world name, those chunks loaded
+ * (which runs the data fixers and the light engine), marked dirty and written
+ * back when the copy is saved and unloaded. The copy then replaces the
+ * template folder by rename. The template files themselves are never written:
+ * instances and pooled folders cloned with reflinks keep the old content. Instances cloned afterwards load current chunks instead of
+ * upgrading and relighting them on every run.
+ *
+ * <p>A <code>template.optimized</code> file in the template folder records the
+ * data version the template was last optimized for, so the startup hook only
+ * scans templates again after a server upgrade. Instances of a template being
+ * optimized cannot be created, and its warm pool is rebuilt afterwards.
+ */
+public class TemplateOptimizer {
+
+    public static final String MARKER = "template.optimized";
+    private static final String WORK_PREFIX = "optimize_";
+
+    private final DungeonManager dungeonManager;
+    private final Set<String> optimizing = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    // templates run one after another so only one template world is loaded
+    private CompletableFuture<?> queue = CompletableFuture.completedFuture(null);
+
+    public TemplateOptimizer(DungeonManager dungeonManager) {
+        this.dungeonManager = dungeonManager;
+    }
+
+    public boolean isOptimizing(String templateName) {
+        return optimizing.contains(templateName);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int currentDataVersion() {
+        return Bukkit.getUnsafe().getDataVersion();
+    }
+
+    /**
+     * Optimize every known template whose marker is missing or older than
+     * the server (startup hook).
+     */
+    public void optimizeOutdated() {
+        int current = currentDataVersion();
+        for (String templateName : dungeonManager.getTemplateNames()) {
+            if (readMarker(templateName) < current) {
+                optimize(templateName).exceptionally(ex -> {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    Bukkit.getLogger().warning("Could not optimize template " + templateName + ": "
+                            + cause.getMessage());
+                    return 0;
+                });
+            }
+        }
+    }
+
+    /**
+     * Queue an optimization pass for the template. Completes on the main
+     * thread with the number of chunks that were rewritten.
+     */
+    public CompletableFuture<Integer> optimize(String templateName) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        queue = queue.handle((v, ex) -> null).thenCompose(v -> run(templateName)
+                .whenComplete((n, ex) -> {
+                    if (ex != null) {
+                        result.completeExceptionally(ex);
+                    } else {
+                        result.complete(n);
+                    }
+                }).handle((n, ex) -> null));
+        return result;
+    }
+
+    private CompletableFuture<Integer> run(String templateName) {
+        if (!dungeonManager.getTemplateNames().contains(templateName)) {
+            return CompletableFuture.failedFuture(new IOException("Template " + templateName + " does not exist"));
+        }
+        if (Bukkit.getWorld("editmode_" + templateName) != null) {
+            return CompletableFuture.failedFuture(new IOException("Template " + templateName + " is being edited"));
+        }
+        optimizing.add(templateName);
+        File folder = new File(Bukkit.getWorldContainer(), templateName);
+        int current = currentDataVersion();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return findOutdatedChunks(templateName, folder, current);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, task -> Bukkit.getScheduler().runTaskAsynchronously(DungeonInstances.getInstance(), task))
+                .thenComposeAsync(chunks -> {
+                    if (chunks.isEmpty()) {
+                        return CompletableFuture.completedFuture(0);
+                    }
+                    Bukkit.getLogger().info("Optimizing template " + templateName + ": " + chunks.size()
+                            + " chunks to upgrade or relight");
+                    File work = new File(Bukkit.getWorldContainer(), WORK_PREFIX + templateName);
+                    return CompletableFuture.runAsync(() -> copyTemplate(folder, work),
+                            task -> Bukkit.getScheduler().runTaskAsynchronously(DungeonInstances.getInstance(), task))
+                            .thenComposeAsync(v -> rewriteChunks(work, chunks),
+                                    task -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), task))
+                            .thenApply(n -> {
+                                swapIn(templateName, folder, work);
+                                return n;
+                            })
+                            .whenComplete((n, ex) -> {
+                                // the copy is disposable only while the template itself is in place
+                                if (ex != null && work.exists() && folder.isDirectory()) {
+                                    dungeonManager.getTrashManager().trash(work);
+                                }
+                            });
+                }, task -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), task))
+                .whenCompleteAsync((n, ex) -> {
+                    optimizing.remove(templateName);
+                    if (ex == null) {
+                        writeMarker(folder, current);
+                        if (n > 0) {
+                            dungeonManager.getInstancePool().invalidate(templateName);
+                            Bukkit.getLogger().info("Optimized template " + templateName + " (" + n + " chunks)");
+                        }
+                    }
+                }, task -> Bukkit.getScheduler().runTask(DungeonInstances.getInstance(), task));
+    }
+
+    /**
+     * Chunks of the template (within its footprint, if it has one) that are
+     * fully generated but older than <code>current</code> or not lit.
+     */
+    private List<int[]> findOutdatedChunks(String templateName, File folder, int current) throws IOException {
+        TemplateManifest footprint = dungeonManager.getFootprint(templateName);
+        File[] regions = new File(folder, "region").listFiles(f -> f.isFile() && f.getName().endsWith(".mca"));
+        List<int[]> outdated = new ArrayList<>();
+        if (regions == null) {
+            return outdated;
+        }
+        for (File region : regions) {
+            // r.<x>.<z>.mca
+            String[] parts = region.getName().split("\\.");
+            if (parts.length != 4 || !parts[1].matches("-?\\d+") || !parts[2].matches("-?\\d+")) {
+                continue;
+            }
+            int rx = Integer.parseInt(parts[1]);
+            int rz = Integer.parseInt(parts[2]);
+            if (footprint != null && (rx << 5 > footprint.maxChunkX || (rx << 5) + 31 < footprint.minChunkX
+                    || rz << 5 > footprint.maxChunkZ || (rz << 5) + 31 < footprint.minChunkZ)) {
+                continue;
+            }
+            AnvilRegion.forEachChunk(region, (root, slot) -> {
+                int cx = (rx << 5) + (slot & 31);
+                int cz = (rz << 5) + (slot >> 5);
+                if (footprint != null && !footprint.containsChunk(cx, cz)) {
+                    return;
+                }
+                if (needsWork(root, current)) {
+                    outdated.add(new int[] { cx, cz });
+                }
+            });
+        }
+        return outdated;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean needsWork(Map<String, Object> root, int current) {
+        // before 1.18 the chunk data sat in a "Level" compound
+        Map<String, Object> level = root.get("Level") instanceof Map ? (Map<String, Object>) root.get("Level")
+                : root;
+        Object status = level.get("Status");
+        if (status != null && !"full".equals(status) && !"minecraft:full".equals(status)) {
+            return false; // never finished generating; loading it would generate terrain
+        }
+        Object version = root.get("DataVersion");
+        if (!(version instanceof Integer) || (Integer) version < current) {
+            return true;
+        }
+        Object lit = level.get("isLightOn");
+        return !(lit instanceof Byte) || (Byte) lit == 0;
+    }
+
+    /**
+     * Fresh copy of the template folder (new files, never links), without
+     * the world UID so it can load next to the template world.
+     */
+    private static void copyTemplate(File folder, File work) {
+        try {
+            if (work.exists()) {
+                TemplateCloner.deleteTree(work.toPath()); // left by a crash
+            }
+            TemplateCloner.copyTree(folder.toPath(), work.toPath(),
+                    p -> !p.toString().equals("uid.dat") && !p.toString().equals(MARKER));
+        } catch (IOException | RuntimeException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Replace the template folder with the optimized copy: the old folder is
+     * renamed aside, the copy renamed into its place and given the template's
+     * world UID back, and only then is the old folder trashed. If the copy
+     * cannot be moved in, the old folder is moved back. Main thread.
+     */
+    private void swapIn(String templateName, File folder, File work) {
+        // clones started before the pass may still be reading the folder
+        if (!dungeonManager.tryLockTemplate(templateName)) {
+            throw new CompletionException(
+                    new IOException("Template " + templateName + " is being cloned into an instance"));
+        }
+        try {
+            swapInLocked(templateName, folder, work);
+        } finally {
+            dungeonManager.unlockTemplate(templateName);
+        }
+    }
+
+    private void swapInLocked(String templateName, File folder, File work) {
+        // a live template world keeps the old files open
+        if (!dungeonManager.unloadTemplateWorld(templateName)) {
+            throw new CompletionException(new IOException("Could not unload template world " + templateName));
+        }
+        try {
+            Files.deleteIfExists(new File(work, "uid.dat").toPath());
+            Files.deleteIfExists(new File(work, "session.lock").toPath());
+            File uid = new File(folder, "uid.dat");
+            if (uid.isFile()) {
+                Files.copy(uid.toPath(), new File(work, "uid.dat").toPath());
+            }
+            File old = new File(Bukkit.getWorldContainer(), "." + templateName + "-old-" + System.nanoTime());
+            Files.move(folder.toPath(), old.toPath());
+            try {
+                Files.move(work.toPath(), folder.toPath());
+            } catch (IOException e) {
+                try {
+                    Files.move(old.toPath(), folder.toPath());
+                } catch (IOException rollback) {
+                    e.addSuppressed(rollback);
+                    Bukkit.getLogger().severe("Could not put template " + templateName + " back; it is in "
+                            + old.getName() + " and the optimized copy in " + work.getName());
+                }
+                throw e;
+            }
+            // only once the copy is in place
+            dungeonManager.getTrashManager().trash(old);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Load the work copy and the given chunks a few per tick, mark them
+     * dirty, give the light engine a moment, then save and unload it.
+     */
+    private CompletableFuture<Integer> rewriteChunks(File work, List<int[]> chunks) {
+        World world = Bukkit.createWorld(new org.bukkit.WorldCreator(work.getName()));
+        if (world == null) {
+            return CompletableFuture.failedFuture(new IOException("Could not load " + work.getName()));
+        }
+        world.setAutoSave(false);
+        int perTick = Math.max(1,
+                DungeonInstances.getInstance().getConfig().getInt("templates.optimize-chunks-per-tick", 8));
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        new BukkitRunnable() {
+            int next = 0;
+            int settle = 40; // ticks left for pending light updates
+
+            @Override
+            public void run() {
+                if (Bukkit.getWorld(world.getUID()) == null) {
+                    cancel();
+                    done.completeExceptionally(new IllegalStateException(world.getName() + " was unloaded"));
+                    return;
+                }
+                if (next < chunks.size()) {
+                    for (int n = 0; n < perTick && next < chunks.size(); n++, next++) {
+                        int[] c = chunks.get(next);
+                        if (world.loadChunk(c[0], c[1], false)) {
+                            world.addPluginChunkTicket(c[0], c[1], DungeonInstances.getInstance());
+                            markDirty(world.getChunkAt(c[0], c[1]));
+                        }
+                    }
+                    return;
+                }
+                if (--settle > 0) {
+                    return;
+                }
+                cancel();
+                // only the work copy is written; nothing else shares its files
+                world.save();
+                world.removePluginChunkTickets(DungeonInstances.getInstance());
+                if (!Bukkit.unloadWorld(world, true)) {
+                    done.completeExceptionally(new IllegalStateException("Could not unload " + world.getName()));
+                    return;
+                }
+                done.complete(chunks.size());
+            }
+        }.runTaskTimer(DungeonInstances.getInstance(), 1L, 1L);
+        return done;
+    }
+
+    /**
+     * Make sure the chunk is written on save even if loading it did not flag
+     * it as changed: briefly swap an air block at the top of the world for a
+     * structure void (no collision, light or physics) and back.
+     */
+    private static void markDirty(Chunk chunk) {
+        Block block = chunk.getBlock(0, chunk.getWorld().getMaxHeight() - 1, 0);
+        if (!block.getType().isAir()) {
+            return;
+        }
+        BlockData original = block.getBlockData();
+        block.setType(Material.STRUCTURE_VOID, false);
+        block.setBlockData(original, false);
+    }
+
+    private int readMarker(String templateName) {
+        File marker = new File(new File(Bukkit.getWorldContainer(), templateName), MARKER);
+        try {
+            return marker.isFile() ? Integer.parseInt(Files.readString(marker.toPath()).trim()) : -1;
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeMarker(File folder, int dataVersion) {
+        try {
+            Files.write(new File(folder, MARKER).toPath(),
+                    Integer.toString(dataVersion).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Bukkit.getLogger().warning("Could not write " + MARKER + " for " + folder.getName() + ": "
+                    + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Versioned, self-checking archive of a template (<code>.dtpl</code>). It is
+ * a zip holding:
+ *
+ * <pre>
+ * world/...      the template world folder, one entry per file
+ * mobs.dmob      saved edit-mode mobs, binary (optional; mobs.json in
+ *                format 1 packages or when the template still uses JSON)
+ * profile.json   instance profile (optional)
+ * package.json   format version, template name, spawn point, and the size
+ *                and SHA-256 of every other entry
+ * </pre>
+ *
+ * Entries are extracted in parallel by a small worker pool (zip entries can be
+ * read independently) and checked against <code>package.json</code> while
+ * they are written. Everything is staged in a hidden folder first, so a
+ * corrupt or truncated package never replaces a working template.
+ *
+ * <p>None of the methods touch Bukkit state; callers run them off the main
+ * thread.
+ */
+public class TemplatePackage {
+
+    public static final int FORMAT = 2;
+    public static final String EXTENSION = ".dtpl";
+    public static final String STAGING_PREFIX = ".import-";
+    public static final File PACKAGE_FOLDER = new File("plugins/DungeonInstances/packages");
+
+    static final String META = "package.json";
+    static final String WORLD = "world/";
+    static final String MOBS = "mobs.json";
+    static final String MOBS_BINARY = "mobs" + MobSpawnFile.EXTENSION;
+    static final String PROFILE = "profile.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // never packaged: lock held by a loaded world, and the world UID which
+    // must differ between servers
+    private static final List<String> SKIPPED = List.of("session.lock", "uid.dat");
+
+    /**
+     * Contents of <code>package.json</code>.
+     */
+    public static class Meta {
+        public int format = FORMAT;
+        public String template;
+        public long createdAt;
+        public DungeonManager.SpawnPoint spawn;
+        public List<Entry> files = new ArrayList<>();
+    }
+
+    public static class Entry {
+        public String path;
+        public long size;
+        public String sha256;
+    }
+
+    public static File fileFor(String templateName) {
+        return new File(PACKAGE_FOLDER, templateName + EXTENSION);
+    }
+
+    /**
+     * Write the template folder and its side files to <code>target</code>.
+     * The archive is first written next to it and renamed when complete.
+     */
+    public static Meta export(String templateName, File worldFolder, File mobsFile, File profileFile,
+            DungeonManager.SpawnPoint spawn, File target) throws IOException {
+        Meta meta = new Meta();
+        meta.template = templateName;
+        meta.createdAt = System.currentTimeMillis();
+        meta.spawn = spawn;
+
+        target.getParentFile().mkdirs();
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        Path root = worldFolder.toPath();
+        try (ZipOutputStream zip = new ZipOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), BUFFER_SIZE))) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile)
+                        .filter(p -> !SKIPPED.contains(p.getFileName().toString()))
+                        .sorted()
+                        .toList();
+            }
+            for (Path file : files) {
+                String rel = root.relativize(file).toString().replace(File.separatorChar, '/');
+                meta.files.add(write(zip, WORLD + rel, file));
+            }
+            if (mobsFile != null && mobsFile.isFile()) {
+                meta.files.add(write(zip, mobsFile.getName().endsWith(MobSpawnFile.EXTENSION) ? MOBS_BINARY : MOBS,
+                        mobsFile.toPath()));
+            }
+            if (profileFile != null && profileFile.isFile()) {
+                meta.files.add(write(zip, PROFILE, profileFile.toPath()));
+            }
+            zip.putNextEntry(new ZipEntry(META));
+            zip.write(GSON.toJson(meta).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+        Files.move(tmp.toPath(), target.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        return meta;
+    }
+
+    private static Entry write(ZipOutputStream zip, String name, Path file) throws IOException {
+        MessageDigest digest = sha256();
+        zip.putNextEntry(new ZipEntry(name));
+        long size = 0;
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                zip.write(buf, 0, len);
+                size += len;
+            }
+        }
+        zip.closeEntry();
+        Entry entry = new Entry();
+        entry.path = name;
+        entry.size = size;
+        entry.sha256 = HexFormat.of().formatHex(digest.digest());
+        return entry;
+    }
+
+    /**
+     * Read only the <code>package.json</code> of an archive.
+     */
+    public static Meta readMeta(File packageFile) throws IOException {
+        try (ZipFile zip = new ZipFile(packageFile)) {
+            return readMeta(zip);
+        }
+    }
+
+    private static Meta readMeta(ZipFile zip) throws IOException {
+        ZipEntry entry = zip.getEntry(META);
+        if (entry == null) {
+            throw new IOException("not a template package (no " + META + ")");
+        }
+        Meta meta;
+        try (InputStreamReader r = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+            meta = GSON.fromJson(r, Meta.class);
+        } catch (com.google.gson.JsonParseException e) {
+            throw new IOException("unreadable " + META + ": " + e.getMessage());
+        }
+        if (meta == null || meta.template == null || meta.files == null) {
+            throw new IOException("incomplete " + META);
+        }
+        if (meta.format > FORMAT) {
+            throw new IOException("package format " + meta.format + " is newer than supported (" + FORMAT + ")");
+        }
+        if (!meta.template.matches("[A-Za-z0-9_\\-]+")) {
+            throw new IOException("invalid template name '" + meta.template + "'");
+        }
+        return meta;
+    }
+
+    /**
+     * Extract every entry listed in <code>package.json</code> into a new
+     * staging folder below <code>parent</code>, verifying sizes and checksums,
+     * with up to <code>threads</code> entries in flight. The world ends up in
+     * <code>&lt;staging&gt;/world</code>, side files at the staging root. On
+     * failure the staging folder is removed and the exception rethrown.
+     */
+    public static Staged extract(File packageFile, File parent, int threads) throws IOException {
+        try (ZipFile zip = new ZipFile(packageFile)) {
+            Meta meta = readMeta(zip);
+            Path staging = parent.toPath().resolve(STAGING_PREFIX + meta.template + "-" + System.nanoTime());
+            Files.createDirectories(staging.resolve("world"));
+            List<Callable<Void>> tasks = new ArrayList<>();
+            try {
+                for (Entry entry : meta.files) {
+                    Path out = resolve(staging, entry.path);
+                    ZipEntry zipEntry = zip.getEntry(entry.path);
+                    if (zipEntry == null) {
+                        throw new IOException("missing entry " + entry.path);
+                    }
+                    tasks.add(() -> {
+                        extractEntry(zip, zipEntry, entry, out);
+                        return null;
+                    });
+                }
+            } catch (IOException e) {
+                discard(staging);
+                throw e;
+            }
+            runAll(tasks, staging, threads);
+            return new Staged(meta, staging.toFile());
+        }
+    }
+
+    /**
+     * Extract a plain zip of a world folder, without <code>package.json</code>
+     * (the format of the bundled default template), into a staging folder
+     * like {@link #extract}, with the same worker pool but no checksums.
+     * Entry names are taken from below their <code>&lt;templateName&gt;/</code>
+     * element when they have one.
+     */
+    public static Staged extractArchive(File archive, String templateName, File parent, int threads)
+            throws IOException {
+        try (ZipFile zip = new ZipFile(archive)) {
+            Meta meta = new Meta();
+            meta.template = templateName;
+            meta.createdAt = archive.lastModified();
+            Path staging = parent.toPath().resolve(STAGING_PREFIX + templateName + "-" + System.nanoTime());
+            Files.createDirectories(staging.resolve("world"));
+            String marker = templateName + "/";
+            List<Callable<Void>> tasks = new ArrayList<>();
+            try {
+                for (ZipEntry zipEntry : java.util.Collections.list(zip.entries())) {
+                    String name = zipEntry.getName();
+                    int at = name.indexOf(marker);
+                    if (at == 0 || (at > 0 && name.charAt(at - 1) == '/')) {
+                        name = name.substring(at + marker.length());
+                    }
+                    if (zipEntry.isDirectory() || name.isEmpty() || SKIPPED.contains(name)) {
+                        continue;
+                    }
+                    Path out = resolve(staging, WORLD + name);
+                    tasks.add(() -> {
+                        Files.createDirectories(out.getParent());
+                        try (InputStream in = zip.getInputStream(zipEntry)) {
+                            Files.copy(in, out);
+                        }
+                        return null;
+                    });
+                }
+            } catch (IOException e) {
+                discard(staging);
+                throw e;
+            }
+            runAll(tasks, staging, threads);
+            return new Staged(meta, staging.toFile());
+        }
+    }
+
+    /**
+     * Run the extraction tasks with up to <code>threads</code> in flight. On
+     * failure the staging folder is removed and the exception rethrown.
+     */
+    private static void runAll(List<Callable<Void>> tasks, Path staging, int threads) throws IOException {
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "DungeonInstances-extract-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Void>> pending = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                pending.add(pool.submit(task));
+            }
+            for (Future<Void> f : pending) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            discard(staging);
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            discard(staging);
+            Thread.currentThread().interrupt();
+            throw new IOException("extraction interrupted");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void discard(Path staging) {
+        try {
+            TemplateCloner.deleteTree(staging);
+        } catch (IOException ignored) {
+            // leftovers are trashed on the next start
+        }
+    }
+
+    /**
+     * Target of a package entry inside the staging folder. Rejects names that
+     * would escape it.
+     */
+    private static Path resolve(Path staging, String name) throws IOException {
+        if (!name.equals(MOBS) && !name.equals(MOBS_BINARY) && !name.equals(PROFILE) && !name.startsWith(WORLD)) {
+            throw new IOException("unexpected entry " + name);
+        }
+        Path out = staging.resolve(name).normalize();
+        if (!out.startsWith(staging) || out.equals(staging.resolve("world"))) {
+            throw new IOException("illegal entry path " + name);
+        }
+        return out;
+    }
+
+    private static void extractEntry(ZipFile zip, ZipEntry zipEntry, Entry entry, Path out) throws IOException {
+        Files.createDirectories(out.getParent());
+        MessageDigest digest = sha256();
+        long size = 0;
+        try (InputStream in = zip.getInputStream(zipEntry);
+                OutputStream os = new DigestOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(out), BUFFER_SIZE), digest)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                os.write(buf, 0, len);
+                size += len;
+            }
+        }
+        if (size != entry.size) {
+            throw new IOException(entry.path + ": expected " + entry.size + " bytes, got " + size);
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        if (!hash.equalsIgnoreCase(entry.sha256)) {
+            throw new IOException(entry.path + ": checksum mismatch");
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // required on every JVM
+        }
+    }
+
+    /**
+     * A verified package waiting in its staging folder.
+     */
+    public static class Staged {
+        private final Meta meta;
+        private final File folder;
+
+        Staged(Meta meta, File folder) {
+            this.meta = meta;
+            this.folder = folder;
+        }
+
+        public Meta getMeta() {
+            return meta;
+        }
+
+        public File getFolder() {
+            return folder;
+        }
+
+        public File getWorldFolder() {
+            return new File(folder, "world");
+        }
+
+        /**
+         * A side file of the package, or null if it was not included.
+         */
+        public File getFile(String name) {
+            File f = new File(folder, name);
+            return f.isFile() ? f : null;
+        }
+    }
+}
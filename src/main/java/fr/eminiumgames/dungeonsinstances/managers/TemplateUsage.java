@@ -0,0 +1,44 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * When each loaded template world was last used, so that
+ * {@link DungeonManager#unloadIdleTemplates} can unload the ones nobody
+ * needs. Used on the main thread.
+ */
+class TemplateUsage {
+
+    // template name -> last time its live world was asked for (millis)
+    private final Map<String, Long> lastUse = new HashMap<>();
+
+    void touch(String templateName, long now) {
+        lastUse.put(templateName, now);
+    }
+
+    void forget(String templateName) {
+        lastUse.remove(templateName);
+    }
+
+    /**
+     * The loaded templates unused for at least <code>idleMillis</code>.
+     * Occupied worlds count as used right now; a template never touched is
+     * idle.
+     */
+    List<String> idle(Collection<String> loaded, Predicate<String> occupied, long now, long idleMillis) {
+        List<String> idle = new ArrayList<>();
+        for (String templateName : loaded) {
+            if (occupied.test(templateName)) {
+                touch(templateName, now);
+            } else if (now - lastUse.getOrDefault(templateName, 0L) >= idleMillis) {
+                idle.add(templateName);
+            }
+        }
+        return idle;
+    }
+}
@@ -0,0 +1,111 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+
+/**
+ * Lightweight server load probe. On Paper the real average tick time
+ * (<code>Server#getAverageTickTime</code>) is read through reflection; on
+ * plain Spigot we fall back to an exponentially weighted average of the
+ * interval between two ticks, which only tells us when the server is
+ * falling behind (interval above 50 ms).
+ */
+public class TickMonitor {
+
+    private static final double TICK_MS = 50.0;
+    // smoothing for the interval average, roughly the last 40 ticks
+    private static final double ALPHA = 0.05;
+
+    private BukkitTask task;
+    private long lastTick = -1L;
+    private volatile double intervalEwma = TICK_MS;
+    private java.lang.reflect.Method paperTickTime;
+
+    public void start() {
+        try {
+            paperTickTime = Bukkit.getServer().getClass().getMethod("getAverageTickTime");
+        } catch (NoSuchMethodException e) {
+            paperTickTime = null;
+        }
+        task = Bukkit.getScheduler().runTaskTimer(DungeonInstances.getInstance(), () -> {
+            long now = System.nanoTime();
+            if (lastTick != -1L) {
+                double ms = (now - lastTick) / 1_000_000.0;
+                intervalEwma += ALPHA * (ms - intervalEwma);
+            }
+            lastTick = now;
+        }, 1L, 1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * True when the value returned by {@link #getMspt()} is the server's real
+     * tick duration rather than the interval-based estimate.
+     */
+    public boolean hasRealMspt() {
+        return paperTickTime != null;
+    }
+
+    /**
+     * Best available milliseconds-per-tick figure.
+     */
+    public double getMspt() {
+        if (paperTickTime != null) {
+            try {
+                return ((Number) paperTickTime.invoke(Bukkit.getServer())).doubleValue();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                paperTickTime = null;
+            }
+        }
+        return intervalEwma;
+    }
+
+    /**
+     * Whether the server is above the given tick time. Without the real MSPT
+     * only lag (ticks longer than 50 ms) can be observed, so lower thresholds
+     * are clamped to that.
+     */
+    public boolean isAbove(double thresholdMs) {
+        if (hasRealMspt()) {
+            return getMspt() > thresholdMs;
+        }
+        return intervalEwma > Math.max(thresholdMs, TICK_MS) + 1.0;
+    }
+
+    /**
+     * Share of a per-tick work budget that can be spent right now, between 0
+     * and 1: all of it up to <code>softLimitMs</code>, shrinking linearly to
+     * nothing as the tick time reaches 50 ms. Without the real MSPT it is all
+     * or nothing depending on whether the server is falling behind.
+     */
+    public double headroom(double softLimitMs) {
+        if (!hasRealMspt()) {
+            return intervalEwma > TICK_MS + 1.0 ? 0.0 : 1.0;
+        }
+        double mspt = getMspt();
+        if (mspt <= softLimitMs) {
+            return 1.0;
+        }
+        if (mspt >= TICK_MS || softLimitMs >= TICK_MS) {
+            return 0.0;
+        }
+        return (TICK_MS - mspt) / (TICK_MS - softLimitMs);
+    }
+
+    /**
+     * Share of the heap still available, between 0 and 1.
+     */
+    public static double freeMemoryRatio() {
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        return Math.max(0.0, (double) (rt.maxMemory() - used) / rt.maxMemory());
+    }
+}
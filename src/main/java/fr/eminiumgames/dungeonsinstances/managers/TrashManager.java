@@ -0,0 +1,137 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import fr.eminiumgames.dungeonsinstances.DungeonInstances;
+
+/**
+ * Deletes world folders in the background. A folder handed to
+ * {@link #trash(File)} is first renamed into <code>.trash/</code> inside the
+ * world container, which is atomic and frees the name immediately; a
+ * throttled async task then removes the files, limited by
+ * <code>trash.files-per-second</code> and <code>trash.bytes-per-second</code>
+ * so that it does not compete with world saves for disk I/O.
+ *
+ * <p>Anything left in <code>.trash/</code> when the server stops is picked up
+ * again by {@link #start()}.
+ */
+public class TrashManager {
+
+    // the deleter runs every tick, i.e. 20 slices per second
+    private static final int SLICES_PER_SECOND = 20;
+
+    private final File trashFolder = new File(Bukkit.getWorldContainer(), ".trash");
+    private final ConcurrentLinkedQueue<File> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    // files of the folder currently being deleted, deepest first
+    private final Deque<Path> current = new ArrayDeque<>();
+    private BukkitTask task;
+
+    /**
+     * Queue previously trashed folders and start the background deleter.
+     */
+    public void start() {
+        File[] leftovers = trashFolder.listFiles();
+        if (leftovers != null && leftovers.length > 0) {
+            for (File f : leftovers) {
+                queue.add(f);
+            }
+            Bukkit.getLogger().info("Resuming deletion of " + leftovers.length + " trashed folder(s).");
+        }
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(DungeonInstances.getInstance(), this::slice, 1L,
+                1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Move the folder out of the way and schedule it for deletion. If the
+     * rename fails (e.g. the folder is on another filesystem) the folder is
+     * deleted in place by the background task instead.
+     */
+    public void trash(File folder) {
+        if (folder == null || !folder.exists()) {
+            return;
+        }
+        File target = new File(trashFolder, folder.getName() + "-" + System.nanoTime());
+        try {
+            Files.createDirectories(trashFolder.toPath());
+            Files.move(folder.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            queue.add(target);
+        } catch (IOException | UnsupportedOperationException e) {
+            Bukkit.getLogger().warning("Could not move " + folder.getName() + " to the trash (" + e.getMessage()
+                    + "); deleting it in place.");
+            queue.add(folder);
+        }
+    }
+
+    private void slice() {
+        // a slow disk can make one slice outlast the period
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            FileConfiguration config = DungeonInstances.getInstance().getConfig();
+            long filesPerSecond = config.getLong("trash.files-per-second", 500L);
+            long bytesPerSecond = config.getLong("trash.bytes-per-second", 64L * 1024 * 1024);
+            long fileBudget = filesPerSecond <= 0 ? Long.MAX_VALUE : Math.max(1, filesPerSecond / SLICES_PER_SECOND);
+            long byteBudget = bytesPerSecond <= 0 ? Long.MAX_VALUE : Math.max(1, bytesPerSecond / SLICES_PER_SECOND);
+            long files = 0;
+            long bytes = 0;
+            while (files < fileBudget && bytes < byteBudget) {
+                if (current.isEmpty() && !loadNext()) {
+                    return;
+                }
+                Path p = current.poll();
+                try {
+                    if (!Files.isDirectory(p)) {
+                        bytes += Files.size(p);
+                    }
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    // non-empty folder (file created meanwhile) or locked file; retry later
+                    Bukkit.getLogger().fine("Trash: could not delete " + p + ": " + e.getMessage());
+                }
+                files++;
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private boolean loadNext() {
+        File next;
+        while ((next = queue.poll()) != null) {
+            if (!next.exists()) {
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(next.toPath())) {
+                current.addAll(walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList()));
+                return true;
+            } catch (IOException | java.io.UncheckedIOException e) {
+                Bukkit.getLogger().warning("Trash: failed to list " + next + ": " + e.getMessage());
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,76 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.generator.BiomeProvider;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.generator.ChunkGenerator;
+import org.bukkit.generator.WorldInfo;
+
+/**
+ * Generates nothing: every new chunk is air in a single biome. Used for
+ * worlds whose content is pasted or copied in by the plugin, so that chunks
+ * outside of it cost no terrain generation.
+ */
+public class VoidChunkGenerator extends ChunkGenerator {
+
+    @Override
+    public BiomeProvider getDefaultBiomeProvider(WorldInfo worldInfo) {
+        return new BiomeProvider() {
+            @Override
+            public Biome getBiome(WorldInfo info, int x, int y, int z) {
+                return Biome.PLAINS;
+            }
+
+            @Override
+            public List<Biome> getBiomes(WorldInfo info) {
+                return List.of(Biome.PLAINS);
+            }
+        };
+    }
+
+    @Override
+    public Location getFixedSpawnLocation(World world, Random random) {
+        return new Location(world, 0.5, 64, 0.5);
+    }
+
+    @Override
+    public List<BlockPopulator> getDefaultPopulators(World world) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean shouldGenerateNoise() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateSurface() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateCaves() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateDecorations() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateMobs() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldGenerateStructures() {
+        return false;
+    }
+}
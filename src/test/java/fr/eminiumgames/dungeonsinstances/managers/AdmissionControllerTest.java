@@ -0,0 +1,62 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class AdmissionControllerTest {
+
+    private static AdmissionController.Slots slots(int maxCreations, int maxInstances, Map<String, Integer> caps,
+            Map<String, Integer> running, Map<String, Integer> creating) {
+        return new AdmissionController.Slots(maxCreations, maxInstances, t -> caps.getOrDefault(t, 0), running,
+                creating);
+    }
+
+    @Test
+    void admittingTakesACreationSlot() {
+        AdmissionController.Slots slots = slots(2, 0, Map.of(), Map.of("crypt", 5), Map.of("crypt", 1));
+
+        assertFalse(slots.exhausted());
+        slots.take("tower");
+        // one creating before plus the one just admitted
+        assertTrue(slots.exhausted());
+    }
+
+    @Test
+    void runningAndCreatingCountAgainstTheInstanceCap() {
+        AdmissionController.Slots slots = slots(0, 4, Map.of(), Map.of("crypt", 2), Map.of("tower", 1));
+
+        assertFalse(slots.exhausted());
+        slots.take("crypt");
+        assertTrue(slots.exhausted());
+        // finished creations left in the map at zero change nothing
+        assertFalse(slots(1, 0, Map.of(), Map.of(), Map.of("crypt", 0)).exhausted());
+    }
+
+    @Test
+    void aFullTemplateOnlyBlocksItself() {
+        AdmissionController.Slots slots = slots(0, 0, Map.of("crypt", 2, "tower", 1), Map.of("crypt", 1),
+                Map.of("crypt", 1));
+
+        assertFalse(slots.hasRoom("crypt"));
+        assertTrue(slots.hasRoom("tower"));
+        assertTrue(slots.hasRoom("sewers")); // no cap
+        slots.take("tower");
+        assertFalse(slots.hasRoom("tower"));
+        assertFalse(slots.exhausted());
+    }
+
+    @Test
+    void etaFollowsTheSmoothedAdmissionInterval() {
+        assertEquals(13.0, AdmissionController.smooth(10.0, 20.0), 1e-9);
+        assertEquals(10.0, AdmissionController.smooth(10.0, 10.0), 1e-9);
+        assertEquals("30s", AdmissionController.estimate(3, 10.0));
+        assertEquals("1m 10s", AdmissionController.estimate(7, 10.0));
+        assertEquals("2m 0s", AdmissionController.estimate(8, 15.0));
+        assertEquals("0s", AdmissionController.estimate(1, 0.2));
+    }
+}
@@ -0,0 +1,135 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnvilRegionTest {
+
+    private static final int SECTOR = 4096;
+
+    @TempDir
+    Path dir;
+
+    private static Map<String, Object> chunk(int x, int z, boolean withMob) {
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("DataVersion", 4082);
+        root.put("Position", new int[] { x, z });
+        List<Object> entities = new ArrayList<>();
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("id", "minecraft:item_frame");
+        entities.add(frame);
+        if (withMob) {
+            Map<String, Object> mob = new LinkedHashMap<>();
+            mob.put("id", "minecraft:zombie");
+            mob.put("Health", 20.0f);
+            entities.add(mob);
+        }
+        root.put("Entities", new Nbt.TagList(Nbt.COMPOUND, entities));
+        return root;
+    }
+
+    /**
+     * A region file holding the given chunks (slot -> root), zlib compressed,
+     * one sector each, with a timestamp equal to the slot.
+     */
+    private File region(Map<Integer, Map<String, Object>> chunks) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * SECTOR);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int sector = 2;
+        for (Map.Entry<Integer, Map<String, Object>> e : chunks.entrySet()) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            payload.write(2);
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(payload))) {
+                Nbt.writeRoot(out, e.getValue());
+            }
+            byte[] bytes = payload.toByteArray();
+            int sectors = (4 + bytes.length + SECTOR - 1) / SECTOR;
+            header.putInt(e.getKey() * 4, (sector << 8) | sectors);
+            header.putInt(SECTOR + e.getKey() * 4, e.getKey());
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.write(new byte[sectors * SECTOR - 4 - bytes.length]);
+            sector += sectors;
+        }
+        File file = dir.resolve("r.0.0.mca").toFile();
+        Files.write(file.toPath(), header.array());
+        Files.write(file.toPath(), body.toByteArray(), java.nio.file.StandardOpenOption.APPEND);
+        return file;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean removeMobs(Map<String, Object> root) {
+        Nbt.TagList entities = (Nbt.TagList) root.get("Entities");
+        return entities.items.removeIf(e -> "minecraft:zombie".equals(((Map<String, Object>) e).get("id")));
+    }
+
+    @Test
+    void rewritesOnlyChangedChunks() throws IOException {
+        Map<Integer, Map<String, Object>> chunks = new LinkedHashMap<>();
+        chunks.put(0, chunk(0, 0, true));
+        chunks.put(33, chunk(1, 1, false));
+        chunks.put(1023, chunk(31, 31, true));
+        File file = region(chunks);
+
+        assertEquals(2, AnvilRegion.rewrite(file, AnvilRegionTest::removeMobs));
+
+        Map<Integer, Map<String, Object>> read = new HashMap<>();
+        AnvilRegion.forEachChunk(file, (root, slot) -> read.put(slot, root));
+        assertEquals(chunks.keySet(), read.keySet());
+        for (Map.Entry<Integer, Map<String, Object>> e : read.entrySet()) {
+            Map<String, Object> root = e.getValue();
+            assertEquals(4082, root.get("DataVersion"));
+            Nbt.TagList entities = (Nbt.TagList) root.get("Entities");
+            assertEquals(1, entities.items.size(), "slot " + e.getKey());
+            assertFalse(removeMobs(root));
+        }
+        // slot order and timestamps survive the rewrite
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file.toPath()), 0, 2 * SECTOR);
+        for (int slot : chunks.keySet()) {
+            assertEquals(slot, header.getInt(SECTOR + slot * 4));
+        }
+    }
+
+    @Test
+    void leavesUnchangedFilesAlone() throws IOException {
+        File file = region(Map.of(5, chunk(5, 0, false)));
+        byte[] before = Files.readAllBytes(file.toPath());
+        long modified = file.lastModified();
+
+        assertEquals(0, AnvilRegion.rewrite(file, AnvilRegionTest::removeMobs));
+
+        assertTrue(java.util.Arrays.equals(before, Files.readAllBytes(file.toPath())));
+        assertEquals(modified, file.lastModified());
+    }
+
+    @Test
+    void listsPresentChunksFromTheHeader() throws IOException {
+        Map<Integer, Map<String, Object>> chunks = new LinkedHashMap<>();
+        chunks.put(2, chunk(2, 0, false));
+        chunks.put(64, chunk(0, 2, true));
+        File file = region(chunks);
+
+        List<Integer> slots = new ArrayList<>();
+        AnvilRegion.forEachPresentChunk(file, slots::add);
+        assertEquals(List.of(2, 64), slots);
+    }
+}
@@ -0,0 +1,197 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BakedTemplateTest {
+
+    private static final int MIN_Y = 0;
+    private static final int MAX_Y = 32;
+
+    @TempDir
+    Path dir;
+
+    // one instance per state, so equals is identity like the server's
+    private final Map<String, BlockData> states = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, java.util.function.BiFunction<String, Object[], Object> calls) {
+        return (T) Proxy.newProxyInstance(BakedTemplateTest.class.getClassLoader(), new Class<?>[] { type },
+                (self, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return self == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(self);
+                        default:
+                            return calls.apply(method.getName(), args);
+                    }
+                });
+    }
+
+    private BlockData state(String name) {
+        return states.computeIfAbsent(name, k -> proxy(BlockData.class, (method, args) -> {
+            switch (method) {
+                case "getAsString":
+                case "toString":
+                    return k;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        }));
+    }
+
+    /**
+     * Template blocks: stone floor at y = 0, a dirt block at x == z above it,
+     * air everywhere else (the upper section is uniform).
+     */
+    private static String templateBlock(int x, int y, int z) {
+        if (y == 0) {
+            return "minecraft:stone";
+        }
+        return y == 1 && x == z ? "minecraft:dirt" : "minecraft:air";
+    }
+
+    private ChunkSnapshot snapshot(int cx, int cz) {
+        return proxy(ChunkSnapshot.class, (method, args) -> {
+            switch (method) {
+                case "getX":
+                    return cx;
+                case "getZ":
+                    return cz;
+                case "getBlockData":
+                    return state(templateBlock((int) args[0], (int) args[1], (int) args[2]));
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+    }
+
+    private BakedTemplate bake(List<String> biomesSeen) throws IOException {
+        File file = dir.resolve("crypt.bin").toFile();
+        BakedTemplate.write(file, List.of(snapshot(0, 0), snapshot(-1, 2)),
+                snap -> snap.getX() < 0 ? "minecraft:desert" : "minecraft:plains", List.of(),
+                List.of("minecraft:jukebox"), MIN_Y, MAX_Y);
+        return BakedTemplate.load("crypt", file, this::state, key -> {
+            biomesSeen.add(key);
+            return null;
+        });
+    }
+
+    @Test
+    void decodesWhatWasBaked() throws IOException {
+        List<String> biomes = new ArrayList<>();
+        BakedTemplate baked = bake(biomes);
+
+        assertEquals(2, baked.getChunkCount());
+        assertEquals(Set.of(BakedTemplate.chunkKey(0, 0), BakedTemplate.chunkKey(-1, 2)), baked.getChunkKeys());
+        assertTrue(baked.hasChunk(-1, 2));
+        assertFalse(baked.hasChunk(0, 2));
+        assertEquals(-1, baked.getMinChunkX());
+        assertEquals(0, baked.getMinChunkZ());
+        assertEquals(2, baked.getWidthChunks());
+        assertEquals(3, baked.getDepthChunks());
+        // the biome palette holds each key once
+        assertEquals(List.of("minecraft:plains", "minecraft:desert"), biomes);
+        assertEquals(List.of("minecraft:jukebox"), baked.getUnsupportedBlockEntities());
+        assertTrue(baked.getBlockEntities(0, 0).isEmpty());
+
+        BakedTemplate.Chunk chunk = baked.decode(-1, 2);
+        assertEquals(MIN_Y, chunk.getMinY());
+        assertEquals(2, chunk.getSectionCount());
+        assertNull(chunk.getUniform(0));
+        assertEquals(state("minecraft:air"), chunk.getUniform(1));
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    assertEquals(state(templateBlock(x, y, z)), chunk.getBlock(0, x, y, z));
+                    assertEquals(state("minecraft:air"), chunk.getBlock(1, x, y, z));
+                }
+            }
+        }
+        assertNull(baked.decode(5, 5));
+    }
+
+    @Test
+    void pasteRewritesOnlyDifferingBlocksAtTheOffset() throws IOException {
+        BakedTemplate baked = bake(new ArrayList<>());
+        // the target world is one section high and all stone
+        ChunkSnapshot current = proxy(ChunkSnapshot.class, (method, args) -> {
+            if (!method.equals("getBlockData")) {
+                throw new UnsupportedOperationException(method);
+            }
+            return state("minecraft:stone");
+        });
+        Map<List<Integer>, BlockData> written = new HashMap<>();
+        List<List<Integer>> chunksTouched = new ArrayList<>();
+        World world = proxy(World.class, (method, args) -> {
+            switch (method) {
+                case "getMinHeight":
+                    return MIN_Y;
+                case "getMaxHeight":
+                    return 16;
+                case "getChunkAt": {
+                    int cx = (int) args[0];
+                    int cz = (int) args[1];
+                    chunksTouched.add(List.of(cx, cz));
+                    return proxy(Chunk.class, (chunkMethod, chunkArgs) -> {
+                        switch (chunkMethod) {
+                            case "getChunkSnapshot":
+                                return current;
+                            case "getBlock": {
+                                List<Integer> pos = List.of((cx << 4) + (int) chunkArgs[0], (int) chunkArgs[1],
+                                        (cz << 4) + (int) chunkArgs[2]);
+                                return proxy(Block.class, (blockMethod, blockArgs) -> {
+                                    if (!blockMethod.equals("setBlockData")) {
+                                        throw new UnsupportedOperationException(blockMethod);
+                                    }
+                                    written.put(pos, (BlockData) blockArgs[0]);
+                                    return null;
+                                });
+                            }
+                            default:
+                                throw new UnsupportedOperationException(chunkMethod);
+                        }
+                    });
+                }
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+
+        // template chunk (-1, 2) lands on world chunk (1, 1)
+        int changed = BlockPaster.pasteChunk(baked, world, -1, 2, 2, -1);
+
+        assertEquals(List.of(List.of(1, 1)), chunksTouched);
+        // y = 1..15 is stone in the world: the 16 dirt blocks and the 15 * 256 - 16 air blocks differ
+        assertEquals(15 * 256, changed);
+        assertEquals(changed, written.size());
+        assertEquals(state("minecraft:dirt"), written.get(List.of(16 + 3, 1, 16 + 3)));
+        assertEquals(state("minecraft:air"), written.get(List.of(16 + 3, 1, 16 + 4)));
+        assertEquals(state("minecraft:air"), written.get(List.of(16, 15, 16 + 15)));
+        // the stone floor already matches, and the baked section above the world's height is left out
+        assertFalse(written.containsKey(List.of(16, 0, 16)));
+        assertFalse(written.keySet().stream().anyMatch(pos -> pos.get(1) >= 16));
+        assertEquals(0, BlockPaster.pasteChunk(baked, world, 7, 7, 0, 0));
+    }
+}
@@ -0,0 +1,111 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Set;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.inventory.BlockInventoryHolder;
+import org.bukkit.inventory.InventoryHolder;
+import org.junit.jupiter.api.Test;
+
+class DirtyChunksTest {
+
+    private final World instance = world("dungeon_crypt_1");
+    private final World lobby = world("world");
+    private final DirtyChunks dirty = new DirtyChunks(w -> w == instance);
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, java.util.function.Function<String, Object> calls) {
+        return (T) Proxy.newProxyInstance(DirtyChunksTest.class.getClassLoader(), new Class<?>[] { type },
+                (self, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return self == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(self);
+                        default:
+                            return calls.apply(method.getName());
+                    }
+                });
+    }
+
+    private static World world(String name) {
+        return proxy(World.class, method -> {
+            if (!method.equals("getName")) {
+                throw new UnsupportedOperationException(method);
+            }
+            return name;
+        });
+    }
+
+    private static Block block(World world, int x, int y, int z) {
+        return proxy(Block.class, method -> {
+            switch (method) {
+                case "getWorld":
+                    return world;
+                case "getX":
+                    return x;
+                case "getY":
+                    return y;
+                case "getZ":
+                    return z;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+    }
+
+    @Test
+    void marksTheChunkOfEachTouchedBlock() {
+        dirty.mark(block(instance, 0, 64, 0));
+        dirty.mark(block(instance, 15, 10, 15));
+        dirty.mark(List.of(block(instance, -1, 64, 16), block(instance, -17, 0, -1), block(instance, 31, 64, -16)));
+
+        assertEquals(Set.of(BakedTemplate.chunkKey(0, 0), BakedTemplate.chunkKey(-1, 1),
+                BakedTemplate.chunkKey(-2, -1), BakedTemplate.chunkKey(1, -1)), dirty.take("dungeon_crypt_1"));
+        // taking resets the run
+        assertTrue(dirty.take("dungeon_crypt_1").isEmpty());
+    }
+
+    @Test
+    void ignoresWorldsThatAreNotTracked() {
+        dirty.mark(block(lobby, 100, 64, 100));
+        dirty.mark(proxy(InventoryHolder.class, method -> {
+            throw new UnsupportedOperationException(method);
+        }));
+
+        assertTrue(dirty.take("world").isEmpty());
+        assertTrue(dirty.take("dungeon_crypt_1").isEmpty());
+    }
+
+    @Test
+    void marksTheBlockBehindAContainer() {
+        Block chest = block(instance, 40, 30, -40);
+        dirty.mark(proxy(BlockInventoryHolder.class, method -> {
+            if (!method.equals("getBlock")) {
+                throw new UnsupportedOperationException(method);
+            }
+            return chest;
+        }));
+
+        assertEquals(Set.of(BakedTemplate.chunkKey(2, -3)), dirty.take("dungeon_crypt_1"));
+    }
+
+    @Test
+    void forgetDropsTheWorld() {
+        World other = world("dungeon_crypt_2");
+        DirtyChunks both = new DirtyChunks(w -> true);
+        both.mark(block(instance, 0, 0, 0));
+        both.mark(block(other, 0, 0, 0));
+
+        both.forget("dungeon_crypt_1");
+
+        assertTrue(both.take("dungeon_crypt_1").isEmpty());
+        assertEquals(Set.of(BakedTemplate.chunkKey(0, 0)), both.take("dungeon_crypt_2"));
+    }
+}
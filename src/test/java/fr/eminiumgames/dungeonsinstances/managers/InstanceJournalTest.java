@@ -0,0 +1,87 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.Difficulty;
+
+class InstanceJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayKeepsOnlyLiveHibernatedInstances() throws Exception {
+        File file = dir.resolve("instances.journal").toFile();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        long future = System.currentTimeMillis() + 600_000L;
+
+        InstanceJournal journal = new InstanceJournal(file);
+        journal.created("instance_a", "manaria", Difficulty.HEROIC, true);
+        journal.hibernated("instance_a", future, Set.of(first));
+        // hibernated again later with another party: the last line wins
+        journal.hibernated("instance_a", future + 1, Set.of(first, second));
+        journal.created("instance_b", "manaria", Difficulty.BEGINNER, false);
+        journal.hibernated("instance_b", future, Set.of(second));
+        journal.deleted("instance_b");
+        journal.created("instance_c", "crypt", Difficulty.NORMAL, false);
+        journal.hibernated("instance_c", System.currentTimeMillis() - 1, Set.of(first));
+        journal.created("instance_d", "crypt", Difficulty.NORMAL, false);
+        journal.hibernated("instance_d", future, Set.of(second));
+        journal.created("instance_e", "crypt", Difficulty.NORMAL, false);
+        journal.close();
+        // written before the instance mode was recorded
+        long now = System.currentTimeMillis();
+        Files.writeString(file.toPath(), now + "\tCREATE\tinstance_f\tcrypt\tMYTHIC\n" + now
+                + "\tHIBERNATE\tinstance_f\t" + future + "\t" + first + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        // a crash in the middle of a write
+        Files.writeString(file.toPath(), "1700000000000\tHIBER", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        InstanceJournal reopened = new InstanceJournal(file);
+        // instance_d's folder is gone, instance_e never hibernated
+        Map<String, InstanceJournal.Entry> recovered = reopened
+                .recover(Set.of("instance_a", "instance_b", "instance_c", "instance_e", "instance_f")).get();
+        reopened.close();
+
+        assertEquals(Set.of("instance_a", "instance_f"), recovered.keySet());
+        InstanceJournal.Entry a = recovered.get("instance_a");
+        assertEquals("manaria", a.template);
+        assertEquals(Difficulty.HEROIC, a.difficulty);
+        assertTrue(a.hibernated);
+        assertEquals(future + 1, a.expiresAt);
+        assertEquals(Set.of(first, second), a.members);
+        assertTrue(a.generated);
+        assertFalse(recovered.get("instance_f").generated);
+        assertEquals(Difficulty.MYTHIC, recovered.get("instance_f").difficulty);
+
+        // compacted down to what describes instance_a and instance_f
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertTrue(lines.stream().anyMatch(l -> l.endsWith("\tCREATE\tinstance_a\tmanaria\tHEROIC\tgenerator")));
+        assertTrue(lines.stream().anyMatch(l -> l.contains("\tHIBERNATE\tinstance_a\t" + (future + 1) + "\t")));
+        assertTrue(lines.stream().anyMatch(l -> l.endsWith("\tCREATE\tinstance_f\tcrypt\tMYTHIC\tcopy")));
+
+        // replaying the compacted journal gives the same state
+        InstanceJournal again = new InstanceJournal(file);
+        Map<String, InstanceJournal.Entry> replayed = again.recover(Set.of("instance_a")).get();
+        again.close();
+        assertEquals(Set.of(first, second), replayed.get("instance_a").members);
+        assertTrue(replayed.get("instance_a").generated);
+    }
+}
@@ -0,0 +1,90 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.junit.jupiter.api.Test;
+
+class LazyMobSpawnerTest {
+
+    @SuppressWarnings("deprecation")
+    private static final NamespacedKey PLAN = new NamespacedKey("dungeoninstances", "lazy_plan");
+    @SuppressWarnings("deprecation")
+    private static final NamespacedKey SPAWNED = new NamespacedKey("dungeoninstances", "lazy_spawned");
+
+    // what the world's persistent data holds, by key
+    private final Map<NamespacedKey, Object> stored = new HashMap<>();
+    private final PersistentDataContainer data = (PersistentDataContainer) Proxy.newProxyInstance(
+            LazyMobSpawnerTest.class.getClassLoader(), new Class<?>[] { PersistentDataContainer.class },
+            (self, method, args) -> {
+                switch (method.getName()) {
+                    case "set":
+                        stored.put((NamespacedKey) args[0], args[2]);
+                        return null;
+                    case "get":
+                        return ((PersistentDataType<?, ?>) args[1]).getComplexType().cast(stored.get(args[0]));
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    private static BitSet bits(int... indexes) {
+        BitSet set = new BitSet();
+        for (int i : indexes) {
+            set.set(i);
+        }
+        return set;
+    }
+
+    @Test
+    void progressSurvivesHibernation() {
+        new LazyMobSpawner.Progress("abc123", bits(0, 3, 64, 130)).write(data, PLAN, SPAWNED);
+
+        // stored as words of the bit set
+        assertArrayEquals(new long[] { 9L, 1L, 4L }, (long[]) stored.get(SPAWNED));
+        assertEquals("abc123", stored.get(PLAN));
+
+        LazyMobSpawner.Progress resumed = LazyMobSpawner.Progress.read(data, PLAN, SPAWNED);
+        assertEquals(bits(0, 3, 64, 130), resumed.spawned);
+        assertEquals("abc123", resumed.planHash);
+    }
+
+    @Test
+    void aRunThatSpawnedNothingYetIsStillResumed() {
+        new LazyMobSpawner.Progress("abc123", new BitSet()).write(data, PLAN, SPAWNED);
+
+        LazyMobSpawner.Progress resumed = LazyMobSpawner.Progress.read(data, PLAN, SPAWNED);
+        assertTrue(resumed.spawned.isEmpty());
+    }
+
+    @Test
+    void nothingToResumeWithoutBothKeys() {
+        assertNull(LazyMobSpawner.Progress.read(data, PLAN, SPAWNED));
+        stored.put(PLAN, "abc123");
+        assertNull(LazyMobSpawner.Progress.read(data, PLAN, SPAWNED));
+        stored.clear();
+        stored.put(SPAWNED, new long[] { 1L });
+        assertNull(LazyMobSpawner.Progress.read(data, PLAN, SPAWNED));
+    }
+
+    @Test
+    void progressOnlyMatchesThePlanItWasMadeOn() {
+        LazyMobSpawner.Progress progress = new LazyMobSpawner.Progress("abc123", bits(1));
+
+        assertTrue(progress.matches(SpawnPlan.compile(List.of(), "abc123", 10L, 20L)));
+        // the mob file was saved again while the instance hibernated
+        assertFalse(progress.matches(SpawnPlan.compile(List.of(), "def456", 10L, 20L)));
+    }
+}
@@ -0,0 +1,84 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.MobData;
+
+class MobSpawnFileTest {
+
+    private static final Gson GSON = new Gson();
+
+    @TempDir
+    Path dir;
+
+    private static List<MobData> bundledMobs() throws IOException {
+        try (InputStream in = MobSpawnFileTest.class.getResourceAsStream("/default-templates/manaria.json")) {
+            assertNotNull(in, "bundled manaria.json");
+            return GSON.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8),
+                    new TypeToken<List<MobData>>() {
+                    }.getType());
+        }
+    }
+
+    @Test
+    void jsonToBinaryAndBackIsLossless() throws IOException {
+        List<MobData> mobs = bundledMobs();
+        assertFalse(mobs.isEmpty());
+        File binary = dir.resolve("manaria" + MobSpawnFile.EXTENSION).toFile();
+
+        MobSpawnFile.write(mobs, binary);
+        List<MobData> read = MobSpawnFile.read(binary);
+
+        JsonElement expected = GSON.toJsonTree(mobs);
+        JsonElement actual = GSON.toJsonTree(read);
+        assertEquals(expected, actual);
+        assertEquals(GSON.toJson(expected), GSON.toJson(actual));
+    }
+
+    @Test
+    void keepsHandEditedValuesAsTheyAre() throws IOException {
+        MobData d = new MobData();
+        d.uuid = "not-a-uuid";
+        d.type = "ZOMBIE";
+        d.x = 1.5;
+        d.y = 64;
+        d.z = -3.25;
+        d.yaw = 90f;
+        d.nbt = "{\"not\": \"snbt\"}";
+        File binary = dir.resolve("edited" + MobSpawnFile.EXTENSION).toFile();
+
+        MobSpawnFile.write(List.of(d), binary);
+        MobData read = MobSpawnFile.read(binary).get(0);
+
+        assertEquals(GSON.toJsonTree(d), GSON.toJsonTree(read));
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws IOException {
+        File binary = dir.resolve("cut" + MobSpawnFile.EXTENSION).toFile();
+        MobSpawnFile.write(bundledMobs(), binary);
+        byte[] bytes = Files.readAllBytes(binary.toPath());
+        Files.write(binary.toPath(), java.util.Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(IOException.class, () -> MobSpawnFile.read(binary));
+    }
+}
@@ -0,0 +1,87 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.entity.EntityType;
+import org.junit.jupiter.api.Test;
+
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.MobData;
+
+class SpawnPlanTest {
+
+    private static MobData mob(EntityType type, double x, double y, double z) {
+        MobData d = new MobData();
+        d.type = type.name();
+        d.x = x;
+        d.y = y;
+        d.z = z;
+        return d;
+    }
+
+    // index 0..4, in file order
+    private final SpawnPlan plan = SpawnPlan.compile(List.of(
+            mob(EntityType.ZOMBIE, 40, 64, 0),
+            mob(EntityType.SKELETON, 1, 64, 1),
+            mob(EntityType.ZOMBIE, -0.5, 64, 15.9),
+            mob(EntityType.SPIDER, 3, 90, 3),
+            mob(EntityType.ZOMBIE, -16, 64, -1)));
+
+    private static List<Integer> indexes(List<SpawnPlan.Entry> entries) {
+        List<Integer> result = new ArrayList<>();
+        for (SpawnPlan.Entry e : entries) {
+            result.add(e.getIndex());
+        }
+        return result;
+    }
+
+    @Test
+    void nearestFirstSortsByDistanceToThePoint() {
+        assertEquals(List.of(1, 2, 4, 3, 0), indexes(plan.nearestFirst(0, 64, 0)));
+        // height counts too
+        assertEquals(List.of(3, 1, 2, 4, 0), indexes(plan.nearestFirst(3, 85, 3)));
+        // the file order is left alone
+        assertEquals(List.of(0, 1, 2, 3, 4), indexes(plan.getEntries()));
+    }
+
+    @Test
+    void nearestFirstIsKeptForTheSamePoint() {
+        List<SpawnPlan.Entry> first = plan.nearestFirst(0, 64, 0);
+
+        assertSame(first, plan.nearestFirst(0, 64, 0));
+        assertNotSame(first, plan.nearestFirst(0, 64, 1));
+        assertEquals(indexes(first), indexes(plan.nearestFirst(0, 64, 0)));
+    }
+
+    @Test
+    void byChunkGroupsInPlanOrder() {
+        Map<Long, List<SpawnPlan.Entry>> chunks = plan.byChunk();
+
+        assertEquals(4, chunks.size());
+        assertEquals(List.of(0), indexes(chunks.get(BakedTemplate.chunkKey(2, 0))));
+        assertEquals(List.of(1, 3), indexes(chunks.get(BakedTemplate.chunkKey(0, 0))));
+        // x = -0.5 lies in chunk -1, z = -1 in chunk -1
+        assertEquals(List.of(2), indexes(chunks.get(BakedTemplate.chunkKey(-1, 0))));
+        assertEquals(List.of(4), indexes(chunks.get(BakedTemplate.chunkKey(-1, -1))));
+        assertSame(chunks, plan.byChunk());
+    }
+
+    @Test
+    void translatedPlansGroupByTheirOwnChunks() {
+        SpawnPlan moved = plan.translated("slot-1", d -> mob(EntityType.valueOf(d.type), d.x + 1000, d.y, d.z));
+
+        assertSame(moved, plan.translated("slot-1", d -> d));
+        // x 999.5 to 1003 all fall in chunk 62 once moved
+        Map<Long, List<SpawnPlan.Entry>> chunks = moved.byChunk();
+        assertEquals(3, chunks.size());
+        assertEquals(List.of(1, 2, 3), indexes(chunks.get(BakedTemplate.chunkKey(62, 0))));
+        assertEquals(List.of(4), indexes(chunks.get(BakedTemplate.chunkKey(61, -1))));
+        assertEquals(List.of(0), indexes(chunks.get(BakedTemplate.chunkKey(65, 0))));
+        assertEquals(List.of(1, 3), indexes(plan.byChunk().get(BakedTemplate.chunkKey(0, 0))));
+    }
+}
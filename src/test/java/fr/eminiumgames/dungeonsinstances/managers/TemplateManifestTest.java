@@ -0,0 +1,121 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.MobData;
+import fr.eminiumgames.dungeonsinstances.managers.DungeonManager.SpawnPoint;
+
+class TemplateManifestTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * A region file whose header lists the given slots (x + z * 32); only the
+     * header is read to find the stored chunks.
+     */
+    private File region(String folder, int rx, int rz, int... slots) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2 * 4096);
+        for (int slot : slots) {
+            header.putInt(slot * 4, (2 << 8) | 1);
+        }
+        File file = dir.resolve(folder).resolve("r." + rx + "." + rz + ".mca").toFile();
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), header.array());
+        return file;
+    }
+
+    private static MobData mob(double x, double z) {
+        MobData d = new MobData();
+        d.x = x;
+        d.z = z;
+        return d;
+    }
+
+    private static void assertRange(TemplateManifest m, int minX, int minZ, int maxX, int maxZ) {
+        assertEquals(minX, m.minChunkX);
+        assertEquals(minZ, m.minChunkZ);
+        assertEquals(maxX, m.maxChunkX);
+        assertEquals(maxZ, m.maxChunkZ);
+    }
+
+    @Test
+    void takesTheRangeFromStoredChunks() throws IOException {
+        // chunks (3, 1) and (40, 2): slot 3 + 1 * 32 of r.0.0, slot 8 + 2 * 32 of r.1.0
+        region("region", 0, 0, 3 + 32);
+        region("region", 1, 0, 8 + 2 * 32);
+        region("entities", 1, 0);
+        region("region", -1, 0); // empty header
+        region("region", 4, 4, 0); // stored, so it widens the range
+        File world = dir.toFile();
+
+        TemplateManifest m = TemplateManifest.generate("crypt", world, List.of(mob(5000, 5000)), null, 3, null);
+
+        // the mobs and the margin only matter without stored chunks
+        assertRange(m, 3, 1, 128, 128);
+        assertTrue(m.include.containsAll(List.of("region/r.0.0.mca", "region/r.1.0.mca", "region/r.4.4.mca",
+                "entities/r.1.0.mca")));
+        assertFalse(m.include.contains("region/r.-1.0.mca"));
+    }
+
+    @Test
+    void adminBoundsWinAndPickOverlappingRegionFiles() throws IOException {
+        region("region", 0, 0, 0);
+        region("region", 1, 0, 0);
+        region("region", 2, 0, 0);
+        region("poi", 1, 0);
+
+        TemplateManifest m = TemplateManifest.generate("crypt", dir.toFile(), null, null, 3,
+                new InstanceProfile.Bounds(40, 10, 33, -2));
+
+        assertRange(m, 33, -2, 40, 10);
+        // chunks 33..40 lie in region x = 1; z -2..10 spans regions -1 and 0
+        assertEquals(List.of("region/r.1.0.mca", "poi/r.1.0.mca"), m.include);
+        assertTrue(m.containsChunk(33, -2));
+        assertTrue(m.containsChunk(40, 10));
+        assertFalse(m.containsChunk(41, 0));
+        assertFalse(m.containsChunk(35, -3));
+    }
+
+    @Test
+    void fallsBackToMobsAndSpawnWithAMargin() {
+        SpawnPoint spawn = new SpawnPoint(-1, 64, 0.5, 0f, 0f);
+
+        TemplateManifest m = TemplateManifest.generate("crypt", dir.toFile(), List.of(mob(100, 17), mob(31.9, -40)),
+                spawn, 2, null);
+
+        // x: -1 -> chunk -1, 100 -> 6; z: -40 -> -3, 17 -> 1
+        assertRange(m, -3, -5, 8, 3);
+        assertTrue(m.include.isEmpty());
+        assertNull(TemplateManifest.generate("crypt", dir.toFile(), List.of(), null, 2, null));
+    }
+
+    @Test
+    void acceptsListedRegionFilesAndEverythingElseButTheExcludes() throws IOException {
+        region("region", 0, 0, 0);
+        TemplateManifest m = TemplateManifest.generate("crypt", dir.toFile(), null, null, 0, null);
+
+        assertTrue(m.accepts(Path.of("region", "r.0.0.mca")));
+        assertFalse(m.accepts(Path.of("region", "r.1.0.mca")));
+        assertFalse(m.accepts(Path.of("entities", "r.0.0.mca")));
+        assertTrue(m.accepts(Path.of("level.dat")));
+        assertTrue(m.accepts(Path.of("data", "raids.dat")));
+        assertFalse(m.accepts(Path.of("playerdata")));
+        assertFalse(m.accepts(Path.of("playerdata", "0000.dat")));
+        assertFalse(m.accepts(Path.of("session.lock")));
+        assertFalse(m.accepts(Path.of("uid.dat")));
+    }
+}
@@ -0,0 +1,48 @@
+package fr.eminiumgames.dungeonsinstances.managers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class TemplateUsageTest {
+
+    private static final long IDLE = 5 * 60_000L;
+
+    private final TemplateUsage usage = new TemplateUsage();
+
+    @Test
+    void unloadsTemplatesUnusedForTheIdleTime() {
+        usage.touch("crypt", 1_000L);
+        usage.touch("tower", 100_000L);
+
+        assertEquals(List.of(), usage.idle(List.of("crypt", "tower"), t -> false, 1_000L + IDLE - 1, IDLE));
+        assertEquals(List.of("crypt"), usage.idle(List.of("crypt", "tower"), t -> false, 1_000L + IDLE, IDLE));
+        assertEquals(List.of("crypt", "tower"),
+                usage.idle(List.of("crypt", "tower"), t -> false, 100_000L + IDLE, IDLE));
+    }
+
+    @Test
+    void occupiedWorldsStayAndRestartTheClock() {
+        usage.touch("crypt", 0L);
+        Set<String> occupied = Set.of("crypt");
+
+        assertEquals(List.of(), usage.idle(List.of("crypt"), occupied::contains, IDLE * 2, IDLE));
+        // the players left: idle counts from the last check that saw them
+        assertEquals(List.of(), usage.idle(List.of("crypt"), t -> false, IDLE * 3 - 1, IDLE));
+        assertEquals(List.of("crypt"), usage.idle(List.of("crypt"), t -> false, IDLE * 3, IDLE));
+    }
+
+    @Test
+    void forgottenOrUntouchedTemplatesAreIdle() {
+        usage.touch("crypt", 10_000L);
+        usage.forget("crypt");
+
+        assertEquals(List.of("crypt", "sewers"), usage.idle(List.of("crypt", "sewers"), t -> false, IDLE, IDLE));
+        // only loaded worlds are considered
+        usage.touch("tower", 0L);
+        assertEquals(List.of(), usage.idle(List.of(), t -> false, IDLE * 10, IDLE));
+    }
+}